@@ -0,0 +1,439 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter;
+
+import com.baseprogramming.pdwriter.font.EncodedTextCache;
+import java.awt.Color;
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState;
+import org.apache.pdfbox.util.Matrix;
+
+/**
+ * Writes the text and path operators of a content stream into a byte buffer,
+ * with numbers formatted to a fixed number of decimal places.  The buffer is
+ * appended to the underlying PDPageContentStream when it fills up, before any
+ * operation that needs the stream resources (fonts, images, forms and
+ * graphics states), and when the emitter is closed.
+ * <p>
+ * Operators not provided by the emitter must be written through
+ * {@link #getStream()}, which flushes the buffer first, to keep them in order.
+ *
+ * @author Roberto C. Benitez
+ */
+public class ContentEmitter implements Closeable
+{
+    public static final int DEFAULT_PRECISION=4;
+    public static final int MAX_PRECISION=6;
+    private static final int COLOR_PRECISION=4;
+    private static final int FLUSH_SIZE=32 * 1024;
+    private static final long[] SCALES={1, 10, 100, 1000, 10000, 100000, 1000000};
+    private static final double MAX_FIXED_VALUE=1e12;
+
+    private final PDPageContentStream stream;
+    private final EncodedTextCache textCache;
+    private final int precision;
+    private final List<PDFont> fontStack= new ArrayList<>();
+    private byte[] buffer= new byte[1024];
+    private int count;
+    private PDFont font;
+    private boolean inTextMode;
+
+    /**
+     * @param stream content stream to write to
+     * @param textCache cache of encoded text, for the document of the stream
+     * @param precision number of decimal places of coordinates
+     */
+    public ContentEmitter(PDPageContentStream stream, EncodedTextCache textCache, int precision)
+    {
+        checkPrecision(precision);
+        this.stream = stream;
+        this.textCache = textCache;
+        this.precision = precision;
+    }
+
+    public static void checkPrecision(int precision)
+    {
+        if(precision < 0 || precision > MAX_PRECISION)
+        {
+            throw new IllegalArgumentException("Invalid precision argument: " + precision);
+        }
+    }
+
+    public int getPrecision()
+    {
+        return precision;
+    }
+
+    /**
+     * @return underlying content stream, after writing out any buffered operators
+     * @throws IOException if the buffer cannot be written
+     */
+    public PDPageContentStream getStream() throws IOException
+    {
+        flush();
+        return stream;
+    }
+
+    public void beginText() throws IOException
+    {
+        if(inTextMode)
+        {
+            throw new IllegalStateException("Error: Nested beginText() calls are not allowed.");
+        }
+        writeOperator('B', 'T');
+        inTextMode=true;
+    }
+
+    public void endText() throws IOException
+    {
+        if(!inTextMode)
+        {
+            throw new IllegalStateException("Error: You must call beginText() before calling endText.");
+        }
+        writeOperator('E', 'T');
+        inTextMode=false;
+    }
+
+    public void newLineAtOffset(float tx, float ty) throws IOException
+    {
+        checkTextMode();
+        writeNumber(tx);
+        writeNumber(ty);
+        writeOperator('T', 'd');
+    }
+
+    public void setTextMatrix(Matrix matrix) throws IOException
+    {
+        checkTextMode();
+        writeMatrix(matrix);
+        writeOperator('T', 'm');
+    }
+
+    public void setFont(PDFont font, float fontSize) throws IOException
+    {
+        flush();
+        stream.setFont(font, fontSize);
+        this.font=font;
+    }
+
+    public PDFont getFont()
+    {
+        return font;
+    }
+
+    /**
+     * Show text with the current font.  The encoded text is taken from the text
+     * cache.
+     * @param text text to show
+     * @throws IOException if the text cannot be encoded
+     */
+    public void showText(String text) throws IOException
+    {
+        checkTextMode();
+        if(font==null)
+        {
+            throw new IllegalStateException("Must call setFont() before showText()");
+        }
+        write(textCache.getShowTextCommand(font, text));
+    }
+
+    public void setNonStrokingColor(Color color) throws IOException
+    {
+        writeColor(color);
+        writeOperator('r', 'g');
+    }
+
+    public void setStrokingColor(Color color) throws IOException
+    {
+        writeColor(color);
+        writeOperator('R', 'G');
+    }
+
+    public void setLineWidth(float lineWidth) throws IOException
+    {
+        checkPathMode();
+        writeNumber(lineWidth);
+        writeOperator('w');
+    }
+
+    public void moveTo(float x, float y) throws IOException
+    {
+        checkPathMode();
+        writeNumber(x);
+        writeNumber(y);
+        writeOperator('m');
+    }
+
+    public void lineTo(float x, float y) throws IOException
+    {
+        checkPathMode();
+        writeNumber(x);
+        writeNumber(y);
+        writeOperator('l');
+    }
+
+    public void addRect(float x, float y, float width, float height) throws IOException
+    {
+        checkPathMode();
+        writeNumber(x);
+        writeNumber(y);
+        writeNumber(width);
+        writeNumber(height);
+        writeOperator('r', 'e');
+    }
+
+    public void stroke() throws IOException
+    {
+        checkPathMode();
+        writeOperator('S');
+    }
+
+    public void closeAndStroke() throws IOException
+    {
+        checkPathMode();
+        writeOperator('s');
+    }
+
+    public void fill() throws IOException
+    {
+        checkPathMode();
+        writeOperator('f');
+    }
+
+    public void saveGraphicsState() throws IOException
+    {
+        writeOperator('q');
+        fontStack.add(font);
+    }
+
+    public void restoreGraphicsState() throws IOException
+    {
+        writeOperator('Q');
+        if(!fontStack.isEmpty())
+        {
+            font=fontStack.remove(fontStack.size() - 1);
+        }
+    }
+
+    public void transform(Matrix matrix) throws IOException
+    {
+        checkPathMode();
+        writeMatrix(matrix);
+        writeOperator('c', 'm');
+    }
+
+    public void drawForm(PDFormXObject form) throws IOException
+    {
+        checkPathMode();
+        flush();
+        stream.drawForm(form);
+    }
+
+    public void drawImage(PDImageXObject image, float x, float y, float width, float height) throws IOException
+    {
+        checkPathMode();
+        flush();
+        stream.drawImage(image, x, y, width, height);
+    }
+
+    public void setGraphicsStateParameters(PDExtendedGraphicsState state) throws IOException
+    {
+        flush();
+        stream.setGraphicsStateParameters(state);
+    }
+
+    /**
+     * Write the buffered operators to the content stream.
+     * @throws IOException if the operators cannot be written
+     */
+    @SuppressWarnings("deprecation")
+    public void flush() throws IOException
+    {
+        if(count==0){return;}
+        stream.appendRawCommands(Arrays.copyOf(buffer, count));
+        count=0;
+    }
+
+    @Override public void close() throws IOException
+    {
+        flush();
+        stream.close();
+    }
+
+    private void checkTextMode()
+    {
+        if(!inTextMode)
+        {
+            throw new IllegalStateException("Must call beginText() before writing text operators");
+        }
+    }
+
+    private void checkPathMode()
+    {
+        if(inTextMode)
+        {
+            throw new IllegalStateException("Error: operator not allowed within a text block.");
+        }
+    }
+
+    private void writeMatrix(Matrix matrix) throws IOException
+    {
+        writeNumber(matrix.getValue(0, 0));
+        writeNumber(matrix.getValue(0, 1));
+        writeNumber(matrix.getValue(1, 0));
+        writeNumber(matrix.getValue(1, 1));
+        writeNumber(matrix.getValue(2, 0));
+        writeNumber(matrix.getValue(2, 1));
+    }
+
+    private void writeColor(Color color) throws IOException
+    {
+        writeNumber(color.getRed() / 255f, COLOR_PRECISION);
+        writeNumber(color.getGreen() / 255f, COLOR_PRECISION);
+        writeNumber(color.getBlue() / 255f, COLOR_PRECISION);
+    }
+
+    private void writeNumber(float value) throws IOException
+    {
+        writeNumber(value, precision);
+    }
+
+    private void writeNumber(float value, int digits) throws IOException
+    {
+        ensureCapacity(64);
+        count=formatNumber(value, digits, buffer, count);
+        buffer[count++]=' ';
+    }
+
+    private void writeOperator(char operator) throws IOException
+    {
+        ensureCapacity(2);
+        buffer[count++]=(byte)operator;
+        buffer[count++]='\n';
+        flushIfFull();
+    }
+
+    private void writeOperator(char first, char second) throws IOException
+    {
+        ensureCapacity(3);
+        buffer[count++]=(byte)first;
+        buffer[count++]=(byte)second;
+        buffer[count++]='\n';
+        flushIfFull();
+    }
+
+    private void write(byte[] bytes) throws IOException
+    {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count+=bytes.length;
+        flushIfFull();
+    }
+
+    private void flushIfFull() throws IOException
+    {
+        if(count >= FLUSH_SIZE){flush();}
+    }
+
+    private void ensureCapacity(int length)
+    {
+        if(count + length > buffer.length)
+        {
+            buffer=Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + length));
+        }
+    }
+
+    /**
+     * Format a number in plain decimal notation, rounded (half up) to a number
+     * of decimal places, without trailing zeros.
+     * @param value number to format
+     * @param digits number of decimal places
+     * @param bytes ASCII output
+     * @param offset offset in the output
+     * @return offset after the number
+     */
+    static int formatNumber(float value, int digits, byte[] bytes, int offset)
+    {
+        if(Float.isNaN(value) || Float.isInfinite(value))
+        {
+            throw new IllegalArgumentException(value + " is not a finite number");
+        }
+        if(Math.abs(value) >= MAX_FIXED_VALUE)
+        {
+            String string=new BigDecimal(value).setScale(digits, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+            for(int i=0;i<string.length();i++)
+            {
+                bytes[offset++]=(byte)string.charAt(i);
+            }
+            return offset;
+        }
+
+        long scale=SCALES[digits];
+        long scaled=Math.round(Math.abs((double)value) * scale);
+        if(scaled==0)
+        {
+            bytes[offset++]='0';
+            return offset;
+        }
+        if(value < 0){bytes[offset++]='-';}
+
+        offset=formatLong(scaled / scale, bytes, offset);
+        long fraction=scaled % scale;
+        if(fraction!=0)
+        {
+            while(fraction % 10==0)
+            {
+                fraction/=10;
+                digits--;
+            }
+            bytes[offset++]='.';
+            for(int i=digits - 1;i >= 0;i--)
+            {
+                bytes[offset + i]=(byte)('0' + fraction % 10);
+                fraction/=10;
+            }
+            offset+=digits;
+        }
+
+        return offset;
+    }
+
+    private static int formatLong(long value, byte[] bytes, int offset)
+    {
+        int length=1;
+        for(long n=value / 10;n > 0;n/=10)
+        {
+            length++;
+        }
+        for(int i=offset + length - 1;i >= offset;i--)
+        {
+            bytes[i]=(byte)('0' + value % 10);
+            value/=10;
+        }
+
+        return offset + length;
+    }
+}
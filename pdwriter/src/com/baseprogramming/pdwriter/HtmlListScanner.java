@@ -17,20 +17,30 @@ package com.baseprogramming.pdwriter;
 
 import com.baseprogramming.pdwriter.model.PdList;
 import com.baseprogramming.pdwriter.model.PdParagraph;
+import com.baseprogramming.pdwriter.units.PdInch;
+import com.baseprogramming.pdwriter.units.PdPoints;
+import com.baseprogramming.pdwriter.units.PdUnit;
 import java.io.IOException;
 import org.jsoup.nodes.Node;
 import org.jsoup.nodes.TextNode;
 import org.jsoup.select.NodeVisitor;
 
 /**
+ * Writes the items of a list.  Each item starts on a new line, with its label
+ * at the left of the list.  A list nested in an item starts on the line after
+ * the text of the item, indented from the outer list.
  *
  * @author Roberto C. Benitez
  */
 public class HtmlListScanner implements NodeVisitor
 {
+    private static final PdUnit NESTED_LIST_INDENT=new PdInch(0.25f);
+
     private final  HtmlPdWriter htmlWriter;
     private final PdList style;
     private PdParagraph itemStyle;
+    private boolean lineStarted=false;
+    private float itemBodyX;
 
     public HtmlListScanner(HtmlPdWriter htmlWriter, PdList style)
     {
@@ -42,11 +52,11 @@ public class HtmlListScanner implements NodeVisitor
     @Override
     public void head(Node node, int depth)
     {
-        String name=node.nodeName();
-        if("#text".equals(name)){return;}
+        if(node instanceof TextNode){return;}
         itemStyle=htmlWriter.createNodeStyle(node);
         if(itemStyle==null){itemStyle=style.createItemStyle();}
-        if("li".equals(name))
+        indentItemStyle();
+        if("li".equals(node.nodeName()))
         {
             htmlWriter.setXPosition(style.getLeftX());
             String label=style.getItemLabel().getValue() + style.getLabelBodyDelimiter();
@@ -58,33 +68,78 @@ public class HtmlListScanner implements NodeVisitor
             {
                 throw new RuntimeException(e.getMessage(), e);
             }
+            itemBodyX=htmlWriter.getXPosition();
+            lineStarted=true;
         }
     }
 
     @Override
     public void tail(Node node, int depth)
     {
-        String name=node.nodeName();
-        if("#text".equals(name))
+        if(node instanceof TextNode)
         {
-            writeText(node);
+            writeText((TextNode)node);
+            return;
         }
-        else if("li".equals(name))
+        if("li".equals(node.nodeName()))
         {
-            PdWriter writer=htmlWriter.getWriter();
-            float y=itemStyle.getNextY(writer.getLastYPosition());
-            writer.setLastYPosition(y);
+            endLine();
         }
     }
 
-    private void writeText(Node node) throws RuntimeException
+    /**
+     * End the line of the current item, and indent a list nested in the item
+     * from this list.
+     * @param list style of the nested list
+     */
+    public void startNestedList(PdList list)
+    {
+        endLine();
+        float indent=style.getBeforeTextIndent().getPoints() + list.getBeforeTextIndent().getPoints()
+                + NESTED_LIST_INDENT.getPoints();
+        list.setBeforeTextIndent(new PdPoints(indent));
+    }
+
+    private void endLine()
+    {
+        if(!lineStarted){return;}
+
+        PdWriter writer=htmlWriter.getWriter();
+        float y=itemStyle.getNextY(writer.getLastYPosition());
+        writer.setLastYPosition(y);
+        lineStarted=false;
+    }
+
+    /**
+     * Wrap the lines of the items of a nested list at the indent of the list.
+     * Computed styles are shared, so the item style is copied first.
+     */
+    private void indentItemStyle()
     {
-        String body=((TextNode)node).text();
-        if(body.trim().isEmpty() && "li".equals(node.parentNode().nodeName())==false){return;}
+        float indent=style.getBeforeTextIndent().getPoints();
+        if(itemStyle.getBeforeTextIndent().getPoints() >= indent){return;}
+
+        PdParagraph indented= new PdParagraph(itemStyle.getPage());
+        itemStyle.copyTo(indented);
+        indented.setFirstLineIndent(itemStyle.getFirstLineIndent());
+        indented.setBeforeTextIndent(new PdPoints(indent));
+        itemStyle=indented;
+    }
+
+    private void writeText(TextNode node) throws RuntimeException
+    {
+        String body=node.text();
+        if(body.trim().isEmpty() && (!lineStarted || "li".equals(node.parentNode().nodeName())==false)){return;}
         
         try
         {
+            if(!lineStarted)
+            {
+                //text of an item after a nested list
+                htmlWriter.setXPosition(itemBodyX);
+            }
             htmlWriter.writeText(itemStyle, body);
+            lineStarted=true;
         }
         catch (IOException e)
         {
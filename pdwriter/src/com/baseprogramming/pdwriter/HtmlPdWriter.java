@@ -15,31 +15,45 @@
  */
 package com.baseprogramming.pdwriter;
 
+import com.baseprogramming.pdwriter.html.CompiledStyleSheet;
+import com.baseprogramming.pdwriter.html.ComputedStyle;
+import com.baseprogramming.pdwriter.html.ComputedStyleCache;
+import com.baseprogramming.pdwriter.html.CssRule;
+import com.baseprogramming.pdwriter.html.CssStyle;
+import com.baseprogramming.pdwriter.html.HtmlStreamParser;
 import com.baseprogramming.pdwriter.html.HtmlStyle;
 import com.baseprogramming.pdwriter.html.HtmlTableScanner;
-import com.baseprogramming.pdwriter.model.PdList;
+import com.baseprogramming.pdwriter.html.InlineStyleCache;
+import com.baseprogramming.pdwriter.html.SelectorIndex;
+import com.baseprogramming.pdwriter.html.StyleSheetCache;
+import com.baseprogramming.pdwriter.image.ImageRequest;
 import com.baseprogramming.pdwriter.model.PdParagraph;
-import com.steadystate.css.parser.CSSOMParser;
-import com.steadystate.css.parser.SACParserCSS3;
+import com.baseprogramming.pdwriter.model.PdTextSpan;
 import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
-import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Node;
 import org.jsoup.nodes.TextNode;
 import org.jsoup.select.NodeVisitor;
-import org.w3c.css.sac.InputSource;
-import org.w3c.dom.css.CSSStyleDeclaration;
-import org.w3c.dom.css.CSSValue;
 
 /**
  *
@@ -47,60 +61,46 @@ import org.w3c.dom.css.CSSValue;
  */
 public class HtmlPdWriter
 {
-    private final AtomicLong nodeIdSequence =  new AtomicLong();
+    private static final int LOADER_THREADS=4;
+    //file reads block, so they are kept off the common pool; shared by all writers
+    private static final Executor LOADER_EXECUTOR=createLoaderExecutor();
+
     private final PdWriter writer;
     private float dpi=96;
-    private final Map<String,Map<String,CSSValue>> elementSelectors = new HashMap<>();
-    private final Map<String,Map<String,CSSValue>> idSelectors = new HashMap<>();
-    private final Map<String,Map<String,CSSValue>> classSelectors = new HashMap<>();
-    private final Map<String,Map<String,CSSValue>> nodeStyleMaps= new HashMap<>();
-    private final Map<String,PdParagraph> nodeParagraphMaps = new HashMap<>();
+    private SelectorIndex selectors=SelectorIndex.getDefault();
+    private final List<NodeStyle> styleStack= new ArrayList<>();
+    private final ComputedStyleCache styleCache= new ComputedStyleCache();
+    private final InlineStyleCache inlineStyles= new InlineStyleCache();
+    private final List<PdTextSpan> inlineSpans= new ArrayList<>();
     
     private float xPosition;
+    private PdParagraph blockStyle;
+    private Executor imageExecutor=LOADER_EXECUTOR;
+    private Executor styleSheetExecutor=LOADER_EXECUTOR;
+    private final Map<String,CompletableFuture<CompiledStyleSheet>> linkedStyleSheets= new HashMap<>();
+    private boolean releaseWrittenNodes;
+    private int tableLayoutRows=0;
+    private boolean repeatTableHeaders;
+    private final Map<String,TagHandler> tagHandlers=HtmlTagHandlers.createDefaults();
+    private final List<ScannerScope> scanners= new ArrayList<>();
     
 
     public HtmlPdWriter(PdWriter writer)
     {
         this.writer = writer;
-        loadDefaultCss();
-    }
-    
-    private long getNextId()
-    {
-        return nodeIdSequence.incrementAndGet();
-    }
-    
-    private void loadDefaultCss()
-    {
-        try
-        {
-            Map<String, Map<String, CSSValue>> map=Utils.getDefaultHtmlCssMap();
-            loadCssSelectorsIntoMaps(map);
-        }
-        catch(Exception e)
-        {
-            throw new RuntimeException(e.getMessage(), e);
-        }
     }
 
-    private void loadCssSelectorsIntoMaps(Map<String, Map<String, CSSValue>> map)
+    private static Executor createLoaderExecutor()
     {
-        map.entrySet().forEach(e->
+        ThreadPoolExecutor executor= new ThreadPoolExecutor(LOADER_THREADS, LOADER_THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), task->
         {
-            String selector=e.getKey();
-            if(selector.startsWith("."))
-            {
-                classSelectors.put(selector.substring(1), e.getValue());
-            }
-            else if(selector.startsWith("#"))
-            {
-                idSelectors.put(selector.substring(1),e.getValue());
-            }
-            else
-            {
-                elementSelectors.put(selector, e.getValue());
-            }
+            Thread thread= new Thread(task, "pdwriter-loader");
+            thread.setDaemon(true);
+            return thread;
         });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     public PdWriter getWriter()
@@ -116,159 +116,443 @@ public class HtmlPdWriter
     public void setDpi(float dpi)
     {
         this.dpi = dpi;
+        styleCache.clear();
+    }
+
+    /**
+     * @return cache of the computed styles of the elements written
+     */
+    public ComputedStyleCache getStyleCache()
+    {
+        return styleCache;
+    }
+
+    /**
+     * @return cache of the parsed style attributes of the elements written
+     */
+    public InlineStyleCache getInlineStyleCache()
+    {
+        return inlineStyles;
+    }
+
+    public Executor getImageExecutor()
+    {
+        return imageExecutor;
+    }
+
+    /**
+     * Set the executor on which the images of a document are loaded while the
+     * document is laid out.  By default, a small pool of daemon threads shared
+     * by all writers.
+     * @param imageExecutor executor; null to load each image when it is reached
+     */
+    public void setImageExecutor(Executor imageExecutor)
+    {
+        this.imageExecutor = imageExecutor;
+    }
+
+    public Executor getStyleSheetExecutor()
+    {
+        return styleSheetExecutor;
+    }
+
+    /**
+     * Set the executor on which the style sheets linked by a document are
+     * parsed in parallel, when there is more than one.  By default, the pool
+     * the images are loaded on.
+     * @param styleSheetExecutor executor; null to parse each style sheet when
+     * its link is reached
+     */
+    public void setStyleSheetExecutor(Executor styleSheetExecutor)
+    {
+        this.styleSheetExecutor = styleSheetExecutor;
+    }
+    
+    public boolean isReleaseWrittenNodes()
+    {
+        return releaseWrittenNodes;
+    }
+
+    /**
+     * Set whether the nodes of a parsed document are released as they are
+     * written.  When set, each element gives up its children when it is
+     * reached, and each child is dropped once its tail has been written, so
+     * finished paragraphs, tables and lists (and their text) can be garbage
+     * collected before the rest of a long document is written.  Only the path
+     * from the root to the current node is kept.  Off by default: once released,
+     * an element has no children left when {@link TagHandler#end} is called.
+     * @param releaseWrittenNodes true to release written nodes; false to keep
+     * the whole document until it has been written
+     */
+    public void setReleaseWrittenNodes(boolean releaseWrittenNodes)
+    {
+        this.releaseWrittenNodes = releaseWrittenNodes;
+    }
+    
+    public int getTableLayoutRows()
+    {
+        return tableLayoutRows;
+    }
+
+    /**
+     * Set the number of body rows of a table read ahead to size its columns.
+     * The column widths not set by the style sheet are measured from the
+     * content of the header and of the first rows, which are held until the
+     * widths are known; the rest of the rows are written as they are read.
+     * @param tableLayoutRows number of rows to read ahead; 0 to give the
+     * columns equal widths and write each row as it is read
+     */
+    public void setTableLayoutRows(int tableLayoutRows)
+    {
+        if(tableLayoutRows < 0)
+        {
+            throw new IllegalArgumentException("Invalid number of table layout rows: " + tableLayoutRows);
+        }
+        this.tableLayoutRows = tableLayoutRows;
+    }
+
+    public boolean isRepeatTableHeaders()
+    {
+        return repeatTableHeaders;
+    }
+
+    /**
+     * Set whether the <code>thead</code> of a table is repeated at the top of
+     * each page the table continues on.  Off by default, like
+     * {@link com.baseprogramming.pdwriter.model.PdTable#setRepeatHeader}.
+     * @param repeatTableHeaders true to repeat the table headers
+     */
+    public void setRepeatTableHeaders(boolean repeatTableHeaders)
+    {
+        this.repeatTableHeaders = repeatTableHeaders;
     }
     
     public void write(String html) throws IOException
     {
         Document document=Jsoup.parse(html);
-        document.traverse(new NodeTextWriter(this));
+        write(document);
     }
   
     public void write(File htmlSourceFile) throws IOException
     {
         Document document=Jsoup.parse(htmlSourceFile,"UTF-8");
-        document.traverse(new NodeTextWriter(this));
+        write(document);
     }
-  
-    public PdParagraph createNodeStyle(Node node)
+
+    /**
+     * Write a document.  Each document starts with the default style sheet
+     * only; the style caches are kept from one document to the next, so a
+     * writer should be reused for the documents written to the same PDF.
+     * @param document parsed document
+     * @throws IOException if the document cannot be written
+     */
+    private void write(Document document) throws IOException
     {
-        String id=node.attr("id");
-        Map<String,CSSValue> map= buildNodeStyleMap(node);
-        
-        PdParagraph par;
-        if(map.isEmpty())
+        startDocument();
+        prefetchStyleSheets(document);
+        prefetchImages(document);
+        NodeTextWriter visitor= new NodeTextWriter();
+        if(releaseWrittenNodes)
         {
-          par=getParentNodeParagraph(node);
-          if(par==null)
-          {
-              par= new PdParagraph(writer.getMeta());
-              nodeParagraphMaps.put(id, par);
-          }
+            traverseReleasing(document, visitor);
         }
         else
         {
-            par=new HtmlStyle(writer.getMeta(), map,dpi);
-            nodeStyleMaps.put(id, map);
-            nodeParagraphMaps.put(id, par);
+            document.traverse(visitor);
         }
-          
-        return par;  
+        writeInlineText();
+        writer.getImageCache().clearPrefetchedImages();
     }
 
-    public  Map<String, CSSValue> buildNodeStyleMap(Node node)
+    /**
+     * Visit the nodes of a tree in the same order as NodeTraversor, releasing
+     * them as they are visited: the children of a node are detached after its
+     * head is visited (they keep their parent, so selectors and styles still
+     * see their ancestors), and each child is dropped after its tail.
+     * @param root root of the tree; left without children
+     * @param visitor visitor of the nodes
+     */
+    static void traverseReleasing(Node root, NodeVisitor visitor)
     {
-        Map<String, CSSValue> styleMap = new HashMap<>();
-        addParentStyle(node, styleMap);
-        addElementSelectorStyles(node,styleMap);
-        addIdSelectorStyles(node,styleMap);
-        addClassSelectorStyles(node,styleMap);
-        addStyleAttributeCssStyle(node, styleMap);
-        
-        return styleMap;
+        List<TraversalFrame> stack= new ArrayList<>();
+        visitor.head(root, 0);
+        stack.add(new TraversalFrame(root));
+        while(!stack.isEmpty())
+        {
+            int depth=stack.size() - 1;
+            TraversalFrame frame=stack.get(depth);
+            if(frame.index < frame.children.length)
+            {
+                Node child=frame.children[frame.index];
+                frame.children[frame.index++]=null;
+                visitor.head(child, depth + 1);
+                stack.add(new TraversalFrame(child));
+            }
+            else
+            {
+                stack.remove(depth);
+                visitor.tail(frame.node, depth);
+            }
+        }
     }
-    
-    private void addParentStyle(Node node,Map<String,CSSValue> styleMap)
+
+    /**
+     * Write a document as it is read, without parsing it into a jsoup
+     * Document: each element is written as soon as it is read, and dropped
+     * when it ends, so memory depends on the nesting depth of the document,
+     * not on its size.  Only the HTML subset described in
+     * {@link HtmlStreamParser} is supported.  Linked style sheets and images
+     * are loaded when they are reached.
+     * @param html HTML source; read to the end, but not closed
+     * @param baseUri base URI of the document (e.g. the path of the HTML file)
+     * @throws IOException if the document cannot be read or written
+     */
+    public void writeStreaming(Reader html, String baseUri) throws IOException
+    {
+        startDocument();
+        linkedStyleSheets.clear();
+        new HtmlStreamParser(html, baseUri).parse(new NodeTextWriter());
+        writeInlineText();
+    }
+
+    /**
+     * Write a UTF-8 HTML file as it is read (see {@link #writeStreaming(Reader, String)}).
+     * @param htmlSourceFile HTML file
+     * @throws IOException if the file cannot be read, or the document written
+     */
+    public void writeStreaming(File htmlSourceFile) throws IOException
+    {
+        try(Reader reader= new InputStreamReader(Files.newInputStream(htmlSourceFile.toPath()), StandardCharsets.UTF_8))
+        {
+            writeStreaming(reader, htmlSourceFile.getAbsolutePath());
+        }
+    }
+
+    private void startDocument()
+    {
+        selectors=SelectorIndex.getDefault();
+        styleStack.clear();
+        scanners.clear();
+        xPosition=0;
+        blockStyle=null;
+    }
+
+    private void prefetchStyleSheets(Document document) throws IOException
     {
-        if(node.parent()==null){return;}
-        String parentId=node.parent().attr("id");
-        Map<String,CSSValue> parentStyle=nodeStyleMaps.get(parentId);
-        if(parentStyle==null || parentStyle.isEmpty()){return;}
+        linkedStyleSheets.clear();
+        if(styleSheetExecutor==null){return;}
+        
+        List<File> files= new ArrayList<>();
+        for(Element link : document.select("link[href]"))
+        {
+            File file=getLinkedStyleSheetFile(link);
+            if(file!=null){files.add(file);}
+        }
         
-        styleMap.putAll(parentStyle);
+        //a single style sheet is parsed when its link is reached
+        if(files.size() < 2){return;}
+        for(File file : files)
+        {
+            linkedStyleSheets.computeIfAbsent(file.getCanonicalPath(),
+                    path->StyleSheetCache.getInstance().getAsync(file, styleSheetExecutor));
+        }
     }
-    
-    public PdParagraph getParentNodeParagraph(Node node)
+
+    /**
+     * @param node link node
+     * @return style sheet file linked; null if the node does not link a style sheet
+     */
+    private File getLinkedStyleSheetFile(Node node)
     {
-        if(node.parent()==null){return null;}
-        String parentId=node.parent().attr("id");
+        if("link".equals(node.nodeName()) == false){return null;}
+        String type=node.attr("type");
+        if("text/css".equals(type)==false){return null;}
         
-        PdParagraph par=nodeParagraphMaps.get(parentId);
-        if(par==null){return null;}
-        return par;
+        String uri=getBaseUri(node);
+        String href=node.attr("href");
+        return Paths.get(uri, href).toFile();
     }
 
-    private void addStyleAttributeCssStyle(Node node, Map<String, CSSValue> styleMap)
+    private void prefetchImages(Document document) throws IOException
     {
-        Optional<CSSStyleDeclaration> style=getStyleCssDeclaration(node);
-        if(style.isPresent())
+        if(imageExecutor==null){return;}
+        
+        float fontSize=new PdParagraph(writer.getMeta()).getFontSize();
+        List<ImageRequest> requests= new ArrayList<>();
+        for(Element img : document.select("img[src]"))
         {
-            styleMap.putAll(createCssDeclarationMap(style.get()));
+            //em sizes depend on the font of the element, known when it is drawn
+            if(isFontRelative(img.attr("width")) || isFontRelative(img.attr("height"))){continue;}
+            try
+            {
+                requests.add(createImageRequest(img, fontSize));
+            }
+            catch(RuntimeException e)
+            {
+                //unsupported dimension; reported when the image is drawn
+            }
+        }
+        
+        if(!requests.isEmpty())
+        {
+            writer.getImageCache().prefetch(requests, imageExecutor);
         }
     }
-    
-    private void addElementSelectorStyles(Node node,Map<String,CSSValue> map)
+
+    private static boolean isFontRelative(String dimension)
     {
-        Map<String,CSSValue> selectorMap=elementSelectors.get(node.nodeName());
-        if(selectorMap!=null)
+        return dimension.toLowerCase().endsWith("em");
+    }
+
+    private ImageRequest createImageRequest(Node node, float fontSize)
+    {
+        File baseUri = new File(node.baseUri());
+        if(!baseUri.isDirectory() && baseUri.getParentFile()!=null)
+        {
+            baseUri=baseUri.getParentFile();
+        }
+        String src=node.attr("src");
+
+        float width = 0;
+        if (node.attributes().hasKey("width"))
         {
-            map.putAll(selectorMap);
+            width = Utils.parseDimension(node.attr("width"), fontSize, dpi).getPoints();
         }
+        float height = 0;
+        if (node.attributes().hasKey("height"))
+        {
+            height = Utils.parseDimension(node.attr("height"), fontSize, dpi).getPoints();
+        }
+
+        File imageFile=Paths.get(baseUri.getAbsolutePath(), src).toFile();
+        return new ImageRequest(imageFile, width, height);
+    }
+  
+    /**
+     * Create the style of a node, and push it onto the style stack, above the
+     * style of its parent.  Styles of nodes that are no longer on the path from
+     * the parent to the root (e.g. previous siblings) are dropped.
+     * <p>
+     * Nodes with the same parent style, matching rules and style attribute
+     * share one computed style.
+     * @param node node being visited
+     * @return paragraph style of the node; shared, must not be modified
+     */
+    public PdParagraph createNodeStyle(Node node)
+    {
+        int parentIndex=indexOfNodeStyle(node.parent());
+        ComputedStyle parent=(parentIndex < 0)?null:styleStack.get(parentIndex).style;
+        List<CssRule> rules=getMatchingRules(node);
+        ComputedStyle style=styleCache.get(parent, rules, node.attr("style"), ()->computeStyle(node, parent, rules));
+        pushNodeStyle(parentIndex, new NodeStyle(node, style));
+          
+        return style.getParagraph();  
+    }
+
+    private List<CssRule> getMatchingRules(Node node)
+    {
+        if(node instanceof Element==false){return Collections.emptyList();}
+        return selectors.getMatchingRules((Element)node);
     }
- 
-    private void addIdSelectorStyles(Node node,Map<String,CSSValue> map)
+
+    private ComputedStyle computeStyle(Node node, ComputedStyle parent, List<CssRule> rules)
     {
-        String id=node.attr("id");
-        Map<String,CSSValue> selectorMap = idSelectors.get(id);
-        if(selectorMap!=null)
+        CssStyle style= buildNodeStyle(node, (parent==null)?null:parent.getStyle(), rules);
+        
+        PdParagraph par;
+        if(style.isEmpty() || (parent!=null && style==parent.getStyle()))
         {
-            map.putAll(selectorMap);
+          //nothing declared: same properties, same paragraph as the parent
+          par=(parent==null)?new PdParagraph(writer.getMeta()):parent.getParagraph();
         }
+        else
+        {
+            par=new HtmlStyle(writer.getMeta(), style,dpi,writer.getFontCache());
+        }
+        
+        return new ComputedStyle(style, par);
     }
-    
-    private void addClassSelectorStyles(Node Node,Map<String,CSSValue> map)
+
+    private void pushNodeStyle(int parentIndex, NodeStyle style)
     {
-        String id=Node.attr("class");
-        Map<String,CSSValue> selectorMap = classSelectors.get(id);
-        if(selectorMap!=null)
+        int index=(parentIndex >= 0)?parentIndex + 1:indexOfNodeStyle(style.node);
+        if(index >= 0)
         {
-            map.putAll(selectorMap);
+            styleStack.subList(index, styleStack.size()).clear();
         }
+        styleStack.add(style);
     }
-    
-    private Optional<CSSStyleDeclaration> getStyleCssDeclaration(Node node)
+
+    private void popNodeStyle(Node node)
     {
-        return getCss(node, "style");
+        int last=styleStack.size() - 1;
+        if(last >= 0 && styleStack.get(last).node==node)
+        {
+            styleStack.remove(last);
+        }
     }
-    
-    private Optional<CSSStyleDeclaration> getCss(Node node,String attribute)
+
+    /**
+     * @param node node to look for, by identity
+     * @return index of the style of the node on the style stack; -1 if not found
+     */
+    private int indexOfNodeStyle(Node node)
     {
-        String style=node.attr(attribute);
-        if(style==null || style.isEmpty())
+        if(node==null){return -1;}
+        for(int i=styleStack.size() - 1;i >= 0;i--)
         {
-            return Optional.empty();
+            if(styleStack.get(i).node==node){return i;}
         }
-        
-        return getCssDeclaration(style);
+        return -1;
     }
-    
-    private Optional<CSSStyleDeclaration> getCssDeclaration(String cssString)
+
+    private NodeStyle findNodeStyle(Node node)
     {
-        try
-        {
-            InputSource source= new InputSource(new StringReader(cssString));
-            CSSOMParser parser= new CSSOMParser(new SACParserCSS3());
+        int index=indexOfNodeStyle(node);
+        return (index < 0)?null:styleStack.get(index);
+    }
 
-            CSSStyleDeclaration decl = parser.parseStyleDeclaration(source);
+    /**
+     * Compute the CSS properties of a node: those of its parent, overridden by
+     * the matching rules, in order of specificity, and by the style attribute.
+     * @param node node being visited, after its parent
+     * @return computed properties
+     */
+    public CssStyle buildNodeStyle(Node node)
+    {
+        NodeStyle parentStyle=findNodeStyle(node.parent());
+        CssStyle parent=(parentStyle==null)?null:parentStyle.style.getStyle();
+        
+        return buildNodeStyle(node, parent, getMatchingRules(node));
+    }
 
-            return Optional.of(decl);
-        }
-        catch(Exception e)
+    private CssStyle buildNodeStyle(Node node, CssStyle parent, List<CssRule> rules)
+    {
+        CssStyle[] declarations= new CssStyle[rules.size() + 1];
+        for(int i=0;i<rules.size();i++)
         {
-            throw new RuntimeException(e.getMessage(), e);
+            declarations[i]=rules.get(i).getStyle();
         }
+        declarations[rules.size()]=getStyleAttributeCssStyle(node);
+        
+        return CssStyle.cascade(parent, declarations);
     }
     
-    private Map<String,CSSValue> createCssDeclarationMap(CSSStyleDeclaration declaration)
+    public PdParagraph getParentNodeParagraph(Node node)
+    {
+        NodeStyle parentStyle=findNodeStyle(node.parent());
+        return (parentStyle==null)?null:parentStyle.style.getParagraph();
+    }
+
+    private CssStyle getStyleAttributeCssStyle(Node node)
     {
-        Map<String,CSSValue> map= new HashMap<>();
-        for(int i=0;i<declaration.getLength();i++)
+        String style=node.attr("style");
+        if(style==null || style.isEmpty())
         {
-            String key=declaration.item(i);
-            CSSValue value=declaration.getPropertyCSSValue(key);
-            map.put(key, value);
+            return null;
         }
         
-        return map;
+        return inlineStyles.get(style);
     }
     
     public String getBaseUri(Node node)
@@ -294,236 +578,236 @@ public class HtmlPdWriter
         };
     }
     
-    private class NodeTextWriter implements NodeVisitor
+    /**
+     * Set the handler of the elements of a tag, in place of the built-in
+     * handler (if any).
+     * @param tagName tag name, in lower case
+     * @param handler handler; null to write the elements as blocks or inline
+     * text, depending on the tag
+     */
+    public void setTagHandler(String tagName, TagHandler handler)
     {
-        private boolean writingTable;
-        private HtmlTableScanner tableScanner;
-        private final HtmlPdWriter parent;
-        private HtmlListScanner listScanner;
-        private boolean writingList=false;
-
-        public NodeTextWriter(HtmlPdWriter parent)
+        if(handler==null)
         {
-            this.parent = parent;
+            tagHandlers.remove(tagName);
         }
-
-        @Override public void head(Node node, int depth)
+        else
         {
-            String name = node.nodeName();
-            
-            setNodeIdIfMissing(node);
-     
-            if("link".equals(name))
-            {
-                handleLink(node);
-                return;
-            }
-            if(writingTable)
-            {
-                tableScanner.head(node, depth);
-            }
-            else if(writingList)
-            {
-                listScanner.head(node, depth);
-            }
-            if ("#text".equals(name))
-            {
-                return;
-            }
-            if(node instanceof Element==false){return;} //do something else?
-                                                        //this should not happen
-            
-            PdParagraph style = createNodeStyle(node);
-
-            Element tag=(Element)node;
-         
-            if("img".equals(name))
-            {
-                drawImage(node, style);
-                
-            }
-            else if("table".equals(name))
-            {
-                writingTable=true;
-                tableScanner= new HtmlTableScanner(parent);
-                tableScanner.loadTableStyles(node);
-            }
-            else if("ol".equals(name))
-            {
-                PdList pdList=PdList.numeredList(writer.getMeta());
-                listScanner = new HtmlListScanner(parent, pdList);
-                style.copyTo(pdList);
-                writingList=true;
-            }
-            else if("ul".equals(name))
-            {
-                PdList pdList=PdList.bulletList(writer.getMeta());
-                listScanner = new HtmlListScanner(parent, pdList);
-                style.copyTo(pdList);
-                writingList=true;
-            }
-            else if (tag.isBlock() && writingList==false)
-            {
-                float yPos = style.getUpperY(writer.getLastYPosition());
-                writer.setLastYPosition(yPos);
-                xPosition = style.getLeftX();
-            }
-            
-            
+            tagHandlers.put(tagName, handler);
         }
-      
-        private void setNodeIdIfMissing(Node node)
+    }
+
+    /**
+     * @param element element
+     * @return handler of the tag of the element
+     */
+    public TagHandler getTagHandler(Element element)
+    {
+        TagHandler handler=tagHandlers.get(element.nodeName());
+        if(handler!=null){return handler;}
+        return element.isBlock()?HtmlTagHandlers.BLOCK:HtmlTagHandlers.INLINE;
+    }
+
+    /**
+     * Send the descendants of an element to a scanner, until the element ends.
+     * The scanner gets each node before the handler of its tag, and is the only
+     * place the content of the element can be read while it is written (see
+     * {@link TagHandler#end}).  Scanners nest: the scanner of a list within a
+     * list gets the nodes of the inner list, and the outer scanner resumes
+     * after it.
+     * @param element element whose content the scanner lays out
+     * @param scanner scanner of the descendants of the element
+     */
+    public void pushScanner(Element element, NodeVisitor scanner)
+    {
+        scanners.add(new ScannerScope(element, scanner));
+    }
+
+    /**
+     * @return scanner of the innermost element being laid out by a scanner, or
+     * null if there is none
+     */
+    public NodeVisitor getScanner()
+    {
+        ScannerScope scope=getScannerScope();
+        return (scope==null)?null:scope.scanner;
+    }
+
+    private ScannerScope getScannerScope()
+    {
+        return scanners.isEmpty()?null:scanners.get(scanners.size() - 1);
+    }
+
+    private boolean isScanning(Class<? extends NodeVisitor> type)
+    {
+        for(ScannerScope scope : scanners)
         {
-            String id = node.attr("id");
-            if (id == null || id.trim().isEmpty())
-            {
-                id = "node-" + getNextId();
-                node.attr("id", id);
-            }
+            if(type.isInstance(scope.scanner)){return true;}
         }
-        
-        private void handleLink(Node node)
-        {
-        if("link".equals(node.nodeName()) == false){return;}
-        String type=node.attr("type");
-        if("text/css".equals(type)==false){return;}
-        
-        
-        String uri=getBaseUri(node);
-        String href=node.attr("href");
-        String cssFilePath=Paths.get(uri, href).toString();
+        return false;
+    }
+
+    /**
+     * Start a block element: write the pending inline text, and move to the
+     * top left of the block.  Blocks within lists are laid out by the list.
+     * @param style paragraph style of the block
+     * @throws IOException if the pending text cannot be written
+     */
+    public void startBlock(PdParagraph style) throws IOException
+    {
+        writeInlineText();
+        if(isScanning(HtmlListScanner.class)){return;}
+
+        float yPos = style.getUpperY(writer.getLastYPosition());
+        writer.setLastYPosition(yPos);
+        xPosition = style.getLeftX();
+        blockStyle = style;
+    }
+
+    /**
+     * End a block element: write the pending inline text, and move below the
+     * block.  Nothing is done for inline elements, and for blocks within
+     * tables and lists.
+     * @param element element ending
+     * @throws IOException if the pending text cannot be written
+     */
+    public void endBlock(Element element) throws IOException
+    {
+        if(!element.isBlock() || isScanning(HtmlListScanner.class) || isScanning(HtmlTableScanner.class)){return;}
+
+        writeInlineText();
+        PdParagraph par = getNodeStyle(element, element.nodeName());
+        float yPos = writer.getLastYPosition() - (par.getLineHeight() + par.getBelowSpacing().getPoints());
+        writer.setLastYPosition(yPos);
+    }
+
+    /**
+     * Add the rules of the style sheet linked by a node to the rules of the
+     * document, waiting for it if it is being parsed ahead.
+     * @param node link node; nothing is done if it does not link a style sheet
+     */
+    public void loadLinkedStyleSheet(Node node)
+    {
+        File cssFile=getLinkedStyleSheetFile(node);
+        if(cssFile==null){return;}
+
         try
         {
-            Map<String, Map<String, CSSValue>> css = Utils.getHtmlCssMap(new File(cssFilePath));
-            loadCssSelectorsIntoMaps(css);
+            CompletableFuture<CompiledStyleSheet> future=linkedStyleSheets.remove(cssFile.getCanonicalPath());
+            CompiledStyleSheet styleSheet=(future==null)?StyleSheetCache.getInstance().get(cssFile):future.join();
+            selectors=styleSheet.mergeInto(selectors);
+        }
+        catch(CompletionException e)
+        {
+            throw new RuntimeException(e.getCause().getMessage(), e.getCause());
         }
         catch(Exception e)
         {
             throw new RuntimeException(e.getMessage(), e);
         }
-         
-        
     }
 
-        private void drawImage(Node node, PdParagraph style) throws RuntimeException
-        {
-            File baseUri = new File(node.baseUri());
-            
-            if(!baseUri.isDirectory())
-            {
-                baseUri=baseUri.getParentFile();
-            }
-            String src=node.attr("src");
-            
-            float width = 0;
-            if (node.attributes().hasKey("width"))
-            {
-                width = Utils.parseDimension(node.attr("width"), style.getFontSize(), dpi).getPoints();
-            }
-            float height = 0;
-            if (node.attributes().hasKey("height"))
-            {
-                height = Utils.parseDimension(node.attr("height"), style.getFontSize(), dpi).getPoints();
-            }
-            
-            File imageFile=Paths.get(baseUri.getAbsolutePath(), src).toFile();
-            writer.drawImage(imageFile, style, width,height );
-        }
-
+    /**
+     * Draw the image of a node at the size set by its width and height
+     * attributes.  Write the pending inline text first.
+     * @param node img node
+     * @param style paragraph style of the node
+     */
+    public void drawImage(Node node, PdParagraph style)
+    {
+        ImageRequest request=createImageRequest(node, style.getFontSize());
+        writer.drawImage(request.getFile(), style, request.getWidth(),request.getHeight() );
+    }
 
-        @Override public void tail(Node node, int depth)
+    /**
+     * Sends each node to the scanner of the innermost table or list being
+     * written, if any, and each element to the handler of its tag.
+     */
+    private class NodeTextWriter implements NodeVisitor
+    {
+        @Override public void head(Node node, int depth)
         {
-            String name = node.nodeName();
-            String id = node.attr("id");
-            if ("#text".equals(name) && !(writingTable || writingList))
-            {
-                writeText((TextNode) node);
-                return;
-            }
-            
-            if(writingTable)
-            {
-                tableScanner.tail(node, depth);
-            }
-            else if(writingList)
+            ScannerScope scope=getScannerScope();
+            if(scope!=null)
             {
-                listScanner.tail(node, depth);
+                scope.scanner.head(node, depth);
             }
-            
-            if ("table".equals(name))
+            if(node instanceof TextNode)
             {
-                writingTable = false;
-                
+                if(scope==null)
+                {
+                    writeText((TextNode) node);
+                }
+                return;
             }
-            else if ("ol".equals(name) || "ul".equals(name))
+            if(node instanceof Element==false){return;}
+
+            Element element=(Element)node;
+            PdParagraph style = createNodeStyle(node);
+            try
             {
-                writingList=false;
+                getTagHandler(element).start(HtmlPdWriter.this, element, style);
             }
-            
-            if(!("head".equals(name) || "#text".equals(name) ||  writingList))
+            catch (IOException e)
             {
-                handleEndOfBlock(node, name);
-                nodeParagraphMaps.remove(id);
-                nodeStyleMaps.remove(id);
+                throw new RuntimeException(e.getMessage(), e);
             }
- 
         }
-    
 
-        private void handleEndOfBlock(Node node, String name) throws IllegalStateException
+        @Override public void tail(Node node, int depth)
         {
+            ScannerScope scope=getScannerScope();
+            if(scope!=null)
+            {
+                scope.scanner.tail(node, depth);
+                if(scope.element==node)
+                {
+                    scanners.remove(scanners.size() - 1);
+                }
+            }
+            if(node instanceof TextNode){return;}
             if(node instanceof Element == false)
             {
+                if(isScanning(HtmlListScanner.class)){return;}
                 String string=String.format("Node argument is of type '%s'; expected '%s'",node.getClass(),Element.class);
                 throw new IllegalStateException(string);
             }
-            
-            
-            Element tag=(Element)node;
-            PdParagraph par = getNodeStyle(node, name);
-            if (writingTable==false && tag.isBlock())
+
+            Element element=(Element)node;
+            try
             {
-                float yPos = writer.getLastYPosition() - (par.getLineHeight() + par.getBelowSpacing().getPoints());
-                writer.setLastYPosition(yPos);
+                getTagHandler(element).end(HtmlPdWriter.this, element);
             }
-            else
+            catch (IOException e)
             {
-                try
-                {
-                    xPosition += par.getStringWidth(" ");
-                }
-                catch (Exception e)
-                {
-                }
+                throw new RuntimeException(e.getMessage(), e);
             }
+            popNodeStyle(node);
         }
     }
+
     protected PdParagraph getNodeStyle(Node node, String name) throws IllegalStateException
     {
-        String id = node.attr("id");
-        PdParagraph par = nodeParagraphMaps.get(id);
+        NodeStyle style = findNodeStyle(node);
+        PdParagraph par = (style == null) ? getParentNodeParagraph(node) : style.style.getParagraph();
         if (par == null)
         {
-            String parentId = node.parent().attr("id");
-            par = nodeParagraphMaps.get(parentId);
-        }
-        if (par == null)
-        {
-            String string = String.format("Found tail of block-level node '%s(Id=%s)', but no paragraph style has been set.", name, id);
+            String string = String.format("Found tail of block-level node '%s', but no paragraph style has been set.", name);
             throw new IllegalStateException(string);
         }
         return par;
     }
 
+    /**
+     * Add the text of a node to the inline text of the current block.  Inline
+     * text is written when a block starts or ends, so the text of inline
+     * elements (b, i, span, ...) wraps as a single paragraph.
+     * @param node text node
+     */
     protected void writeText(TextNode node)
     {
         String text = node.text();
-        if (text != null)
-        {
-            text = text.trim();
-        }
-
-        if (text == null || text.isEmpty())
+        if (text == null || (inlineSpans.isEmpty() && text.trim().isEmpty()))
         {
             return;
         }
@@ -533,86 +817,105 @@ public class HtmlPdWriter
         {
             style = new PdParagraph(writer.getMeta());
         }
+        inlineSpans.add(new PdTextSpan(style, text));
+    }
+
+    /**
+     * Write the pending inline text, from the current x position.
+     * @throws IOException if the text cannot be written
+     */
+    public void writeInlineText() throws IOException
+    {
+        if (inlineSpans.isEmpty())
+        {
+            return;
+        }
+
+        PdParagraph style = (blockStyle == null) ? inlineSpans.get(0).getStyle() : blockStyle;
         try
         {
-            writeText(style, text);
+            xPosition = new PdTextSpanWriter(writer, style).write(inlineSpans, xPosition, false);
         }
-        catch (IOException e)
+        finally
         {
-            throw new RuntimeException(e.getMessage(), e);
+            inlineSpans.clear();
         }
     }
 
+    /**
+     * Write text at the current x position, after any pending inline text.
+     * @param style text style
+     * @param content text to write
+     * @throws IOException if the text cannot be written
+     */
     protected void writeText(PdParagraph style, String content) throws IOException
     {
-        if (writer.isAtEndOfPage())
+        writeInlineText();
+        List<PdTextSpan> spans = Collections.singletonList(new PdTextSpan(style, content));
+        xPosition = new PdTextSpanWriter(writer, style).write(spans, xPosition, false) + style.getStringWidth(" ");
+        if (xPosition >= style.getRightX())
         {
-            writer.createNewPage();
             xPosition = style.getLeftX();
         }
+    }
+    
+    protected float getXPosition()
+    {
+        return xPosition;
+    }
 
-        PDPageContentStream stream = writer.createStream();
-        try
-        {
-            stream.setFont(style.getFont(), style.getFontSize());
-            stream.setNonStrokingColor(style.getFontColor());
-            float yPosition = writer.getLastYPosition();
-            int lastPos = 0;
-            boolean firstLine = true;
-
-            while (true)
-            {
-                int start = lastPos;
-                int end = content.indexOf("\n", start);
-                if (end < 0)
-                {
-                    end = style.getWrapPositionFromOffset(start, xPosition, content);
-                }
-
-                String string = content.substring(start, end);
-                writer.writeText(stream, xPosition, yPosition, string);
+    protected void setXPosition(float position)
+    {
+        xPosition=position;
+    }
 
-                firstLine = false;
-                lastPos = end;
-                updateXPosition(style, string);
-                if (end >= content.length())
-                {
-                    break;
-                }
+    /**
+     * A node being traversed, with the children not yet visited.
+     */
+    private static class TraversalFrame
+    {
+        private final Node node;
+        private final Node[] children;
+        private int index;
 
-                yPosition = style.getNextY(yPosition);
-                xPosition = style.getLeftX();
-                writer.setLastYPosition(yPosition);
-                if (writer.isAtEndOfPage())
-                {
-                    stream = writer.createNewPageAndContentStream(stream, style);
-                    yPosition = writer.getLastYPosition();
-                    xPosition = style.getLeftX();
-                }
-            }
-            writer.setLastYPosition(yPosition);
-        }
-        finally
+        public TraversalFrame(Node node)
         {
-            if (stream != null)
+            this.node = node;
+            children=node.childNodes().toArray(new Node[node.childNodeSize()]);
+            if(node instanceof Element)
             {
-                stream.close();
+                ((Element)node).empty();
             }
         }
     }
 
-    protected void updateXPosition(PdParagraph style, String string) throws IOException
+    /**
+     * A table or list being written, and the scanner of its content.
+     */
+    private static class ScannerScope
     {
-        float stringWidth = style.getStringWidth(string);
-        xPosition += stringWidth + style.getStringWidth(" ");
-        if (xPosition >= style.getRightX())
+        private final Element element;
+        private final NodeVisitor scanner;
+
+        public ScannerScope(Element element, NodeVisitor scanner)
         {
-            xPosition = style.getLeftX();
+            this.element = element;
+            this.scanner = scanner;
         }
     }
-    
-    protected void setXPosition(float position)
+
+    /**
+     * Style of a node on the style stack, kept while the node is traversed.
+     */
+    private static class NodeStyle
     {
-        xPosition=position;
+        private final Node node;
+        private final ComputedStyle style;
+
+        public NodeStyle(Node node, ComputedStyle style)
+        {
+            this.node = node;
+            this.style = style;
+        }
     }
 }
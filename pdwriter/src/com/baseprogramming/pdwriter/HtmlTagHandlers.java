@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter;
+
+import com.baseprogramming.pdwriter.html.HtmlTableScanner;
+import com.baseprogramming.pdwriter.model.PdList;
+import com.baseprogramming.pdwriter.model.PdParagraph;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.NodeVisitor;
+
+/**
+ * The built-in tag handlers of HtmlPdWriter.
+ *
+ * @author Roberto C. Benitez
+ */
+final class HtmlTagHandlers
+{
+    /** Elements of block tags without a handler: text starts on a new line, after the block spacing. */
+    static final TagHandler BLOCK= new TagHandler()
+    {
+        @Override public void start(HtmlPdWriter htmlWriter, Element element, PdParagraph style) throws IOException
+        {
+            htmlWriter.startBlock(style);
+        }
+
+        @Override public void end(HtmlPdWriter htmlWriter, Element element) throws IOException
+        {
+            htmlWriter.endBlock(element);
+        }
+    };
+
+    /** Elements of inline tags without a handler: only their style applies, to their text. */
+    static final TagHandler INLINE= new TagHandler()
+    {
+    };
+
+    private HtmlTagHandlers(){}
+
+    /**
+     * @return handlers of the tags written by HtmlPdWriter, by tag name
+     */
+    static Map<String,TagHandler> createDefaults()
+    {
+        Map<String,TagHandler> handlers= new HashMap<>();
+        handlers.put("head", new HeadHandler());
+        handlers.put("link", new LinkHandler());
+        handlers.put("img", new ImageHandler());
+        handlers.put("table", new TableHandler());
+        handlers.put("ol", new ListHandler(true));
+        handlers.put("ul", new ListHandler(false));
+        return handlers;
+    }
+
+    private static class HeadHandler implements TagHandler
+    {
+        @Override public void start(HtmlPdWriter htmlWriter, Element element, PdParagraph style) throws IOException
+        {
+            htmlWriter.startBlock(style);
+        }
+    }
+
+    private static class LinkHandler implements TagHandler
+    {
+        @Override public void start(HtmlPdWriter htmlWriter, Element element, PdParagraph style)
+        {
+            htmlWriter.loadLinkedStyleSheet(element);
+        }
+
+        @Override public void end(HtmlPdWriter htmlWriter, Element element) throws IOException
+        {
+            htmlWriter.endBlock(element);
+        }
+    }
+
+    private static class ImageHandler implements TagHandler
+    {
+        @Override public void start(HtmlPdWriter htmlWriter, Element element, PdParagraph style) throws IOException
+        {
+            htmlWriter.writeInlineText();
+            htmlWriter.drawImage(element, style);
+        }
+    }
+
+    private static class TableHandler implements TagHandler
+    {
+        @Override public void start(HtmlPdWriter htmlWriter, Element element, PdParagraph style) throws IOException
+        {
+            htmlWriter.writeInlineText();
+            HtmlTableScanner scanner= new HtmlTableScanner(htmlWriter);
+            scanner.loadTableStyles(element);
+            htmlWriter.pushScanner(element, scanner);
+        }
+
+        @Override public void end(HtmlPdWriter htmlWriter, Element element) throws IOException
+        {
+            htmlWriter.endBlock(element);
+        }
+    }
+
+    private static class ListHandler implements TagHandler
+    {
+        private final boolean numbered;
+
+        public ListHandler(boolean numbered)
+        {
+            this.numbered = numbered;
+        }
+
+        @Override public void start(HtmlPdWriter htmlWriter, Element element, PdParagraph style) throws IOException
+        {
+            htmlWriter.writeInlineText();
+            PdWriter writer=htmlWriter.getWriter();
+            PdList pdList=numbered?PdList.numeredList(writer.getMeta()):PdList.bulletList(writer.getMeta());
+            style.copyTo(pdList);
+            NodeVisitor parent=htmlWriter.getScanner();
+            if(parent instanceof HtmlListScanner)
+            {
+                ((HtmlListScanner)parent).startNestedList(pdList);
+            }
+            htmlWriter.pushScanner(element, new HtmlListScanner(htmlWriter, pdList));
+        }
+
+        @Override public void end(HtmlPdWriter htmlWriter, Element element) throws IOException
+        {
+            htmlWriter.endBlock(element);
+        }
+    }
+}
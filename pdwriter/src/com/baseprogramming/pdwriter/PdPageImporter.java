@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.pdfbox.multipdf.LayerUtility;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+
+/**
+ * Imports pages of existing PDF files into a document as form XObjects, e.g.
+ * to use a letterhead maintained as a PDF as the background of new pages.
+ * Each page is imported once per document, and cached by file and page index;
+ * the cached form is dropped if the file's size or modification time changes.
+ * The source file is only open while a page is imported.
+ *
+ * @author Roberto C. Benitez
+ */
+public class PdPageImporter
+{
+    private final PDDocument document;
+    private final LayerUtility layerUtility;
+    private final Map<String,ImportedPage> pages= new HashMap<>();
+    private int hits;
+    private int misses;
+
+    public PdPageImporter(PDDocument document)
+    {
+        this.document = document;
+        this.layerUtility = new LayerUtility(document);
+    }
+
+    public PDDocument getDocument()
+    {
+        return document;
+    }
+
+    /**
+     * Get a page of a PDF file as a form XObject of this importer's document.
+     * @param pdfFile PDF file
+     * @param pageIndex 0-based index of the page
+     * @return form XObject with the page content and resources
+     * @throws IOException if the file cannot be read
+     */
+    public PDFormXObject importPage(File pdfFile, int pageIndex) throws IOException
+    {
+        String key=pdfFile.getCanonicalPath() + "#" + pageIndex;
+        long length=pdfFile.length();
+        long lastModified=pdfFile.lastModified();
+
+        ImportedPage page=pages.get(key);
+        if(page!=null && page.matches(length, lastModified))
+        {
+            hits++;
+            return page.getForm();
+        }
+
+        misses++;
+        try(PDDocument source=PDDocument.load(pdfFile))
+        {
+            if(pageIndex < 0 || pageIndex >= source.getNumberOfPages())
+            {
+                throw new IllegalArgumentException("Invalid page index " + pageIndex + " for " + pdfFile);
+            }
+
+            PDFormXObject form=layerUtility.importPageAsForm(source, pageIndex);
+            pages.put(key, new ImportedPage(length, lastModified, form));
+            return form;
+        }
+    }
+
+    public int getHits()
+    {
+        return hits;
+    }
+
+    public int getMisses()
+    {
+        return misses;
+    }
+
+    public int size()
+    {
+        return pages.size();
+    }
+
+    private static class ImportedPage
+    {
+        private final long length;
+        private final long lastModified;
+        private final PDFormXObject form;
+
+        public ImportedPage(long length, long lastModified, PDFormXObject form)
+        {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.form = form;
+        }
+
+        public boolean matches(long length, long lastModified)
+        {
+            return this.length==length && this.lastModified==lastModified;
+        }
+
+        public PDFormXObject getForm()
+        {
+            return form;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter;
+
+import com.baseprogramming.pdwriter.model.PdPageTemplate;
+import com.baseprogramming.pdwriter.model.PdParagraph;
+import java.awt.Dimension;
+import java.io.IOException;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
+import org.apache.pdfbox.util.Matrix;
+
+/**
+ * Draws a page template on the pages of a document.  The static content is
+ * rendered into a form XObject the first time it is needed, and each page
+ * then only references the form and writes the template's slots.
+ *
+ * @author Roberto C. Benitez
+ */
+public class PdPageTemplateWriter
+{
+    private final PdWriter writer;
+    private final PdPageTemplate template;
+    private PDFormXObject form;
+
+    public PdPageTemplateWriter(PdWriter writer, PdPageTemplate template)
+    {
+        this.writer = writer;
+        this.template = template;
+    }
+
+    public PdPageTemplate getTemplate()
+    {
+        return template;
+    }
+
+    /**
+     * Get the form XObject holding the static content of the template,
+     * rendering it on first use.
+     * @return form XObject, or null if the template has no static content
+     * @throws IOException if the form cannot be written
+     */
+    public PDFormXObject getForm() throws IOException
+    {
+        if(form==null && template.hasStaticContent())
+        {
+            form=createForm();
+        }
+
+        return form;
+    }
+
+    /**
+     * Decorate a page: draw the template form, then write the slots.
+     * @param page page to decorate; normally a new, empty page
+     * @param pageNumber 1-based page number passed to the slots
+     * @throws IOException if the page content cannot be written
+     */
+    public void write(PDPage page, int pageNumber) throws IOException
+    {
+        PDFormXObject xobject=getForm();
+        try(ContentEmitter emitter=writer.createEmitter(new PDPageContentStream(writer.getDocument(), page,
+                PDPageContentStream.AppendMode.APPEND, true)))
+        {
+            if(xobject!=null)
+            {
+                emitter.drawForm(xobject);
+            }
+
+            //keep the slot font and color from leaking into the page content
+            emitter.saveGraphicsState();
+            for(PdPageTemplate.Slot slot : template.getSlots())
+            {
+                Object value=slot.getProvider().getValue(pageNumber);
+                if(value==null){continue;}
+
+                setTextStyle(emitter, slot.getStyle());
+                writer.writeText(emitter, slot.getStyle(), slot.getX(), slot.getY(), value.toString());
+            }
+            emitter.restoreGraphicsState();
+        }
+    }
+
+    private PDFormXObject createForm() throws IOException
+    {
+        PDAppearanceStream appearance= new PDAppearanceStream(writer.getDocument());
+        appearance.setBBox(template.getPage().getPageFormat());
+        appearance.setResources(new PDResources());
+
+        try(ContentEmitter emitter=writer.createEmitter(new PDPageContentStream(writer.getDocument(), appearance,
+                appearance.getStream().createOutputStream(COSName.FLATE_DECODE))))
+        {
+            for(PdPageTemplate.Image image : template.getImages())
+            {
+                drawImage(emitter, image);
+            }
+
+            for(PdPageTemplate.Line line : template.getLines())
+            {
+                emitter.setLineWidth(line.getLineWidth());
+                emitter.moveTo(line.getX1(), line.getY1());
+                emitter.lineTo(line.getX2(), line.getY2());
+                emitter.stroke();
+            }
+
+            for(PdPageTemplate.Text text : template.getTexts())
+            {
+                writeText(emitter, text);
+            }
+        }
+
+        return appearance;
+    }
+
+    private void drawImage(ContentEmitter emitter, PdPageTemplate.Image image) throws IOException
+    {
+        float width=image.getWidth();
+        float height=image.getHeight();
+        if(width <=0 || height <=0)
+        {
+            Dimension size=writer.getImageCache().getImageSize(image.getFile());
+            width=(width <=0)?size.width:width;
+            height=(height <=0)?size.height:height;
+        }
+
+        PDImageXObject xobject=writer.getImageCache().getImage(image.getFile(), width, height);
+        emitter.drawImage(xobject, image.getX(), image.getY(), width, height);
+    }
+
+    private void writeText(ContentEmitter emitter, PdPageTemplate.Text text) throws IOException
+    {
+        boolean translucent=text.getOpacity() < 1;
+        if(translucent)
+        {
+            PDExtendedGraphicsState state= new PDExtendedGraphicsState();
+            state.setNonStrokingAlphaConstant(text.getOpacity());
+            emitter.saveGraphicsState();
+            emitter.setGraphicsStateParameters(state);
+        }
+
+        setTextStyle(emitter, text.getStyle());
+        if(text.getAngle()==0)
+        {
+            writer.writeText(emitter, text.getStyle(), text.getX(), text.getY(), text.getText());
+        }
+        else
+        {
+            emitter.beginText();
+            emitter.setTextMatrix(Matrix.getRotateInstance(Math.toRadians(text.getAngle()), text.getX(), text.getY()));
+            writer.showText(emitter, text.getStyle(), text.getText());
+            emitter.endText();
+        }
+
+        if(translucent)
+        {
+            emitter.restoreGraphicsState();
+        }
+    }
+
+    private static void setTextStyle(ContentEmitter emitter, PdParagraph style) throws IOException
+    {
+        emitter.setFont(style.getPdFont(), style.getFontSize());
+        emitter.setNonStrokingColor(style.getFontColor());
+    }
+}
@@ -17,6 +17,7 @@ package com.baseprogramming.pdwriter;
 
 import com.baseprogramming.pdwriter.model.Borders;
 import com.baseprogramming.pdwriter.model.PdColumn;
+import com.baseprogramming.pdwriter.model.PdParagraph;
 import com.baseprogramming.pdwriter.model.PdTable;
 import com.baseprogramming.pdwriter.model.PdTableHeader;
 import java.io.IOException;
@@ -24,7 +25,13 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
+import org.apache.pdfbox.util.Matrix;
 
 /**
  *
@@ -33,8 +40,11 @@ import org.apache.pdfbox.pdmodel.PDPageContentStream;
 public class PdTableWriter implements AutoCloseable
 {
     private final PdWriter writer;
-    private PDPageContentStream stream;
+    private ContentEmitter emitter;
     private final PdTable table;
+    private PDFormXObject headerForm;
+    private float headerHeight;
+    private boolean headerPending;
     boolean drewRowBorder=false;
 
     public PdTableWriter(PdWriter writer, PdTable table)
@@ -43,11 +53,11 @@ public class PdTableWriter implements AutoCloseable
         this.table = table;
     }
     
-    private void createStreamIfNull() throws IOException
+    private void createEmitterIfNull() throws IOException
     {
-        if(stream==null)
+        if(emitter==null)
         {
-            stream=writer.createStream(table);
+            emitter=writer.createEmitter(table);
         }
     }
 
@@ -56,41 +66,115 @@ public class PdTableWriter implements AutoCloseable
         return drewRowBorder;
     }
     
+    /**
+     * Write the column headers at the table's start position.  If the table
+     * repeats its header, the header row is drawn from a form XObject, which
+     * is rendered on first use and reused on every continuation page; the
+     * column widths must be final by then.
+     * @throws IOException 
+     */
     public void writeColumnHeaders() throws IOException
+    {
+        createEmitterIfNull();
+        float topY = table.getStartYPosition();
+        float y;
+        if(table.isRepeatHeader())
+        {
+            y=drawHeaderForm(topY);
+        }
+        else
+        {
+            y=writeColumnHeaders(emitter, topY);
+        }
+        writer.setLastYPosition(y);
+    }
+
+    private float writeColumnHeaders(ContentEmitter emitter, float topY) throws IOException
     {
         PdTableHeader header=table.getHeader();
-        createStreamIfNull();
-        stream.setFont(header.getFont(), header.getFontSize());
+        PdParagraph headerStyle=createHeaderStyle();
+        emitter.setFont(header.getPdFont(), header.getFontSize());
         
         float xPosition = table.getFirstColumnXPosition();
-        float topY = table.getStartYPosition();
         float y=topY - (table.getSpacingAndPaddingGap() + table.getLineHeight());
         for (PdColumn column : header.getColumns())
         {
             String label = column.getLabel();
             float width = column.getWidth().getPoints();
-            writer.writeText(stream, xPosition,y, label);
+            writer.writeText(emitter, headerStyle, xPosition,y, label);
             xPosition = table.getColumnXPosition(xPosition + width);
         }
         
         if (table.getRowBorder() > 0)
         {
             float borderYPosition = table.getNextBorderPosition(y);
-            drawRowBorder( borderYPosition);
+            drawRowBorder(emitter, borderYPosition);
             y = borderYPosition - (table.getTextBaseToTopBorderDistance());
         }
         else
         {
             y -= (table.getSpacingAndPaddingGap() +table.getLineHeight());
         }
-        writer.setLastYPosition(y);
+        return y;
+    }
+
+    /**
+     * The table style with the header font, so labels fall back to the
+     * table's fallback fonts like the cells do.
+     */
+    private PdParagraph createHeaderStyle()
+    {
+        PdTableHeader header=table.getHeader();
+        PdParagraph style= new PdParagraph(table.getPage());
+        table.copyTo(style);
+        style.setFont(header.getPdFont());
+        style.setFontSize(header.getFontSize());
+        return style;
+    }
+
+    private float drawHeaderForm(float topY) throws IOException
+    {
+        if(headerForm==null)
+        {
+            headerForm=createHeaderForm();
+        }
+
+        emitter.saveGraphicsState();
+        emitter.transform(Matrix.getTranslateInstance(0, topY));
+        emitter.drawForm(headerForm);
+        emitter.restoreGraphicsState();
+        return topY - headerHeight;
+    }
+
+    /**
+     * Render the header row into a form whose top edge is at y=0, so it can be
+     * placed at any table start position with a translation.
+     */
+    private PDFormXObject createHeaderForm() throws IOException
+    {
+        PDAppearanceStream form= new PDAppearanceStream(writer.getDocument());
+        form.setResources(new PDResources());
+
+        float bottomY;
+        try(ContentEmitter formEmitter=writer.createEmitter(new PDPageContentStream(writer.getDocument(), form,
+                form.getStream().createOutputStream(COSName.FLATE_DECODE))))
+        {
+            bottomY=writeColumnHeaders(formEmitter, 0);
+        }
+
+        headerHeight=-bottomY;
+        float pageWidth=table.getPage().getPageFormat().getWidth();
+        float border=table.getRowBorder();
+        form.setBBox(new PDRectangle(0, bottomY - border, pageWidth,
+                headerHeight + border + table.getHeader().getFontSize()));
+        return form;
     }
     
     public void write(List<Map<String,Object>> data) throws IOException
     {
         initYPosition();
         writeColumnHeaders();
-        stream.setFont(table.getFont(), table.getFontSize());
+        emitter.setFont(table.getPdFont(), table.getFontSize());
         try
         {   
            drewRowBorder=false;
@@ -110,9 +194,9 @@ public class PdTableWriter implements AutoCloseable
         }
         finally
         {
-            if(stream!=null)
+            if(emitter!=null)
             {
-                stream.close();
+                emitter.close();
             }
             writer.decreaseYPosition(table.getBelowSpacing());
         }
@@ -121,6 +205,7 @@ public class PdTableWriter implements AutoCloseable
     public void writeRow(Map<String, Object> rowData) throws IOException
     {
         drewRowBorder=false;
+        drawPendingHeader();
 
         Map<String, List<String>> wrappedRow = new TreeMap<>();
         int maxRows = wrapRowColumnData(rowData, wrappedRow);
@@ -130,6 +215,7 @@ public class PdTableWriter implements AutoCloseable
             writer.increaseYPosition(table.getTextBaseToTopBorderDistance());
             handlePageOverflow(true);
             drewRowBorder=false;
+            drawPendingHeader();
         }
         
         float maxRowPosition = writeWrappedRow(wrappedRow);
@@ -149,6 +235,14 @@ public class PdTableWriter implements AutoCloseable
         }
     }
 
+    private void drawPendingHeader() throws IOException
+    {
+        if(!headerPending){return;}
+
+        headerPending=false;
+        writer.setLastYPosition(drawHeaderForm(table.getStartYPosition()));
+    }
+
     public float initYPosition()
     {
         float yPosition = writer.getLastYPosition() - table.getAboveSpacing().getPoints();
@@ -159,7 +253,7 @@ public class PdTableWriter implements AutoCloseable
     
     private float writeWrappedRow(Map<String, List<String>> wrappedRow) throws IOException
     {   
-        createStreamIfNull();
+        createEmitterIfNull();
         PdTableHeader header=table.getHeader();
         
         float xPosition=table.getFirstColumnXPosition();
@@ -185,7 +279,7 @@ public class PdTableWriter implements AutoCloseable
         float rowYPosition=writer.getLastYPosition();
         for(String line : cellContent)
         {
-            writer.writeText(stream, xPosition, rowYPosition,line);
+            writer.writeText(emitter, table, xPosition, rowYPosition,line);
             rowYPosition=table.getNextY(rowYPosition);
         }
         
@@ -194,35 +288,39 @@ public class PdTableWriter implements AutoCloseable
     
     public void drawRowBorder(float yRowPosition) throws IOException
     {
-        createStreamIfNull();
-        
+        createEmitterIfNull();
+        drawRowBorder(emitter, yRowPosition);
+    }
+
+    private void drawRowBorder(ContentEmitter emitter, float yRowPosition) throws IOException
+    {
         float x=table.getLeftX();
         float x2=table.getRightX();
-        writer.drawHorizontalLine(stream, table.getRowBorder(), x, yRowPosition,x2);
-        stream.closeAndStroke();
+        writer.drawHorizontalLine(emitter, table.getRowBorder(), x, yRowPosition,x2);
+        emitter.closeAndStroke();
     }
     
     public void drawColumnBorders() throws IOException
     {
-        if(table.getColumnBorder() <=0){return;}
-        createStreamIfNull();
+        if(table.getColumnBorder() <=0 || headerPending){return;}
+        createEmitterIfNull();
         float x = table.getLeftX();
         float y1 = table.getStartYPosition();
 
         float y2 = writer.getLastYPosition();
         for (PdColumn column : table.getHeader().getColumns())
         {
-            writer.drawVerticalLine(stream, table.getColumnBorder(), x, y1, y2);
+            writer.drawVerticalLine(emitter, table.getColumnBorder(), x, y1, y2);
             float width = column.getWidth().getPoints();
             x = table.getColumnXPosition(x + width);
         }
-        stream.closeAndStroke();
+        emitter.closeAndStroke();
     }
     
     public void drawBordersIfPresent(boolean supressBottomBorder) throws IOException
     {
         Borders border=table.getBorder();
-        if (!border.hasBorders()){return;}
+        if (!border.hasBorders() || headerPending){return;}
 
         float x = table.getLeftX();
         float x2 = table.getRightX();
@@ -231,25 +329,25 @@ public class PdTableWriter implements AutoCloseable
 
         if (border.getTop() > 0)
         {
-            writer.drawHorizontalLine(stream, border.getTop(), x, y, x2);
+            writer.drawHorizontalLine(emitter, border.getTop(), x, y, x2);
         }
 
         if (border.getRight() > 0)
         {
-            writer.drawVerticalLine(stream, border.getRight(), x2, y, y2);
+            writer.drawVerticalLine(emitter, border.getRight(), x2, y, y2);
         }
 
         if (border.getBottom() > 0 && !supressBottomBorder)
         {
-            writer.drawHorizontalLine(stream, border.getBottom(), x, y2, x2);
+            writer.drawHorizontalLine(emitter, border.getBottom(), x, y2, x2);
         }
 
         if (border.getLeft() > 0)
         {
-            writer.drawVerticalLine(stream, border.getLeft(), x, y, y2);
+            writer.drawVerticalLine(emitter, border.getLeft(), x, y, y2);
         }
 
-        stream.stroke();
+        emitter.stroke();
     }
     
     public int wrapRowColumnData(Map<String, Object> rowData, Map<String, List<String>> wrappedRow) throws IOException
@@ -280,7 +378,7 @@ public class PdTableWriter implements AutoCloseable
     
     public void handlePageOverflow(boolean supressBottomBorder) throws IOException
     {
-        createStreamIfNull();
+        createEmitterIfNull();
         drawBordersIfPresent(supressBottomBorder);
         
         if(table.getColumnBorder() > 0)
@@ -288,17 +386,27 @@ public class PdTableWriter implements AutoCloseable
             drawColumnBorders();
         }
         
-        stream = writer.createNewPageAndContentStream(stream, table);
-        float tableTopY=table.getUpperY(writer.getLastYPosition()) + table.getLineHeight() + table.getSpacingAndPaddingGap();
-        table.setStartYPosition(tableTopY);
+        emitter = writer.createNewPageAndEmitter(emitter, table);
+        if(table.isRepeatHeader())
+        {
+            //drawn with the first row of the page, so a table that ends at the bottom of a page leaves no header behind
+            float tableTopY=table.getUpperY(writer.getLastYPosition());
+            table.setStartYPosition(tableTopY);
+            headerPending=true;
+        }
+        else
+        {
+            float tableTopY=table.getUpperY(writer.getLastYPosition()) + table.getLineHeight() + table.getSpacingAndPaddingGap();
+            table.setStartYPosition(tableTopY);
+        }
     }
 
     @Override
     public void close() throws Exception
     {
-        if(stream!=null)
+        if(emitter!=null)
         {
-            stream.close();
+            emitter.close();
         }
     }
  
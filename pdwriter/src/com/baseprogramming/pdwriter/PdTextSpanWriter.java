@@ -0,0 +1,356 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter;
+
+import com.baseprogramming.pdwriter.model.PdParagraph;
+import com.baseprogramming.pdwriter.model.PdTextSpan;
+import java.awt.Color;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lays out the styled spans of a paragraph in a single pass.  Lines break at
+ * white space, across span boundaries; each word is measured once, with the
+ * font of its span, and each line is written as one text object that switches
+ * font and color between spans.  Runs of white space collapse to a single
+ * space, and line feeds start a new line.
+ * <p>
+ * The paragraph provides the line geometry (indents and right edge); the
+ * spans provide the font, size and color of the text.  Each line is measured
+ * before its baseline is placed: the baseline sits below the previous one by
+ * the largest descent of the previous line plus the largest ascent of the
+ * line, so a line with larger text moves down to make room for it.
+ *
+ * @author Roberto C. Benitez
+ */
+public class PdTextSpanWriter
+{
+    private final PdWriter writer;
+    private final PdParagraph paragraph;
+    private final List<Fragment> line= new ArrayList<>();
+    private final List<Fragment> word= new ArrayList<>();
+    private ContentEmitter emitter;
+    private float wordWidth;
+    private PdParagraph spaceStyle;
+    private boolean firstLine;
+    private float lineX;
+    private float x;
+    private float lineAscent;
+    private float lineDescent;
+    private float previousDescent;
+    private int pendingLines;
+    private boolean baselinePlaced;
+    private float fontSize;
+    private Color color;
+
+    public PdTextSpanWriter(PdWriter writer, PdParagraph paragraph)
+    {
+        this.writer = writer;
+        this.paragraph = paragraph;
+    }
+
+    /**
+     * Write spans, starting on the line at the writer's last y position.  When
+     * the text starts a line, its baseline is lowered if the line holds text
+     * taller than the paragraph's; a line already started keeps its baseline.
+     * The last y position is left at the last line written, or at the line
+     * started by a trailing line feed.
+     * @param spans spans to write
+     * @param xPosition x position at which the text starts
+     * @param firstLine true if the text starts the first line of the paragraph
+     * @return x position after the text, including any trailing space
+     * @throws IOException if the text cannot be measured or written
+     */
+    public float write(List<PdTextSpan> spans, float xPosition, boolean firstLine) throws IOException
+    {
+        this.firstLine=firstLine;
+        if(writer.isAtEndOfPage())
+        {
+            writer.createNewPage();
+            xPosition=paragraph.getLeftX(firstLine);
+        }
+
+        emitter=writer.createEmitter(paragraph);
+        try
+        {
+            initEmitterStyle();
+            lineX=xPosition;
+            x=xPosition;
+            baselinePlaced=x > getLineLeftX();
+            pendingLines=0;
+            previousDescent=getDescent(paragraph);
+            for(PdTextSpan span : spans)
+            {
+                addSpan(span.getStyle(), span.getText());
+            }
+            endWord();
+            writeLine();
+            skipPendingLines();
+
+            if(spaceStyle!=null && x > getLineLeftX())
+            {
+                x+=spaceStyle.getStringWidth(" ");
+            }
+            return x;
+        }
+        finally
+        {
+            emitter.close();
+        }
+    }
+
+    private void addSpan(PdParagraph style, String text) throws IOException
+    {
+        int start=-1;
+        for(int i=0;i<text.length();i++)
+        {
+            char c=text.charAt(i);
+            if(!Character.isWhitespace(c))
+            {
+                if(start < 0){start=i;}
+                continue;
+            }
+
+            if(start >= 0)
+            {
+                addPiece(style, text.substring(start, i));
+                start=-1;
+            }
+            endWord();
+            if(c=='\n')
+            {
+                writeLine();
+                newLine();
+                spaceStyle=null;
+            }
+            else
+            {
+                spaceStyle=style;
+            }
+        }
+
+        if(start >= 0)
+        {
+            addPiece(style, text.substring(start));
+        }
+    }
+
+    private void addPiece(PdParagraph style, String text) throws IOException
+    {
+        float width=style.getStringWidth(text);
+        word.add(new Fragment(style, text, width));
+        wordWidth+=width;
+    }
+
+    private void endWord() throws IOException
+    {
+        if(word.isEmpty()){return;}
+
+        float right=paragraph.getRightX();
+        float spaceWidth=(spaceStyle!=null && x > getLineLeftX())?spaceStyle.getStringWidth(" "):0;
+        if(x + spaceWidth + wordWidth > right && x > getLineLeftX())
+        {
+            writeLine();
+            newLine();
+            spaceWidth=0;
+        }
+        if(spaceWidth > 0)
+        {
+            append(spaceStyle, " ", spaceWidth);
+        }
+        spaceStyle=null;
+
+        if(x + wordWidth > right)
+        {
+            breakWord(right);
+        }
+        else
+        {
+            for(Fragment piece : word)
+            {
+                append(piece.style, piece.text.toString(), piece.width);
+            }
+        }
+        word.clear();
+        wordWidth=0;
+    }
+
+    /**
+     * Break a word longer than a line between characters.
+     */
+    private void breakWord(float right) throws IOException
+    {
+        for(Fragment piece : word)
+        {
+            String text=piece.text.toString();
+            for(int i=0;i<text.length();)
+            {
+                int end=i + Character.charCount(text.codePointAt(i));
+                String character=text.substring(i, end);
+                float width=piece.style.getStringWidth(character);
+                if(x + width > right && x > getLineLeftX())
+                {
+                    writeLine();
+                    newLine();
+                }
+                append(piece.style, character, width);
+                i=end;
+            }
+        }
+    }
+
+    private void append(PdParagraph style, String text, float width)
+    {
+        Fragment last=line.isEmpty()?null:line.get(line.size() - 1);
+        if(last!=null && last.style==style)
+        {
+            last.text.append(text);
+            last.width+=width;
+        }
+        else
+        {
+            line.add(new Fragment(style, text, width));
+            lineAscent=Math.max(lineAscent, getAscent(style));
+            lineDescent=Math.max(lineDescent, getDescent(style));
+        }
+        x+=width;
+    }
+
+    private float getLineLeftX()
+    {
+        return paragraph.getLeftX(firstLine);
+    }
+
+    private static float getAscent(PdParagraph style)
+    {
+        return style.getFontSize() * style.getLineSpacing();
+    }
+
+    private static float getDescent(PdParagraph style)
+    {
+        return style.getLineHeight() - getAscent(style);
+    }
+
+    private void writeLine() throws IOException
+    {
+        if(line.isEmpty()){return;}
+
+        placeBaseline();
+        emitter.beginText();
+        emitter.newLineAtOffset(lineX, writer.getLastYPosition());
+        for(Fragment fragment : line)
+        {
+            setEmitterStyle(fragment.style);
+            writer.showText(emitter, fragment.style, fragment.text.toString());
+        }
+        emitter.endText();
+        line.clear();
+        previousDescent=lineDescent;
+    }
+
+    /**
+     * Move the last y position to the baseline of the current line, now that
+     * its text is known, starting a new page if the line does not fit.  Lines
+     * left empty by consecutive line feeds take the paragraph line height.
+     */
+    private void placeBaseline() throws IOException
+    {
+        if(baselinePlaced){return;}
+
+        //the first line of the text, or of a page, starts at the given baseline
+        float drop=Math.max(0, lineAscent - getAscent(paragraph));
+        float height=(pendingLines==0)?drop
+                :previousDescent + paragraph.getLineHeight() * (pendingLines - 1) + lineAscent;
+        writer.setLastYPosition(writer.getLastYPosition() - height);
+        if(writer.isAtEndOfPage())
+        {
+            emitter=writer.createNewPageAndEmitter(emitter, paragraph);
+            initEmitterStyle();
+            writer.setLastYPosition(writer.getLastYPosition() - drop);
+        }
+        pendingLines=0;
+        baselinePlaced=true;
+    }
+
+    /**
+     * Move to the line started by trailing line feeds, which holds no text.
+     */
+    private void skipPendingLines() throws IOException
+    {
+        if(pendingLines==0){return;}
+
+        float height=previousDescent + paragraph.getLineHeight() * (pendingLines - 1) + getAscent(paragraph);
+        writer.setLastYPosition(writer.getLastYPosition() - height);
+        pendingLines=0;
+        if(writer.isAtEndOfPage())
+        {
+            emitter=writer.createNewPageAndEmitter(emitter, paragraph);
+            initEmitterStyle();
+        }
+    }
+
+    private void newLine()
+    {
+        pendingLines++;
+        firstLine=false;
+        lineX=paragraph.getLeftX(false);
+        x=lineX;
+        lineAscent=0;
+        lineDescent=0;
+        baselinePlaced=false;
+    }
+
+    /**
+     * Track the font size and color set by the writer on a new emitter.
+     */
+    private void initEmitterStyle()
+    {
+        fontSize=paragraph.getFontSize();
+        color=paragraph.getFontColor();
+    }
+
+    /**
+     * Set the font and color of a style, if they are not the current ones.
+     */
+    private void setEmitterStyle(PdParagraph style) throws IOException
+    {
+        if(emitter.getFont()!=style.getPdFont() || fontSize!=style.getFontSize())
+        {
+            emitter.setFont(style.getPdFont(), style.getFontSize());
+            fontSize=style.getFontSize();
+        }
+        if(!style.getFontColor().equals(color))
+        {
+            emitter.setNonStrokingColor(style.getFontColor());
+            color=style.getFontColor();
+        }
+    }
+
+    private static class Fragment
+    {
+        private final PdParagraph style;
+        private final StringBuilder text;
+        private float width;
+
+        public Fragment(PdParagraph style, String text, float width)
+        {
+            this.style = style;
+            this.text = new StringBuilder(text);
+            this.width = width;
+        }
+    }
+}
@@ -16,26 +16,37 @@
 package com.baseprogramming.pdwriter;
 
 
+import com.baseprogramming.pdwriter.font.EncodedTextCache;
+import com.baseprogramming.pdwriter.font.FontCache;
+import com.baseprogramming.pdwriter.font.TextRun;
+import com.baseprogramming.pdwriter.image.ImageCache;
+import com.baseprogramming.pdwriter.image.ImageDownsampler;
 import com.baseprogramming.pdwriter.model.Margin;
 import com.baseprogramming.pdwriter.model.PageMetadata;
 import com.baseprogramming.pdwriter.model.PdColumn;
 import com.baseprogramming.pdwriter.model.PdList;
+import com.baseprogramming.pdwriter.model.PdPageTemplate;
 import com.baseprogramming.pdwriter.model.PdParagraph;
 import com.baseprogramming.pdwriter.model.PdTable;
+import com.baseprogramming.pdwriter.model.PdTextSpan;
 import com.baseprogramming.pdwriter.model.ValueProvider;
 import com.baseprogramming.pdwriter.units.PdPoints;
 import com.baseprogramming.pdwriter.units.PdUnit;
+import java.awt.Dimension;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 
 /**
@@ -46,7 +57,16 @@ public class PdWriter
 {
     private final PageMetadata meta;
     private final PDDocument document;
+    private final ImageCache imageCache;
+    private final FontCache fontCache;
+    private final EncodedTextCache textCache;
+    private final PdPageImporter pageImporter;
+    private final Map<PdPageTemplate,PdPageTemplateWriter> templateWriters= new HashMap<>();
     private PDPage currentPage;
+    private PdPageTemplate pageTemplate;
+    private PDFormXObject pageBackground;
+    private int coordinatePrecision=ContentEmitter.DEFAULT_PRECISION;
+    private HtmlPdWriter htmlWriter;
   
     private float yPosition;
 
@@ -59,6 +79,10 @@ public class PdWriter
     {
         this.meta = meta;
         this.document = document;
+        this.imageCache = new ImageCache(document);
+        this.fontCache = new FontCache(document);
+        this.textCache = new EncodedTextCache();
+        this.pageImporter = new PdPageImporter(document);
         yPosition = meta.getUpperRightY();
     }
     
@@ -91,6 +115,11 @@ public class PdWriter
     {
         return PdList.numeredList(meta);
     }
+    
+    public PdPageTemplate createPageTemplate()
+    {
+        return new PdPageTemplate(meta);
+    }
         
 
     public PageMetadata getMeta()
@@ -142,17 +171,149 @@ public class PdWriter
     {
         return document;
     }
+
+    public PdPageTemplate getPageTemplate()
+    {
+        return pageTemplate;
+    }
+
+    /**
+     * Set the template drawn on each page created from now on.  The static
+     * content of a template is embedded once per document, and shared by all
+     * the pages using it.
+     * @param pageTemplate page template; null for undecorated pages
+     */
+    public void setPageTemplate(PdPageTemplate pageTemplate)
+    {
+        this.pageTemplate = pageTemplate;
+    }
+
+    public PDFormXObject getPageBackground()
+    {
+        return pageBackground;
+    }
+
+    /**
+     * Set the form drawn behind the content (and template) of each page created
+     * from now on.
+     * @param pageBackground background form, e.g. from {@link #importPage(File, int)}; null for none
+     */
+    public void setPageBackground(PDFormXObject pageBackground)
+    {
+        this.pageBackground = pageBackground;
+    }
+
+    /**
+     * Import a page of an existing PDF file, e.g. a letterhead, as a form.  A
+     * page is imported once per document; importing it again returns the same form.
+     * @param pdfFile PDF file
+     * @param pageIndex 0-based index of the page
+     * @return form XObject with the content of the page
+     * @throws IOException if the file cannot be read
+     */
+    public PDFormXObject importPage(File pdfFile, int pageIndex) throws IOException
+    {
+        return pageImporter.importPage(pdfFile, pageIndex);
+    }
+
+    public PdPageImporter getPageImporter()
+    {
+        return pageImporter;
+    }
+
+    public FontCache getFontCache()
+    {
+        return fontCache;
+    }
+
+    public EncodedTextCache getTextCache()
+    {
+        return textCache;
+    }
+
+    public int getCoordinatePrecision()
+    {
+        return coordinatePrecision;
+    }
+
+    /**
+     * Set the number of decimal places written for coordinates and line widths.
+     * @param coordinatePrecision decimal places, 0 to {@link ContentEmitter#MAX_PRECISION}
+     */
+    public void setCoordinatePrecision(int coordinatePrecision)
+    {
+        ContentEmitter.checkPrecision(coordinatePrecision);
+        this.coordinatePrecision = coordinatePrecision;
+    }
+
+    /**
+     * Load a TrueType font for use in this document.  The file is read once per
+     * JVM (see {@link com.baseprogramming.pdwriter.font.FontRegistry}), and
+     * parsed once per document; only the glyphs used are embedded.
+     * @param fontFile TrueType font file
+     * @return font to set on paragraph styles
+     * @throws IOException if the font cannot be loaded
+     */
+    public PDFont loadFont(File fontFile) throws IOException
+    {
+        return fontCache.getFont(fontFile);
+    }
+
+    public ImageCache getImageCache()
+    {
+        return imageCache;
+    }
+
+    public float getImageTargetDpi()
+    {
+        ImageDownsampler downsampler=imageCache.getDownsampler();
+        return (downsampler==null)?0:downsampler.getTargetDpi();
+    }
+
+    /**
+     * Set the resolution images are reduced to, given the size they are drawn at.
+     * Images at or below this resolution are embedded unchanged.
+     * @param dpi target resolution; 0 (the default) to embed images at their native resolution
+     */
+    public void setImageTargetDpi(float dpi)
+    {
+        imageCache.setDownsampler((dpi > 0)?new ImageDownsampler(dpi):null);
+    }
     
     public void writeHtml(String html) throws IOException
     {
-        HtmlPdWriter tmp = new HtmlPdWriter(this);
-        tmp.write(html);
+        getHtmlWriter().write(html);
     }
 
     public void writeHtml(File htmlSourceFile) throws IOException
     {
-        HtmlPdWriter tmp = new HtmlPdWriter(this);
-        tmp.write(htmlSourceFile);
+        getHtmlWriter().write(htmlSourceFile);
+    }
+
+    /**
+     * Write a large HTML file without parsing it into a DOM first (see
+     * {@link HtmlPdWriter#writeStreaming(File)}).
+     * @param htmlSourceFile UTF-8 HTML file
+     * @throws IOException if the file cannot be read, or the document written
+     */
+    public void writeHtmlStreaming(File htmlSourceFile) throws IOException
+    {
+        getHtmlWriter().writeStreaming(htmlSourceFile);
+    }
+
+    /**
+     * Get the HTML writer used by writeHtml.  The same writer is used for every
+     * call, so its style caches are shared by all the HTML written to the
+     * document.
+     * @return HTML writer of this writer
+     */
+    public HtmlPdWriter getHtmlWriter()
+    {
+        if(htmlWriter==null)
+        {
+            htmlWriter= new HtmlPdWriter(this);
+        }
+        return htmlWriter;
     }
     
     public void write(PdTable table, List<Map<String,Object>> data) throws IOException
@@ -188,10 +349,10 @@ public class PdWriter
     
     public void drawVerticalLine(float lineWidth, float x, float y1, float y2) throws IOException
     {
-        try(PDPageContentStream stream = createStream())
+        try(ContentEmitter emitter = createEmitter())
         {
-            drawVerticalLine(stream, lineWidth, x, y1, y2);
-            stream.stroke();
+            drawVerticalLine(emitter, lineWidth, x, y1, y2);
+            emitter.stroke();
         }
     }
     
@@ -202,6 +363,13 @@ public class PdWriter
         stream.lineTo(x, y2);
     }
     
+    public void drawVerticalLine(ContentEmitter emitter, float lineWidth, float x, float y1, float y2) throws IOException
+    {
+        emitter.setLineWidth(lineWidth);
+        emitter.moveTo(x, y1);
+        emitter.lineTo(x, y2);
+    }
+    
     public void drawHorizontalLine() throws IOException
     {
         drawHorizontalLine(1);
@@ -217,10 +385,10 @@ public class PdWriter
 
     public void drawHorizontalLine(float lineWidth, float x1, float y, float x2) throws IOException
     {
-        try(PDPageContentStream stream = createStream())
+        try(ContentEmitter emitter = createEmitter())
         {
-            drawHorizontalLine(stream,lineWidth, x1, y, x2);
-            stream.stroke();
+            drawHorizontalLine(emitter,lineWidth, x1, y, x2);
+            emitter.stroke();
         }
     }
     
@@ -231,6 +399,13 @@ public class PdWriter
         stream.lineTo(x2, y);
     }
     
+    public void drawHorizontalLine(ContentEmitter emitter, float lineWidth, float x1, float y, float x2) throws IOException
+    {
+        emitter.setLineWidth(lineWidth);
+        emitter.moveTo(x1, y);
+        emitter.lineTo(x2, y);
+    }
+    
     public void createPageBreak() throws IOException
     {
         createNewPage();
@@ -281,11 +456,9 @@ public class PdWriter
             createNewPage();
         }
         
-        PDPageContentStream stream=createStream();
+        ContentEmitter emitter=createEmitter(paragraph);
         try
         {
-            stream.setFont(paragraph.getFont(), paragraph.getFontSize());
-            stream.setNonStrokingColor(paragraph.getFontColor());
             yPosition=paragraph.getUpperY(yPosition);
             int lastPos=0;
             boolean firstLine=true;
@@ -304,7 +477,7 @@ public class PdWriter
 
                 String string=content.substring(start, end);
                 float xPosition=paragraph.getLeftX(firstLine);
-                writeText(stream, xPosition, yPosition, string);
+                writeText(emitter, paragraph, xPosition, yPosition, string);
                 firstLine=false;
                 lastPos=end;
                 if(foundLineFeed){lastPos++;}
@@ -314,20 +487,47 @@ public class PdWriter
                 
                 if(isAtEndOfPage())
                 {
-                    stream = createNewPageAndContentStream(stream, paragraph);
+                    emitter = createNewPageAndEmitter(emitter, paragraph);
                 }
             }
         }
         finally
         {
             yPosition -= (paragraph.getLineSpacing() + paragraph.getBelowSpacing().getPoints());
-            if(stream!=null)
+            if(emitter!=null)
             {
-                stream.close();
+                emitter.close();
             }
         }
     }
 
+    /**
+     * Write a paragraph made of styled spans, e.g. text with bold and italic
+     * words.  Lines wrap across spans in a single pass; the paragraph provides
+     * the indents and spacing, and the spans the font, size and color.
+     * @param paragraph paragraph style
+     * @param spans text spans
+     * @throws java.io.IOException
+     */
+    public void write(PdParagraph paragraph, List<PdTextSpan> spans) throws IOException
+    {
+        if(isAtEndOfPage())
+        {
+            createNewPage();
+        }
+        
+        yPosition=paragraph.getUpperY(yPosition);
+        try
+        {
+            new PdTextSpanWriter(this, paragraph).write(spans, paragraph.getLeftX(true), true);
+            yPosition=paragraph.getNextY(yPosition);
+        }
+        finally
+        {
+            yPosition -= (paragraph.getLineSpacing() + paragraph.getBelowSpacing().getPoints());
+        }
+    }
+
     public boolean isAtEndOfPage()
     {
         return yPosition <=meta.getLowerLeftY();
@@ -342,17 +542,52 @@ public class PdWriter
         return stream;
     }
 
+    protected ContentEmitter createNewPageAndEmitter(ContentEmitter emitter, PdParagraph paragraph) throws IOException
+    {
+        createNewPage();
+        emitter.close();
+        
+        return createEmitter(paragraph);
+    }
+
     protected void createNewPage()
     {
         currentPage = new PDPage(meta.getPageFormat());
         document.addPage(currentPage);
         yPosition=meta.getUpperRightY();
+        
+        if(pageBackground!=null || pageTemplate!=null)
+        {
+            decoratePage();
+        }
+    }
+
+    private void decoratePage()
+    {
+        try
+        {
+            if(pageBackground!=null)
+            {
+                try(PDPageContentStream stream= new PDPageContentStream(document, currentPage))
+                {
+                    stream.drawForm(pageBackground);
+                }
+            }
+            if(pageTemplate==null){return;}
+
+            PdPageTemplateWriter templateWriter=templateWriters.computeIfAbsent(pageTemplate, e->new PdPageTemplateWriter(this, e));
+            templateWriter.write(currentPage, document.getNumberOfPages());
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e.getMessage(), e);
+        }
     }
     
     public PDPageContentStream createStream(PdParagraph style) throws IOException
     {
         PDPageContentStream stream=createStream();
-        stream.setFont(style.getFont(), style.getFontSize());
+        stream.setFont(style.getPdFont(), style.getFontSize());
         stream.setNonStrokingColor(style.getFontColor());
         
         return stream;
@@ -368,6 +603,41 @@ public class PdWriter
         return new PDPageContentStream(document, currentPage,PDPageContentStream.AppendMode.APPEND,true);
 
     }
+
+    /**
+     * Create an emitter for the current page, with the font and color of a style.
+     * @param style text style
+     * @return content emitter
+     * @throws IOException if the stream cannot be created
+     */
+    public ContentEmitter createEmitter(PdParagraph style) throws IOException
+    {
+        ContentEmitter emitter=createEmitter();
+        emitter.setFont(style.getPdFont(), style.getFontSize());
+        emitter.setNonStrokingColor(style.getFontColor());
+        
+        return emitter;
+    }
+
+    /**
+     * Create an emitter appending to the content of the current page.
+     * @return content emitter
+     * @throws IOException if the stream cannot be created
+     */
+    public ContentEmitter createEmitter() throws IOException
+    {
+        return createEmitter(createStream());
+    }
+
+    /**
+     * Create an emitter writing to a content stream of this document, e.g. of a form.
+     * @param stream content stream
+     * @return content emitter, using the text cache and coordinate precision of the writer
+     */
+    public ContentEmitter createEmitter(PDPageContentStream stream)
+    {
+        return new ContentEmitter(stream, textCache, coordinatePrecision);
+    }
                     
     protected void writeText(PDPageContentStream stream, float xPosition, float yPosition, String string) throws IOException
     {
@@ -377,6 +647,47 @@ public class PdWriter
         stream.endText();
     }
 
+    protected void writeText(ContentEmitter emitter, float xPosition, float yPosition, String string) throws IOException
+    {
+        emitter.beginText();
+        emitter.newLineAtOffset(xPosition, yPosition);
+        emitter.showText(string);
+        emitter.endText();
+    }
+
+    /**
+     * Write text with the font of a style, switching to the style's fallback
+     * fonts for characters the font cannot show.  The emitter font must be the
+     * style font.
+     */
+    protected void writeText(ContentEmitter emitter, PdParagraph style, float xPosition, float yPosition, String string) throws IOException
+    {
+        emitter.beginText();
+        emitter.newLineAtOffset(xPosition, yPosition);
+        showText(emitter, style, string);
+        emitter.endText();
+    }
+
+    /**
+     * Show text in the current text object, one text run at a time.
+     */
+    protected void showText(ContentEmitter emitter, PdParagraph style, String string) throws IOException
+    {
+        List<TextRun> runs=style.getTextRuns(string);
+        if(runs.size()==1 && runs.get(0).getFont()==style.getPdFont())
+        {
+            emitter.showText(runs.get(0).getText());
+            return;
+        }
+
+        for(TextRun run : runs)
+        {
+            emitter.setFont(run.getFont(), style.getFontSize());
+            emitter.showText(run.getText());
+        }
+        emitter.setFont(style.getPdFont(), style.getFontSize());
+    }
+
     /**
      * Draw an image on the current page.
      * @param imageFile File containing image
@@ -387,7 +698,9 @@ public class PdWriter
         drawImage(imageFile, style, 0,0);
     }
     /**
-     * Draw an image on the current page.
+     * Draw an image on the current page.  Images are embedded once per document;
+     * drawing the same image again reuses the XObject from the image cache.  If an
+     * image target DPI is set, the image is downsampled to it for the drawn size.
      * @param imageFile File containing image.
      * @param style paragraph style to use
      * @param width image width. Uses image actual width if argument is less than or equal to 0
@@ -398,10 +711,11 @@ public class PdWriter
     {
         try
         {
-            PDImageXObject imageObject = PDImageXObject.createFromFileByContent(imageFile, document);
+            Dimension size = imageCache.getImageSize(imageFile);
             
-            float actualWidth = (width<=0)?imageObject.getWidth():width;
-            float actualHeight = (height <= 0)? imageObject.getHeight():height;
+            float actualWidth = (width<=0)?size.width:width;
+            float actualHeight = (height <= 0)? size.height:height;
+            PDImageXObject imageObject = imageCache.getImage(imageFile, actualWidth, actualHeight);
             yPosition -= actualHeight;
             if (yPosition <= meta.getLowerLeftY())
             {
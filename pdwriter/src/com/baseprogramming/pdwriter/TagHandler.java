@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter;
+
+import com.baseprogramming.pdwriter.model.PdParagraph;
+import java.io.IOException;
+import org.jsoup.nodes.Element;
+
+/**
+ * Writes the elements of one or more HTML tags.  Handlers are registered by
+ * tag name with {@link HtmlPdWriter#setTagHandler}, and looked up once per
+ * element; elements of tags without a handler are written as blocks or as
+ * inline text.  A handler that lays out the content of its element itself
+ * (e.g. a table) pushes a scanner with {@link HtmlPdWriter#pushScanner}, which
+ * receives each descendant of the element as it is written, before the
+ * handler of the descendant's tag.
+ * <p>
+ * The content of an element is only guaranteed to be there while it is being
+ * written: a handler that needs the text or children of its element must read
+ * them through a scanner, not from the element in {@link #end}.
+ * <p>
+ * Handlers are shared by all the elements of their tags, and must not keep
+ * the state of an element.
+ *
+ * @author Roberto C. Benitez
+ */
+public interface TagHandler
+{
+    /**
+     * Handle the start tag of an element, after its style has been computed.
+     * The children of the element are only present when the document was
+     * parsed before being written; with
+     * {@link HtmlPdWriter#writeStreaming(java.io.Reader, String)} they have
+     * not been read yet.
+     * @param htmlWriter writer of the document
+     * @param element element
+     * @param style paragraph style of the element; shared, must not be modified
+     * @throws IOException if the element cannot be written
+     */
+    default void start(HtmlPdWriter htmlWriter, Element element, PdParagraph style) throws IOException
+    {
+    }
+
+    /**
+     * Handle the end tag of an element, after its descendants.  The
+     * descendants have been released by then, when written with
+     * {@link HtmlPdWriter#setReleaseWrittenNodes} turned on, or with
+     * {@link HtmlPdWriter#writeStreaming(java.io.Reader, String)}: the element
+     * is empty, and its {@code text()} and {@code children()} return nothing.
+     * Only its tag, attributes and ancestors are left.
+     * @param htmlWriter writer of the document
+     * @param element element
+     * @throws IOException if the element cannot be written
+     */
+    default void end(HtmlPdWriter htmlWriter, Element element) throws IOException
+    {
+    }
+}
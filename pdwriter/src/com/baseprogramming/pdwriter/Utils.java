@@ -27,6 +27,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
@@ -44,6 +45,7 @@ import org.w3c.dom.css.CSSValue;
 public final class Utils
 {
     public final static String DEFAULT_CSS_FILE_NAME="default-css.css";
+    private static final ThreadLocal<CSSOMParser> cssParsers=ThreadLocal.withInitial(()->new CSSOMParser(new SACParserCSS3()));
 
     public static PdUnit parseDimension(String input, float fontSize, float dpi) throws NumberFormatException, RuntimeException
     {
@@ -101,7 +103,11 @@ public final class Utils
 
     public static Map<String, CSSValue> createStyleDeclarationMap(CSSStyleRule rule)
     {
-        CSSStyleDeclaration decl = rule.getStyle();
+        return createStyleDeclarationMap(rule.getStyle());
+    }
+
+    public static Map<String, CSSValue> createStyleDeclarationMap(CSSStyleDeclaration decl)
+    {
         Map<String, CSSValue> ruleMap = new HashMap<>();
         for (int j = 0; j < decl.getLength(); j++)
         {
@@ -142,8 +148,30 @@ public final class Utils
     public static CSSStyleSheet parseStyleSheet(InputStream is) throws IOException
     {
         InputSource source = new InputSource(new InputStreamReader(is));
-        CSSOMParser parser = new CSSOMParser(new SACParserCSS3());
-        return parser.parseStyleSheet(source, null, null);
+        return getCssParser().parseStyleSheet(source, null, null);
+    }
+
+    /**
+     * Parse the declarations of a style attribute.
+     * @param css declarations, without braces
+     * @return parsed declarations
+     * @throws IOException if the declarations cannot be read
+     */
+    public static CSSStyleDeclaration parseStyleDeclaration(String css) throws IOException
+    {
+        InputSource source = new InputSource(new StringReader(css));
+        return getCssParser().parseStyleDeclaration(source);
+    }
+
+    /**
+     * Get the CSS parser of the current thread.  Parsers are reused instead of
+     * being created for each style sheet or style attribute; a parser must only
+     * be used by one thread at a time.
+     * @return CSS parser
+     */
+    public static CSSOMParser getCssParser()
+    {
+        return cssParsers.get();
     }
 
     public static Map<String, Map<String, CSSValue>> getDefaultHtmlCssMap() throws IOException
@@ -160,6 +188,14 @@ public final class Utils
         return map;
     }
     
+    public static CSSStyleSheet parseStyleSheet(File cssSource) throws IOException
+    {
+        try(InputStream is= new FileInputStream(cssSource))
+        {
+            return parseStyleSheet(is);
+        }
+    }
+    
     public static  Map<String, Map<String, CSSValue>> getHtmlCssMap(File cssSource) throws IOException
     {
          Map<String, Map<String, CSSValue>> map;
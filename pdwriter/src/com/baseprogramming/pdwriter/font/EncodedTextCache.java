@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.font;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.pdfbox.pdfwriter.COSWriter;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * Document-scoped cache of encoded text.  Showing text encodes the string to
+ * font codes and escapes it as a PDF string operand; for text repeated
+ * throughout a document (table values, column labels, list labels) the
+ * complete show-text command is cached per font and string, and written to
+ * the content stream as is.
+ * <p>
+ * The cache holds at most a maximum number of strings; the least recently used
+ * are removed first.  Like the document itself, a cache must only be used by
+ * one thread at a time.
+ *
+ * @author Roberto C. Benitez
+ */
+public class EncodedTextCache
+{
+    public static final int DEFAULT_MAX_ENTRIES=4096;
+    private static final byte[] SHOW_TEXT={' ', 'T', 'j', '\n'};
+
+    private final int maxEntries;
+    private final LinkedHashMap<Key,byte[]> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public EncodedTextCache()
+    {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries maximum number of strings held
+     */
+    public EncodedTextCache(int maxEntries)
+    {
+        if(maxEntries <=0)
+        {
+            throw new IllegalArgumentException("Invalid maximum entries argument");
+        }
+
+        this.maxEntries = maxEntries;
+        this.entries= new LinkedHashMap<Key,byte[]>(16, 0.75f, true)
+        {
+            @Override protected boolean removeEldestEntry(Map.Entry<Key,byte[]> eldest)
+            {
+                boolean remove=size() > EncodedTextCache.this.maxEntries;
+                if(remove){evictions++;}
+                return remove;
+            }
+        };
+    }
+
+    /**
+     * Show text in the current text object of a stream, like
+     * PDPageContentStream.showText.
+     * @param stream content stream, in a text object
+     * @param font current font of the stream
+     * @param text text to show
+     * @throws IOException if the text cannot be encoded or written
+     */
+    @SuppressWarnings("deprecation")
+    public void showText(PDPageContentStream stream, PDFont font, String text) throws IOException
+    {
+        stream.appendRawCommands(getShowTextCommand(font, text));
+    }
+
+    /**
+     * Get the encoded string operand and Tj operator that show a string.
+     * Glyphs are added to the subset of subset-embedded fonts when the string
+     * is encoded.
+     * @param font font
+     * @param text text to show
+     * @return content stream bytes; shared, must not be modified
+     * @throws IOException if the text cannot be encoded
+     */
+    public byte[] getShowTextCommand(PDFont font, String text) throws IOException
+    {
+        Key key= new Key(font, text);
+        byte[] command=entries.get(key);
+        if(command!=null)
+        {
+            hits++;
+            return command;
+        }
+
+        misses++;
+        command=encode(font, text);
+        entries.put(key, command);
+        return command;
+    }
+
+    private static byte[] encode(PDFont font, String text) throws IOException
+    {
+        byte[] codes=font.encode(text);
+        if(font.willBeSubset())
+        {
+            for(int i=0;i<text.length();)
+            {
+                int codePoint=text.codePointAt(i);
+                font.addToSubset(codePoint);
+                i+=Character.charCount(codePoint);
+            }
+        }
+
+        ByteArrayOutputStream output= new ByteArrayOutputStream(codes.length * 2 + 8);
+        COSWriter.writeString(codes, output);
+        output.write(SHOW_TEXT);
+        return output.toByteArray();
+    }
+
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    public long getHits()
+    {
+        return hits;
+    }
+
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    public long getEvictions()
+    {
+        return evictions;
+    }
+
+    /**
+     * @return fraction of lookups found in the cache, 0 if there were none
+     */
+    public double getHitRate()
+    {
+        long lookups=hits + misses;
+        return (lookups==0)?0:(double)hits / lookups;
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    public void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+     * Fonts are compared by identity; a document has a single PDFont per font.
+     */
+    private static final class Key
+    {
+        private final PDFont font;
+        private final String text;
+        private final int hash;
+
+        public Key(PDFont font, String text)
+        {
+            this.font = font;
+            this.text = text;
+            this.hash = 31 * System.identityHashCode(font) + text.hashCode();
+        }
+
+        @Override public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override public boolean equals(Object obj)
+        {
+            if(!(obj instanceof Key)){return false;}
+            Key other=(Key)obj;
+            return font==other.font && text.equals(other.text);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.font;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+
+/**
+ * Document-scoped cache of embedded TrueType fonts.  Each face of the
+ * {@link FontRegistry} gets a single PDType0Font per document, parsed from the
+ * bytes the face has already read, which embeds only the glyphs the document
+ * uses (the subset is written when the document is saved).
+ * <p>
+ * Like the document itself, a cache must only be used by one thread at a time.
+ *
+ * @author Roberto C. Benitez
+ */
+public class FontCache
+{
+    private final PDDocument document;
+    private final FontRegistry registry;
+    private final Map<FontFace,PDType0Font> fonts= new HashMap<>();
+
+    public FontCache(PDDocument document)
+    {
+        this(document, FontRegistry.getInstance());
+    }
+
+    public FontCache(PDDocument document, FontRegistry registry)
+    {
+        this.document = document;
+        this.registry = registry;
+    }
+
+    public PDDocument getDocument()
+    {
+        return document;
+    }
+
+    public FontRegistry getRegistry()
+    {
+        return registry;
+    }
+
+    /**
+     * Get the document font for a face, embedding it on first use.
+     * @param face registered font face
+     * @return subset-embedded font
+     * @throws IOException if the font cannot be embedded
+     */
+    public PDType0Font getFont(FontFace face) throws IOException
+    {
+        PDType0Font font=fonts.get(face);
+        if(font==null)
+        {
+            font=PDType0Font.load(document, face.openStream(), true);
+            fonts.put(face, font);
+            FontCoverage.register(font, face);
+        }
+
+        return font;
+    }
+
+    /**
+     * Register a font file (read once per JVM) and get its document font.
+     * @param fontFile TrueType font file
+     * @return subset-embedded font
+     * @throws IOException if the font cannot be loaded or embedded
+     */
+    public PDType0Font getFont(File fontFile) throws IOException
+    {
+        return getFont(registry.register(fontFile));
+    }
+
+    /**
+     * Get the document font of a registered family and style.
+     * @param family family name
+     * @param bold bold face
+     * @param italic italic face
+     * @return subset-embedded font, or null if no such face is registered
+     * @throws IOException if the font cannot be embedded
+     */
+    public PDType0Font getFont(String family, boolean bold, boolean italic) throws IOException
+    {
+        FontFace face=registry.getFace(family, bold, italic);
+        return (face==null)?null:getFont(face);
+    }
+
+    public int size()
+    {
+        return fonts.size();
+    }
+}
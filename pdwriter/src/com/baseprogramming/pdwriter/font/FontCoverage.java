@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.font;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * The set of unicode characters a font can show, as a bitset indexed by code
+ * point.  Coverage is computed once per font per JVM: from the encoding of the
+ * standard 14 fonts (e.g. WinAnsi, see {@link StandardFontMetrics}), and from
+ * the character map of each {@link FontFace}.  The document fonts a
+ * {@link FontCache} creates are tied to the coverage of their face, whichever
+ * registry the face came from, for as long as the font is in use.  Reads of
+ * the standard 14 fonts do not lock.
+ *
+ * @author Roberto C. Benitez
+ */
+public final class FontCoverage
+{
+    private static final Map<PDFont,BitSet> EMBEDDED=Collections.synchronizedMap(new WeakHashMap<>());
+
+    private FontCoverage(){}
+
+    /**
+     * Tie a document font to the coverage of the face it was created from.
+     * @param font document font
+     * @param face face of the font
+     */
+    static void register(PDFont font, FontFace face)
+    {
+        EMBEDDED.put(font, face.getCoverage());
+    }
+
+    /**
+     * Get the coverage of a font.  The bitset is shared, and must not be modified.
+     * @param font font
+     * @return characters the font can show, or null if unknown (the font is
+     * then assumed to show any character)
+     */
+    static BitSet get(PDFont font)
+    {
+        if(font==null){return null;}
+        StandardFontMetrics metrics=StandardFontMetrics.get(font);
+        if(metrics!=null){return metrics.getCoverage();}
+
+        return EMBEDDED.get(font);
+    }
+
+    /**
+     * @param font font
+     * @param codePoint unicode code point
+     * @return true if the font can show the character
+     */
+    public static boolean covers(PDFont font, int codePoint)
+    {
+        BitSet coverage=get(font);
+        return coverage==null || coverage.get(codePoint);
+    }
+
+    /**
+     * @param font font
+     * @param string text
+     * @return true if the font can show every character of the text
+     */
+    public static boolean covers(PDFont font, String string)
+    {
+        return covers(get(font), string);
+    }
+
+    static boolean covers(BitSet coverage, String string)
+    {
+        if(coverage==null){return true;}
+        for(int i=0;i<string.length();)
+        {
+            int codePoint=string.codePointAt(i);
+            if(!coverage.get(codePoint)){return false;}
+            i+=Character.charCount(codePoint);
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.font;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import org.apache.fontbox.ttf.CmapSubtable;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+
+/**
+ * A TrueType font file, read once and shared by all documents.  The file is
+ * memory-mapped, and the characters it maps to a glyph are extracted into an
+ * immutable bitset, read by {@link FontCoverage} from any thread without
+ * locking.  Documents embed the font through a {@link FontCache}, which parses
+ * the mapped bytes into a subset PDType0Font once per document: PDFBox closes
+ * the parsed font when it writes the subset, so it cannot be shared between
+ * documents.
+ *
+ * @author Roberto C. Benitez
+ */
+public final class FontFace
+{
+    private static final int MAX_CODE_POINT=0x10FFFF;
+    private static final int[] CFF_SIGNATURE={'O','T','T','O'};
+
+    private final String path;
+    private final String name;
+    private final String family;
+    private final boolean bold;
+    private final boolean italic;
+    private final ByteBuffer data;
+    private final BitSet coverage;
+
+    private FontFace(String path, String name, String family, boolean bold, boolean italic, ByteBuffer data,
+            BitSet coverage)
+    {
+        this.path = path;
+        this.name = name;
+        this.family = family;
+        this.bold = bold;
+        this.italic = italic;
+        this.data = data;
+        this.coverage = coverage;
+    }
+
+    /**
+     * Map and parse a TrueType (or TrueType-flavored OpenType) font file.
+     * @param fontFile font file
+     * @return font face
+     * @throws IOException if the file cannot be read, or is not a supported font
+     */
+    public static FontFace load(File fontFile) throws IOException
+    {
+        ByteBuffer data;
+        try(FileChannel channel=FileChannel.open(fontFile.toPath(), StandardOpenOption.READ))
+        {
+            data=channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asReadOnlyBuffer();
+        }
+        if(isCff(data))
+        {
+            throw new IOException("OpenType fonts with CFF outlines cannot be embedded: " + fontFile);
+        }
+
+        try(TrueTypeFont font=new TTFParser().parse(openStream(data)))
+        {
+            CmapSubtable cmap=font.getUnicodeCmap(false);
+            if(cmap==null)
+            {
+                throw new IOException("Font has no unicode character map: " + fontFile);
+            }
+
+            BitSet coverage= new BitSet();
+            for(int code=0;code<=MAX_CODE_POINT;code++)
+            {
+                if(cmap.getGlyphId(code) > 0)
+                {
+                    coverage.set(code);
+                }
+            }
+
+            int macStyle=font.getHeader().getMacStyle();
+            return new FontFace(fontFile.getCanonicalPath(), font.getName(), font.getNaming().getFontFamily(),
+                    (macStyle & 1)!=0, (macStyle & 2)!=0, data, coverage);
+        }
+    }
+
+    private static boolean isCff(ByteBuffer data)
+    {
+        if(data.limit() < CFF_SIGNATURE.length){return false;}
+        for(int i=0;i<CFF_SIGNATURE.length;i++)
+        {
+            if(data.get(i)!=CFF_SIGNATURE[i]){return false;}
+        }
+
+        return true;
+    }
+
+    public String getPath()
+    {
+        return path;
+    }
+
+    /**
+     * @return PostScript name of the font
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    public String getFamily()
+    {
+        return family;
+    }
+
+    public boolean isBold()
+    {
+        return bold;
+    }
+
+    public boolean isItalic()
+    {
+        return italic;
+    }
+
+    /**
+     * @return number of characters the font maps to a glyph
+     */
+    public int getCharacterCount()
+    {
+        return coverage.cardinality();
+    }
+
+    public boolean hasGlyph(int codePoint)
+    {
+        return coverage.get(codePoint);
+    }
+
+    /**
+     * @return characters the font maps to a glyph; shared, must not be modified
+     */
+    BitSet getCoverage()
+    {
+        return coverage;
+    }
+
+    /**
+     * Open a stream over the font file bytes.  Streams are independent, and can
+     * be read concurrently.
+     * @return input stream over the mapped font file
+     */
+    public InputStream openStream()
+    {
+        return openStream(data);
+    }
+
+    private static InputStream openStream(ByteBuffer data)
+    {
+        return new ByteBufferInputStream(data.duplicate());
+    }
+
+    @Override public String toString()
+    {
+        return name;
+    }
+
+    private static class ByteBufferInputStream extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+            buffer.rewind();
+        }
+
+        @Override public int read()
+        {
+            return buffer.hasRemaining()?(buffer.get() & 0xFF):-1;
+        }
+
+        @Override public int read(byte[] bytes, int offset, int length)
+        {
+            if(length==0){return 0;}
+            if(!buffer.hasRemaining()){return -1;}
+
+            int count=Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override public int available()
+        {
+            return buffer.remaining();
+        }
+
+        @Override public long skip(long n)
+        {
+            int count=(int)Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+    }
+}
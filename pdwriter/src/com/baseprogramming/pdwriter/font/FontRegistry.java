@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.font;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide registry of TrueType fonts.  Each font file is loaded once per
+ * JVM, no matter how many renders register or look it up at the same time;
+ * lookups of registered fonts do not lock.
+ * <p>
+ * Faces are found by PostScript name, or by family and style.  A file is
+ * registered under the family and style from its naming table, and optionally
+ * under an alias family (e.g. the family name used by a stylesheet).
+ *
+ * @author Roberto C. Benitez
+ */
+public final class FontRegistry
+{
+    private static final FontRegistry INSTANCE= new FontRegistry();
+
+    private final ConcurrentHashMap<String,CompletableFuture<FontFace>> files= new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String,FontFace> faces= new ConcurrentHashMap<>();
+
+    public FontRegistry()
+    {
+    }
+
+    /**
+     * @return registry shared by all writers in the JVM
+     */
+    public static FontRegistry getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Register a font file under its own family and style.
+     * @param fontFile TrueType font file
+     * @return loaded font face
+     * @throws IOException if the font cannot be loaded
+     */
+    public FontFace register(File fontFile) throws IOException
+    {
+        FontFace face=load(fontFile);
+        faces.putIfAbsent(face.getName().toUpperCase(), face);
+        faces.putIfAbsent(createKey(face.getFamily(), face.isBold(), face.isItalic()), face);
+        return face;
+    }
+
+    /**
+     * Register a font file under its own family and style, and under the given
+     * family with the font's style.  An alias replaces any face previously
+     * registered under the same family and style.
+     * @param family alias family name
+     * @param fontFile TrueType font file
+     * @return loaded font face
+     * @throws IOException if the font cannot be loaded
+     */
+    public FontFace register(String family, File fontFile) throws IOException
+    {
+        FontFace face=register(fontFile);
+        faces.put(createKey(family, face.isBold(), face.isItalic()), face);
+        return face;
+    }
+
+    private FontFace load(File fontFile) throws IOException
+    {
+        String path=fontFile.getCanonicalPath();
+        CompletableFuture<FontFace> future=files.get(path);
+        if(future==null)
+        {
+            CompletableFuture<FontFace> created= new CompletableFuture<>();
+            future=files.putIfAbsent(path, created);
+            if(future==null)
+            {
+                future=created;
+                try
+                {
+                    created.complete(FontFace.load(fontFile));
+                }
+                catch(IOException | RuntimeException e)
+                {
+                    //allow a later attempt, e.g. once the file is fixed
+                    files.remove(path, created);
+                    created.completeExceptionally(e);
+                }
+            }
+        }
+
+        try
+        {
+            return future.join();
+        }
+        catch(CompletionException e)
+        {
+            Throwable cause=e.getCause();
+            if(cause instanceof IOException){throw (IOException)cause;}
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * @param name PostScript name
+     * @return registered face, or null
+     */
+    public FontFace getFace(String name)
+    {
+        return faces.get(name.toUpperCase());
+    }
+
+    /**
+     * @param family family name
+     * @param bold bold face
+     * @param italic italic face
+     * @return registered face, or null
+     */
+    public FontFace getFace(String family, boolean bold, boolean italic)
+    {
+        return faces.get(createKey(family, bold, italic));
+    }
+
+    public static String createKey(String family, boolean bold, boolean italic)
+    {
+        String key=family.trim().toUpperCase();
+        if(bold){key+="_BOLD";}
+        if(italic){key+="_ITALIC";}
+
+        return key;
+    }
+}
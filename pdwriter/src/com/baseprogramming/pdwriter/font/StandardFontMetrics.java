@@ -0,0 +1,251 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.font;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDSimpleFont;
+import org.apache.pdfbox.pdmodel.font.encoding.Encoding;
+
+/**
+ * Glyph widths of a standard 14 font, by unicode code point, for the
+ * characters its encoding can show.  Widths are the ones PDFont.getWidth
+ * returns for the encoded character, so a string measures the same as with
+ * PDFont.getStringWidth, without encoding it.
+ * <p>
+ * Metrics are computed once per font per JVM, or taken from a
+ * {@link com.baseprogramming.pdwriter.html.StartupSnapshot}.  They assume the
+ * font has the standard encoding (as the fonts of PDType1Font do).  Reads do
+ * not lock.
+ *
+ * @author Roberto C. Benitez
+ */
+public final class StandardFontMetrics
+{
+    private static final Map<String,StandardFontMetrics> FONTS= new ConcurrentHashMap<>();
+    private static final int LATIN_SIZE=256;
+
+    private final String name;
+    private final int[] codePoints;
+    private final float[] widths;
+    private final float[] latinWidths= new float[LATIN_SIZE];
+    private final BitSet coverage;
+
+    /**
+     * @param name font name, e.g. Times-Roman
+     * @param codePoints characters the font can show, in ascending order
+     * @param widths width of each character, in thousandths of an em
+     */
+    public StandardFontMetrics(String name, int[] codePoints, float[] widths)
+    {
+        if(codePoints.length!=widths.length)
+        {
+            throw new IllegalArgumentException("Code point and width counts differ: " + name);
+        }
+        this.name = name;
+        this.codePoints = codePoints;
+        this.widths = widths;
+
+        Arrays.fill(latinWidths, Float.NaN);
+        coverage= new BitSet(LATIN_SIZE);
+        for(int i=0;i<codePoints.length;i++)
+        {
+            coverage.set(codePoints[i]);
+            if(codePoints[i] < LATIN_SIZE){latinWidths[codePoints[i]]=widths[i];}
+        }
+    }
+
+    /**
+     * Get the metrics of a standard 14 font, computing them on first use.
+     * @param font font
+     * @return metrics; null if the font is not a standard 14 font
+     */
+    public static StandardFontMetrics get(PDFont font)
+    {
+        if(!(font instanceof PDSimpleFont) || !font.isStandard14()){return null;}
+
+        StandardFontMetrics metrics=FONTS.get(font.getName());
+        if(metrics==null)
+        {
+            metrics=compute((PDSimpleFont)font);
+            StandardFontMetrics previous=FONTS.putIfAbsent(font.getName(), metrics);
+            if(previous!=null){metrics=previous;}
+        }
+        return metrics;
+    }
+
+    /**
+     * Get the width of a string, in thousandths of an em, from the metrics of
+     * standard 14 fonts, and from the font itself otherwise.
+     * @param font font
+     * @param string string to measure
+     * @return width of the string
+     * @throws IOException if the font metrics cannot be read
+     */
+    public static float measure(PDFont font, String string) throws IOException
+    {
+        StandardFontMetrics metrics=get(font);
+        return (metrics==null)?font.getStringWidth(string):metrics.getStringWidth(string);
+    }
+
+    /**
+     * Use metrics loaded ahead of time, unless the font already has metrics.
+     * @param metrics metrics of a standard 14 font
+     */
+    public static void register(StandardFontMetrics metrics)
+    {
+        FONTS.putIfAbsent(metrics.name, metrics);
+    }
+
+    static StandardFontMetrics compute(PDSimpleFont font)
+    {
+        Map<Integer,Float> codeWidths= new TreeMap<>();
+        Encoding encoding=font.getEncoding();
+        if(encoding!=null)
+        {
+            for(String glyphName : encoding.getCodeToNameMap().values())
+            {
+                String unicode=font.getGlyphList().toUnicode(glyphName);
+                if(unicode==null || unicode.codePointCount(0, unicode.length())!=1){continue;}
+
+                try
+                {
+                    //the same check showText makes; only done once per glyph and font
+                    byte[] code=font.encode(unicode);
+                    codeWidths.put(unicode.codePointAt(0), font.getWidth(code[0] & 0xff));
+                }
+                catch(IOException | IllegalArgumentException e)
+                {
+                    //no glyph for the name
+                }
+            }
+        }
+
+        int[] codePoints= new int[codeWidths.size()];
+        float[] widths= new float[codeWidths.size()];
+        int i=0;
+        for(Map.Entry<Integer,Float> e : codeWidths.entrySet())
+        {
+            codePoints[i]=e.getKey();
+            widths[i++]=e.getValue();
+        }
+        return new StandardFontMetrics(font.getName(), codePoints, widths);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return characters the font can show; shared, and must not be modified
+     */
+    public BitSet getCoverage()
+    {
+        return coverage;
+    }
+
+    /**
+     * @param codePoint unicode code point
+     * @return width of the character, in thousandths of an em; NaN if the font
+     * cannot show it
+     */
+    public float getWidth(int codePoint)
+    {
+        if(codePoint >= 0 && codePoint < LATIN_SIZE){return latinWidths[codePoint];}
+
+        int index=Arrays.binarySearch(codePoints, codePoint);
+        return (index < 0)?Float.NaN:widths[index];
+    }
+
+    /**
+     * Get the width of a string, in thousandths of an em, like
+     * PDFont.getStringWidth.
+     * @param string string to measure; the font must cover every character
+     * @return width of the string
+     */
+    public float getStringWidth(String string)
+    {
+        float width=0;
+        for(int i=0;i<string.length();)
+        {
+            int codePoint=string.codePointAt(i);
+            float charWidth=getWidth(codePoint);
+            if(Float.isNaN(charWidth))
+            {
+                throw new IllegalArgumentException(String.format("No glyph for U+%04X in font %s", codePoint, name));
+            }
+            width+=charWidth;
+            i+=Character.charCount(codePoint);
+        }
+
+        return width;
+    }
+
+    /**
+     * Write the code points and widths (not the name).
+     * @param output output
+     * @throws IOException if the metrics cannot be written
+     */
+    public void write(DataOutputStream output) throws IOException
+    {
+        output.writeInt(codePoints.length);
+        for(int codePoint : codePoints)
+        {
+            output.writeInt(codePoint);
+        }
+        for(float width : widths)
+        {
+            output.writeFloat(width);
+        }
+    }
+
+    /**
+     * Read metrics written by {@link #write}.
+     * @param name font name
+     * @param input input, positioned at the metrics
+     * @return metrics
+     * @throws BufferUnderflowException if the input is truncated
+     */
+    public static StandardFontMetrics read(String name, ByteBuffer input)
+    {
+        int count=input.getInt();
+        if(count < 0 || count * 8L > input.remaining())
+        {
+            throw new BufferUnderflowException();
+        }
+        int[] codePoints= new int[count];
+        float[] widths= new float[count];
+        input.asIntBuffer().get(codePoints);
+        input.position(input.position() + count * 4);
+        input.asFloatBuffer().get(widths);
+        input.position(input.position() + count * 4);
+        return new StandardFontMetrics(name, codePoints, widths);
+    }
+
+    @Override public String toString()
+    {
+        return name;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.font;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * A piece of text shown with a single font.  Text is split into runs by the
+ * first font of a fallback chain that covers each character, so text that
+ * mixes scripts can be shown without the font failing to encode it.
+ *
+ * @author Roberto C. Benitez
+ */
+public final class TextRun
+{
+    /**
+     * Shown, in the primary font, for characters no font of the chain covers.
+     */
+    public static final char REPLACEMENT_CHARACTER='?';
+
+    private final PDFont font;
+    private final String text;
+
+    public TextRun(PDFont font, String text)
+    {
+        this.font = font;
+        this.text = text;
+    }
+
+    public PDFont getFont()
+    {
+        return font;
+    }
+
+    public String getText()
+    {
+        return text;
+    }
+
+    /**
+     * @param fontSize font size
+     * @return width of the run, in points
+     * @throws IOException if the font metrics cannot be read
+     */
+    public float getWidth(float fontSize) throws IOException
+    {
+        return StandardFontMetrics.measure(font, text) / 1000 * fontSize;
+    }
+
+    /**
+     * Split text into runs, in a single pass over the text.  Text the primary
+     * font covers entirely is a single run.
+     * @param text text to split
+     * @param font primary font
+     * @param fallbackFonts fonts to try, in order, for characters the primary font does not cover
+     * @return runs, in text order
+     */
+    public static List<TextRun> split(String text, PDFont font, List<PDFont> fallbackFonts)
+    {
+        BitSet coverage=FontCoverage.get(font);
+        if(FontCoverage.covers(coverage, text))
+        {
+            return Collections.singletonList(new TextRun(font, text));
+        }
+
+        PDFont[] fonts= new PDFont[fallbackFonts.size() + 1];
+        BitSet[] coverages= new BitSet[fonts.length];
+        fonts[0]=font;
+        coverages[0]=coverage;
+        for(int i=1;i<fonts.length;i++)
+        {
+            fonts[i]=fallbackFonts.get(i - 1);
+            coverages[i]=FontCoverage.get(fonts[i]);
+        }
+
+        List<TextRun> runs= new ArrayList<>();
+        StringBuilder buffer= new StringBuilder(text.length());
+        int current=0;
+        for(int i=0;i<text.length();)
+        {
+            int codePoint=text.codePointAt(i);
+            i+=Character.charCount(codePoint);
+
+            int index=findFont(coverages, codePoint);
+            if(index < 0)
+            {
+                index=0;
+                codePoint=REPLACEMENT_CHARACTER;
+            }
+            if(index!=current && buffer.length() > 0)
+            {
+                runs.add(new TextRun(fonts[current], buffer.toString()));
+                buffer.setLength(0);
+            }
+            current=index;
+            buffer.appendCodePoint(codePoint);
+        }
+        if(buffer.length() > 0)
+        {
+            runs.add(new TextRun(fonts[current], buffer.toString()));
+        }
+
+        return runs;
+    }
+
+    private static int findFont(BitSet[] coverages, int codePoint)
+    {
+        for(int i=0;i<coverages.length;i++)
+        {
+            if(coverages[i]==null || coverages[i].get(codePoint)){return i;}
+        }
+
+        return -1;
+    }
+
+    @Override public String toString()
+    {
+        return font.getName() + ": " + text;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.html;
+
+import com.baseprogramming.pdwriter.Utils;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import org.w3c.dom.css.CSSRuleList;
+import org.w3c.dom.css.CSSStyleRule;
+import org.w3c.dom.css.CSSStyleSheet;
+
+/**
+ * Immutable, compiled rules of a style sheet: one CssRule per supported
+ * selector, in declaration order.  A compiled style sheet can be shared by
+ * threads, and merged into any number of selector indexes.
+ *
+ * @author Roberto C. Benitez
+ */
+public final class CompiledStyleSheet
+{
+    private final List<CssRule> rules;
+    private final Map<SelectorIndex,SelectorIndex> merged=Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * @param rules compiled rules, in declaration order
+     */
+    CompiledStyleSheet(List<CssRule> rules)
+    {
+        this.rules = Collections.unmodifiableList(rules);
+    }
+
+    /**
+     * Compile the style rules of a style sheet.  Rules without supported
+     * properties and unsupported selectors are dropped.
+     * @param css parsed style sheet
+     * @return compiled style sheet
+     */
+    public static CompiledStyleSheet compile(CSSStyleSheet css)
+    {
+        List<CssRule> rules= new ArrayList<>();
+        CSSRuleList cssRules = css.getCssRules();
+        for (int i = 0; i < cssRules.getLength(); i++)
+        {
+            if (cssRules.item(i) instanceof CSSStyleRule == false)
+            {
+                continue;
+            }
+            CSSStyleRule styleRule = (CSSStyleRule) cssRules.item(i);
+            CssStyle style=CssStyle.of(Utils.createStyleDeclarationMap(styleRule));
+            rules.addAll(CssRule.parseGroup(styleRule.getSelectorText(), rules.size(), style));
+        }
+
+        return new CompiledStyleSheet(rules);
+    }
+
+    /**
+     * @return rules, in declaration order
+     */
+    public List<CssRule> getRules()
+    {
+        return rules;
+    }
+
+    /**
+     * Get an index with the rules of an index followed by the rules of this
+     * style sheet.  Merged indexes are kept (as long as the base index is in
+     * use), so documents linking the same style sheets share them.
+     * @param base index of the style sheets loaded before this one
+     * @return read only index
+     */
+    public SelectorIndex mergeInto(SelectorIndex base)
+    {
+        SelectorIndex index=merged.get(base);
+        if(index==null)
+        {
+            index= new SelectorIndex(base);
+            index.addStyleSheet(this);
+            index.setReadOnly();
+            merged.put(base, index);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.html;
+
+import com.baseprogramming.pdwriter.model.PdParagraph;
+
+/**
+ * Computed CSS properties of an HTML element, with the paragraph style built
+ * from them.  Computed styles are shared by all elements with the same parent
+ * style, matching rules and style attribute; neither the properties nor the
+ * paragraph may be modified.
+ *
+ * @author Roberto C. Benitez
+ */
+public final class ComputedStyle
+{
+    private final CssStyle style;
+    private final PdParagraph paragraph;
+
+    public ComputedStyle(CssStyle style, PdParagraph paragraph)
+    {
+        this.style = style;
+        this.paragraph = paragraph;
+    }
+
+    /**
+     * @return computed properties, including the inherited ones
+     */
+    public CssStyle getStyle()
+    {
+        return style;
+    }
+
+    /**
+     * @return paragraph style; shared, must not be modified
+     */
+    public PdParagraph getParagraph()
+    {
+        return paragraph;
+    }
+}
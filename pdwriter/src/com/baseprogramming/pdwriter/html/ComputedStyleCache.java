@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.html;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Cache of computed styles, keyed by everything the cascade depends on: the
+ * computed style of the parent, the rules matching the element and its style
+ * attribute.  Elements repeated throughout a document (table cells, list
+ * items, paragraphs) resolve to the same ComputedStyle instance, so their
+ * properties are merged and their paragraph style is built only once.
+ * <p>
+ * Parent styles and rules are compared by identity.  The cache holds at most a
+ * maximum number of styles; the least recently used are removed first.  Like
+ * the writer using it, a cache must only be used by one thread at a time.
+ *
+ * @author Roberto C. Benitez
+ */
+public class ComputedStyleCache
+{
+    public static final int DEFAULT_MAX_ENTRIES=1024;
+
+    private final int maxEntries;
+    private final LinkedHashMap<Key,ComputedStyle> entries;
+    private long hits;
+    private long misses;
+
+    public ComputedStyleCache()
+    {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries maximum number of styles held
+     */
+    public ComputedStyleCache(int maxEntries)
+    {
+        if(maxEntries <=0)
+        {
+            throw new IllegalArgumentException("Invalid maximum entries argument");
+        }
+
+        this.maxEntries = maxEntries;
+        this.entries= new LinkedHashMap<Key,ComputedStyle>(16, 0.75f, true)
+        {
+            @Override protected boolean removeEldestEntry(Map.Entry<Key,ComputedStyle> eldest)
+            {
+                return size() > ComputedStyleCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get the computed style of an element, computing it on a cache miss.
+     * @param parent computed style of the parent element; null for the root
+     * @param rules rules matching the element, in cascade order
+     * @param style style attribute
+     * @param cascade computes the style of the element
+     * @return computed style, shared by equivalent elements
+     */
+    public ComputedStyle get(ComputedStyle parent, List<CssRule> rules, String style, Supplier<ComputedStyle> cascade)
+    {
+        Key key= new Key(parent, rules, style);
+        ComputedStyle computed=entries.get(key);
+        if(computed!=null)
+        {
+            hits++;
+            return computed;
+        }
+
+        misses++;
+        computed=cascade.get();
+        entries.put(key, computed);
+        return computed;
+    }
+
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    public long getHits()
+    {
+        return hits;
+    }
+
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    public void clear()
+    {
+        entries.clear();
+    }
+
+    private static final class Key
+    {
+        private final ComputedStyle parent;
+        private final List<CssRule> rules;
+        private final String style;
+        private final int hash;
+
+        public Key(ComputedStyle parent, List<CssRule> rules, String style)
+        {
+            this.parent = parent;
+            this.rules = rules;
+            this.style = style;
+            this.hash = Objects.hash(System.identityHashCode(parent), rules, style);
+        }
+
+        @Override public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override public boolean equals(Object obj)
+        {
+            if(!(obj instanceof Key)){return false;}
+            Key other=(Key)obj;
+            return parent==other.parent && rules.equals(other.rules) && style.equals(other.style);
+        }
+    }
+}
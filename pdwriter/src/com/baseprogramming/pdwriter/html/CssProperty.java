@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.html;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CSS properties supported by the HTML writer.  Computed styles index their
+ * values by the ordinal of the property; declarations of other properties are
+ * ignored.
+ *
+ * @author Roberto C. Benitez
+ */
+public enum CssProperty
+{
+    COLOR("color", false),
+    FONT_SIZE("font-size", true),
+    FONT_STYLE("font-style", false),
+    FONT_WEIGHT("font-weight", false),
+    FONT_FAMILY("font-family", false),
+    BORDER("border", true),
+    BORDER_TOP("border-top", true),
+    BORDER_RIGHT("border-right", true),
+    BORDER_BOTTOM("border-bottom", true),
+    BORDER_LEFT("border-left", true),
+    PADDING("padding", true),
+    PADDING_TOP("padding-top", true),
+    PADDING_RIGHT("padding-right", true),
+    PADDING_BOTTOM("padding-bottom", true),
+    PADDING_LEFT("padding-left", true),
+    MARGIN("margin", true),
+    MARGIN_TOP("margin-top", true),
+    MARGIN_RIGHT("margin-right", true),
+    MARGIN_BOTTOM("margin-bottom", true),
+    MARGIN_LEFT("margin-left", true),
+    WIDTH("width", true),
+    DISPLAY("display", false),
+    TEXT_DECORATION("text-decoration", false);
+
+    private static final Map<String,CssProperty> names=createNameMap();
+    private final String name;
+    private final boolean dimension;
+
+    private CssProperty(String name, boolean dimension)
+    {
+        this.name = name;
+        this.dimension = dimension;
+    }
+
+    private static Map<String,CssProperty> createNameMap()
+    {
+        Map<String,CssProperty> map= new HashMap<>();
+        for(CssProperty property : values())
+        {
+            map.put(property.name, property);
+        }
+        return map;
+    }
+
+    /**
+     * @param name CSS property name
+     * @return property; null if the property is not supported
+     */
+    public static CssProperty forName(String name)
+    {
+        return names.get(name);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return true if the value is a length, parsed when it is declared
+     */
+    public boolean isDimension()
+    {
+        return dimension;
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.html;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.jsoup.nodes.Element;
+
+/**
+ * A style rule with a single selector.  Supported selectors are chains of
+ * compound selectors (tag, id and classes, e.g. {@code div#main.note.wide})
+ * joined by descendant or child combinators; the rightmost compound is the
+ * subject of the rule.
+ *
+ * @author Roberto C. Benitez
+ */
+public final class CssRule
+{
+    private final String selector;
+    private final Compound[] compounds;
+    private final boolean[] childCombinators;
+    private final int specificity;
+    private final int order;
+    private final CssStyle style;
+
+    private CssRule(String selector, Compound[] compounds, boolean[] childCombinators, int order, CssStyle style)
+    {
+        this.selector = selector;
+        this.compounds = compounds;
+        this.childCombinators = childCombinators;
+        this.order = order;
+        this.style = style;
+
+        int ids=0, classes=0, tags=0;
+        for(Compound compound : compounds)
+        {
+            if(compound.id!=null){ids++;}
+            classes+=compound.classes.length;
+            if(compound.tag!=null){tags++;}
+        }
+        this.specificity=(ids * 256 + classes) * 256 + tags;
+    }
+
+    /**
+     * Compile a selector.
+     * @param selector a single selector (not a group)
+     * @param order position of the rule among all rules; later rules win over
+     * earlier ones with the same specificity
+     * @param style declarations of the rule
+     * @return rule; null if the selector is not supported (attribute selectors,
+     * pseudo-classes, sibling combinators, ...)
+     */
+    public static CssRule parse(String selector, int order, CssStyle style)
+    {
+        List<Compound> compounds= new ArrayList<>();
+        List<Boolean> combinators= new ArrayList<>();
+        boolean child=false;
+        for(String token : selector.replace(">", " > ").trim().split("\\s+"))
+        {
+            if(">".equals(token))
+            {
+                if(compounds.isEmpty() || child){return null;}
+                child=true;
+                continue;
+            }
+
+            Compound compound=Compound.parse(token);
+            if(compound==null){return null;}
+            if(!compounds.isEmpty()){combinators.add(child);}
+            compounds.add(compound);
+            child=false;
+        }
+        if(compounds.isEmpty() || child){return null;}
+
+        boolean[] childCombinators= new boolean[combinators.size()];
+        for(int i=0;i<childCombinators.length;i++)
+        {
+            childCombinators[i]=combinators.get(i);
+        }
+        return new CssRule(selector.trim(), compounds.toArray(new Compound[compounds.size()]), childCombinators, order, style);
+    }
+
+    /**
+     * Compile the selectors of a rule.  Each selector of a group becomes a rule
+     * of its own; unsupported selectors are ignored.
+     * @param selectorGroup comma separated selectors
+     * @param firstOrder order of the first rule; the others follow
+     * @param style declarations of the rule
+     * @return rules; empty if no property of the style is supported
+     */
+    public static List<CssRule> parseGroup(String selectorGroup, int firstOrder, CssStyle style)
+    {
+        if(style.isEmpty()){return Collections.emptyList();}
+
+        List<CssRule> rules= new ArrayList<>();
+        for(String selector : selectorGroup.split(","))
+        {
+            CssRule rule=parse(selector, firstOrder + rules.size(), style);
+            if(rule!=null){rules.add(rule);}
+        }
+        return rules;
+    }
+
+    /**
+     * @param order position of the rule among all rules
+     * @return this rule, at another position
+     */
+    public CssRule withOrder(int order)
+    {
+        return (order==this.order)?this:new CssRule(selector, compounds, childCombinators, order, style);
+    }
+
+    public String getSelector()
+    {
+        return selector;
+    }
+
+    /**
+     * @return specificity, as (ids, classes, tags) packed into one int, so
+     * rules compare by specificity numerically
+     */
+    public int getSpecificity()
+    {
+        return specificity;
+    }
+
+    public int getOrder()
+    {
+        return order;
+    }
+
+    public CssStyle getStyle()
+    {
+        return style;
+    }
+
+    /**
+     * @return id of the subject; null if the subject has no id
+     */
+    String getSubjectId()
+    {
+        return getSubject().id;
+    }
+
+    /**
+     * @return first class of the subject; null if the subject has no class
+     */
+    String getSubjectClass()
+    {
+        Compound subject=getSubject();
+        return (subject.classes.length==0)?null:subject.classes[0];
+    }
+
+    /**
+     * @return tag of the subject; null for any tag
+     */
+    String getSubjectTag()
+    {
+        return getSubject().tag;
+    }
+
+    private Compound getSubject()
+    {
+        return compounds[compounds.length - 1];
+    }
+
+    public boolean matches(Element element)
+    {
+        int last=compounds.length - 1;
+        return compounds[last].matches(element) && matchesAncestors(element, last - 1);
+    }
+
+    /**
+     * Match the compounds up to an index against the ancestors of an element
+     * matched by the next compound.
+     */
+    private boolean matchesAncestors(Element element, int index)
+    {
+        if(index < 0){return true;}
+
+        Element ancestor=element.parent();
+        if(childCombinators[index])
+        {
+            return ancestor!=null && compounds[index].matches(ancestor) && matchesAncestors(ancestor, index - 1);
+        }
+
+        for(;ancestor!=null;ancestor=ancestor.parent())
+        {
+            if(compounds[index].matches(ancestor) && matchesAncestors(ancestor, index - 1)){return true;}
+        }
+        return false;
+    }
+
+    /**
+     * @param classAttribute class attribute of an element
+     * @param className class name
+     * @return true if the class name is one of the white space separated
+     * names of the attribute
+     */
+    static boolean hasClass(String classAttribute, String className)
+    {
+        int length=className.length();
+        for(int start=classAttribute.indexOf(className);start >= 0;start=classAttribute.indexOf(className, start + 1))
+        {
+            int end=start + length;
+            if((start==0 || Character.isWhitespace(classAttribute.charAt(start - 1)))
+                    && (end==classAttribute.length() || Character.isWhitespace(classAttribute.charAt(end))))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override public String toString()
+    {
+        return selector;
+    }
+
+    private static final class Compound
+    {
+        private static final String[] NO_CLASSES={};
+        private final String tag;
+        private final String id;
+        private final String[] classes;
+
+        private Compound(String tag, String id, String[] classes)
+        {
+            this.tag = tag;
+            this.id = id;
+            this.classes = classes;
+        }
+
+        /**
+         * @return compound; null if not supported
+         */
+        private static Compound parse(String token)
+        {
+            String tag=null;
+            String id=null;
+            List<String> classes= new ArrayList<>();
+            int i=0;
+            while(i < token.length())
+            {
+                char prefix=token.charAt(i);
+                int start=(prefix=='.' || prefix=='#')?i + 1:i;
+                int end=start;
+                while(end < token.length() && isNameCharacter(token.charAt(end)))
+                {
+                    end++;
+                }
+
+                String name=token.substring(start, end);
+                if(prefix=='.')
+                {
+                    if(name.isEmpty()){return null;}
+                    classes.add(name);
+                }
+                else if(prefix=='#')
+                {
+                    if(name.isEmpty() || id!=null){return null;}
+                    id=name;
+                }
+                else if(i==0 && prefix=='*')
+                {
+                    end=1;
+                }
+                else if(i==0 && !name.isEmpty())
+                {
+                    tag=name.toLowerCase();
+                }
+                else
+                {
+                    return null;
+                }
+                i=end;
+            }
+
+            return new Compound(tag, id, classes.isEmpty()?NO_CLASSES:classes.toArray(new String[classes.size()]));
+        }
+
+        private static boolean isNameCharacter(char c)
+        {
+            return Character.isLetterOrDigit(c) || c=='-' || c=='_';
+        }
+
+        private boolean matches(Element element)
+        {
+            if(tag!=null && !tag.equals(element.tagName())){return false;}
+            if(id!=null && !id.equals(element.id())){return false;}
+            if(classes.length > 0)
+            {
+                String classAttribute=element.className();
+                for(String className : classes)
+                {
+                    if(!hasClass(classAttribute, className)){return false;}
+                }
+            }
+            return true;
+        }
+    }
+}
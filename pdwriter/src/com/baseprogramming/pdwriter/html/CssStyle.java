@@ -0,0 +1,265 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.html;
+
+import java.util.EnumMap;
+import java.util.Map;
+import org.w3c.dom.css.CSSValue;
+
+/**
+ * Compact, immutable set of CSS property values, indexed by
+ * {@link CssProperty} ordinal.  A bit mask records which properties are set;
+ * lengths are parsed once, into a number and a unit, when they are declared.
+ * <p>
+ * A computed style only holds the properties declared for its own element, and
+ * refers to the style of the parent for the rest, so inheriting does not copy
+ * the parent properties.  An element that declares nothing shares the style of
+ * its parent.
+ *
+ * @author Roberto C. Benitez
+ */
+public final class CssStyle
+{
+    /** The value is not a number with a supported unit; it is kept as text only. */
+    static final byte UNIT_NONE=0;
+    static final byte UNIT_POINTS=1;
+    static final byte UNIT_PIXELS=2;
+    static final byte UNIT_MILLIMETERS=3;
+    static final byte UNIT_PICAS=4;
+    static final byte UNIT_EMS=5;
+
+    private static final CssProperty[] PROPERTIES=CssProperty.values();
+    public static final CssStyle EMPTY= new CssStyle(null, 0, null, null, null);
+
+    private final CssStyle parent;
+    private final long declared;
+    private final long mask;
+    private final String[] text;
+    private final float[] values;
+    private final byte[] units;
+
+    private CssStyle(CssStyle parent, long declared, String[] text, float[] values, byte[] units)
+    {
+        this.parent = parent;
+        this.declared = declared;
+        this.mask=(parent==null)?declared:declared | parent.mask;
+        this.text = text;
+        this.values = values;
+        this.units = units;
+    }
+
+    /**
+     * Create a style from CSS declarations.  Unsupported properties are ignored.
+     * @param declarations CSS values, by property name
+     * @return style with the declared properties, and no parent
+     */
+    public static CssStyle of(Map<String,CSSValue> declarations)
+    {
+        Map<CssProperty,String> text= new EnumMap<>(CssProperty.class);
+        for(Map.Entry<String,CSSValue> e : declarations.entrySet())
+        {
+            CssProperty property=CssProperty.forName(e.getKey());
+            if(property==null || e.getValue()==null){continue;}
+
+            text.put(property, e.getValue().getCssText());
+        }
+
+        return ofText(text);
+    }
+
+    /**
+     * Create a style from the CSS text of property values.
+     * @param declarations CSS text, by property
+     * @return style with the declared properties, and no parent
+     */
+    static CssStyle ofText(Map<CssProperty,String> declarations)
+    {
+        long declared=0;
+        String[] text= new String[PROPERTIES.length];
+        float[] values= new float[PROPERTIES.length];
+        byte[] units= new byte[PROPERTIES.length];
+        for(Map.Entry<CssProperty,String> e : declarations.entrySet())
+        {
+            int index=e.getKey().ordinal();
+            declared|=1L << index;
+            text[index]=e.getValue();
+            if(e.getKey().isDimension())
+            {
+                units[index]=parseLength(text[index], values, index);
+            }
+        }
+
+        return (declared==0)?EMPTY:new CssStyle(null, declared, text, values, units);
+    }
+
+    /**
+     * Compute the style of an element.  Later declarations override earlier
+     * ones; properties declared by none of them are taken from the parent.
+     * @param parent computed style of the parent element; null for the root
+     * @param declarations declarations that apply to the element, in cascade
+     * order (only the properties declared by each style are used; null entries
+     * are skipped)
+     * @return computed style; the parent itself if nothing is declared
+     */
+    public static CssStyle cascade(CssStyle parent, CssStyle... declarations)
+    {
+        long declared=0;
+        CssStyle last=null;
+        int count=0;
+        for(CssStyle style : declarations)
+        {
+            if(style==null || style.declared==0){continue;}
+            declared|=style.declared;
+            last=style;
+            count++;
+        }
+
+        if(declared==0){return (parent==null)?EMPTY:parent;}
+        if(count==1)
+        {
+            return new CssStyle(parent, declared, last.text, last.values, last.units);
+        }
+
+        String[] text= new String[PROPERTIES.length];
+        float[] values= new float[PROPERTIES.length];
+        byte[] units= new byte[PROPERTIES.length];
+        for(CssStyle style : declarations)
+        {
+            if(style==null){continue;}
+            for(long bits=style.declared;bits!=0;bits&=bits - 1)
+            {
+                int index=Long.numberOfTrailingZeros(bits);
+                text[index]=style.text[index];
+                values[index]=style.values[index];
+                units[index]=style.units[index];
+            }
+        }
+
+        return new CssStyle(parent, declared, text, values, units);
+    }
+
+    /**
+     * Parse a length, the way HtmlStyle has always read them: plain numbers
+     * shorter than three characters are points; otherwise the last two
+     * characters are the unit.
+     */
+    private static byte parseLength(String input, float[] values, int index)
+    {
+        try
+        {
+            if(input.length() < 3)
+            {
+                values[index]=Float.valueOf(input);
+                return UNIT_POINTS;
+            }
+
+            byte unit;
+            switch(input.substring(input.length() - 2).toLowerCase())
+            {
+                case "pt": unit=UNIT_POINTS; break;
+                case "px": unit=UNIT_PIXELS; break;
+                case "mm": unit=UNIT_MILLIMETERS; break;
+                case "pc": unit=UNIT_PICAS; break;
+                case "em": unit=UNIT_EMS; break;
+                default: return UNIT_NONE;
+            }
+            values[index]=Float.valueOf(input.substring(0, input.length() - 2));
+            return unit;
+        }
+        catch(NumberFormatException e)
+        {
+            return UNIT_NONE;
+        }
+    }
+
+    public CssStyle getParent()
+    {
+        return parent;
+    }
+
+    /**
+     * @return CSS text of the properties declared by this style (not the parents)
+     */
+    Map<CssProperty,String> getDeclarations()
+    {
+        Map<CssProperty,String> declarations= new EnumMap<>(CssProperty.class);
+        for(long bits=declared;bits!=0;bits&=bits - 1)
+        {
+            int index=Long.numberOfTrailingZeros(bits);
+            declarations.put(PROPERTIES[index], text[index]);
+        }
+        return declarations;
+    }
+
+    /**
+     * @return true if no property is set, here or in a parent
+     */
+    public boolean isEmpty()
+    {
+        return mask==0;
+    }
+
+    public boolean isSet(CssProperty property)
+    {
+        return (mask & (1L << property.ordinal()))!=0;
+    }
+
+    /**
+     * @param property property
+     * @return CSS text of the value; null if the property is not set
+     */
+    public String getText(CssProperty property)
+    {
+        CssStyle style=find(property);
+        return (style==null)?null:style.text[property.ordinal()];
+    }
+
+    /**
+     * @param property length property
+     * @return number of the parsed length; 0 if not set
+     */
+    float getValue(CssProperty property)
+    {
+        CssStyle style=find(property);
+        return (style==null)?0:style.values[property.ordinal()];
+    }
+
+    /**
+     * @param property length property
+     * @return unit of the parsed length; UNIT_NONE if not set or not parsed
+     */
+    byte getUnit(CssProperty property)
+    {
+        CssStyle style=find(property);
+        return (style==null)?UNIT_NONE:style.units[property.ordinal()];
+    }
+
+    /**
+     * @return nearest style, from this one up to the root, declaring a property
+     */
+    private CssStyle find(CssProperty property)
+    {
+        long bit=1L << property.ordinal();
+        if((mask & bit)==0){return null;}
+
+        CssStyle style=this;
+        while((style.declared & bit)==0)
+        {
+            style=style.parent;
+        }
+        return style;
+    }
+}
@@ -0,0 +1,594 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.html;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.jsoup.nodes.Attributes;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.Tag;
+import org.jsoup.select.NodeVisitor;
+
+/**
+ * Incremental HTML parser, for documents too large to be parsed into a jsoup
+ * Document.  The input is read in chunks, and each node is passed to a
+ * visitor as soon as it is complete: head when its start tag is read, tail
+ * when its end tag is read.  Only the open elements (the path from the root
+ * to the current node) are kept; finished nodes are detached from their
+ * parents, so memory depends on nesting depth, not on document size.
+ * <p>
+ * The nodes passed to the visitor are jsoup nodes, with their parents and
+ * attributes, as in a parsed Document; children of an element are not
+ * available in head, except for the elements buffered whole (table headers,
+ * which are small and are read ahead by the table writer).
+ * <p>
+ * Only the subset of HTML produced by report generators is supported: block
+ * text, tables and lists.  The implied html, head, body and tbody elements are
+ * created, and the end tags of p, li, tr, td and th may be omitted; other
+ * markup must be well formed.  Comments, doctypes, processing instructions and
+ * the content of script and style elements are skipped.
+ *
+ * @author Roberto C. Benitez
+ */
+public class HtmlStreamParser
+{
+    private static final int BUFFER_SIZE=8192;
+    private static final Set<String> HEAD_TAGS=tagSet("base", "link", "meta", "title", "style", "script");
+    private static final Set<String> RAW_TEXT_TAGS=tagSet("script", "style", "title", "textarea");
+    private static final Set<String> BUFFERED_TAGS=tagSet("thead");
+    private static final Set<String> TABLE_SECTIONS=tagSet("thead", "tbody", "tfoot");
+    private static final Set<String> TABLE_PARTS=tagSet("thead", "tbody", "tfoot", "caption");
+    private static final Set<String> CELLS=tagSet("td", "th");
+    private static final Set<String> CLOSE_PARAGRAPH_TAGS=tagSet("address", "article", "aside", "blockquote",
+            "center", "dd", "div", "dl", "dt", "fieldset", "figure", "footer", "form", "h1", "h2", "h3", "h4",
+            "h5", "h6", "header", "hr", "li", "nav", "ol", "p", "pre", "section", "table", "ul");
+
+    private final Reader reader;
+    private final String baseUri;
+    private final char[] buffer= new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private int pushback=-1;
+
+    private final List<Element> open= new ArrayList<>();
+    private final StringBuilder text= new StringBuilder();
+    private NodeVisitor visitor;
+    private int bufferedIndex=-1;
+    private Element html;
+    private Element head;
+    private Element body;
+
+    /**
+     * @param reader HTML source; read to the end, but not closed
+     * @param baseUri base URI of the document (e.g. the path of the HTML file),
+     * used to resolve linked style sheets and images
+     */
+    public HtmlStreamParser(Reader reader, String baseUri)
+    {
+        this.reader = reader;
+        this.baseUri = baseUri;
+    }
+
+    private static Set<String> tagSet(String... names)
+    {
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    /**
+     * Parse the input, passing each node to a visitor, in document order.  The
+     * first node is the document, the last tail is that of the document.
+     * @param visitor visitor of the nodes
+     * @throws IOException if the input cannot be read
+     */
+    public void parse(NodeVisitor visitor) throws IOException
+    {
+        this.visitor=visitor;
+        Document document= new Document(baseUri);
+        open.add(document);
+        visitor.head(document, 0);
+
+        for(int c=read();c!=-1;c=read())
+        {
+            if(c!='<')
+            {
+                text.append((char)c);
+                continue;
+            }
+
+            int next=read();
+            if(next=='/')
+            {
+                flushText();
+                readEndTag();
+            }
+            else if(next=='!' || next=='?')
+            {
+                flushText();
+                skipMarkup(next);
+            }
+            else if(Character.isLetter(next))
+            {
+                flushText();
+                readStartTag((char)next);
+            }
+            else
+            {
+                text.append('<');
+                unread(next);
+            }
+        }
+
+        flushText();
+        while(!open.isEmpty())
+        {
+            end();
+        }
+    }
+
+    private void readStartTag(char first) throws IOException
+    {
+        StringBuilder name= new StringBuilder().append(first);
+        int c=read();
+        while(c!=-1 && c!='>' && c!='/' && !Character.isWhitespace(c))
+        {
+            name.append((char)c);
+            c=read();
+        }
+
+        Attributes attributes= new Attributes();
+        boolean selfClosing=false;
+        while(c!=-1 && c!='>')
+        {
+            if(c=='/')
+            {
+                c=read();
+                selfClosing=(c=='>');
+                continue;
+            }
+            if(Character.isWhitespace(c))
+            {
+                c=read();
+                continue;
+            }
+            c=readAttribute(c, attributes);
+        }
+
+        startTag(name.toString().toLowerCase(), attributes, selfClosing);
+    }
+
+    /**
+     * Read an attribute, starting at the first character of its name.
+     * @return character after the attribute
+     */
+    private int readAttribute(int first, Attributes attributes) throws IOException
+    {
+        StringBuilder name= new StringBuilder();
+        int c=first;
+        while(c!=-1 && c!='=' && c!='>' && c!='/' && !Character.isWhitespace(c))
+        {
+            name.append((char)c);
+            c=read();
+        }
+        while(c!=-1 && Character.isWhitespace(c))
+        {
+            c=read();
+        }
+
+        StringBuilder value= new StringBuilder();
+        if(c=='=')
+        {
+            c=read();
+            while(c!=-1 && Character.isWhitespace(c))
+            {
+                c=read();
+            }
+            if(c=='"' || c=='\'')
+            {
+                int quote=c;
+                for(c=read();c!=-1 && c!=quote;c=read())
+                {
+                    value.append((char)c);
+                }
+                c=read();
+            }
+            else
+            {
+                while(c!=-1 && c!='>' && !Character.isWhitespace(c))
+                {
+                    value.append((char)c);
+                    c=read();
+                }
+            }
+        }
+
+        String key=name.toString().toLowerCase();
+        if(!key.isEmpty() && !attributes.hasKey(key))
+        {
+            attributes.put(key, Parser.unescapeEntities(value.toString(), true));
+        }
+        return c;
+    }
+
+    private void readEndTag() throws IOException
+    {
+        StringBuilder name= new StringBuilder();
+        int c=read();
+        while(c!=-1 && c!='>' && !Character.isWhitespace(c))
+        {
+            name.append((char)c);
+            c=read();
+        }
+        while(c!=-1 && c!='>')
+        {
+            c=read();
+        }
+
+        endTag(name.toString().toLowerCase());
+    }
+
+    /**
+     * Skip a comment, doctype or processing instruction.
+     */
+    private void skipMarkup(int type) throws IOException
+    {
+        int c=read();
+        if(type=='!' && c=='-')
+        {
+            c=read();
+            if(c=='-')
+            {
+                //comment: skip to -->
+                int dashes=0;
+                for(c=read();c!=-1 && !(c=='>' && dashes >= 2);c=read())
+                {
+                    dashes=(c=='-')?dashes + 1:0;
+                }
+                return;
+            }
+        }
+        while(c!=-1 && c!='>')
+        {
+            c=read();
+        }
+    }
+
+    /**
+     * Read the content of a raw text element, up to its end tag.
+     */
+    private String readRawText(String name) throws IOException
+    {
+        StringBuilder content= new StringBuilder();
+        String endTag="</" + name;
+        for(int c=read();c!=-1;c=read())
+        {
+            content.append((char)c);
+            if(c=='>' && endsWithEndTag(content, endTag))
+            {
+                content.setLength(content.lastIndexOf("<"));
+                return content.toString();
+            }
+        }
+        return content.toString();
+    }
+
+    private static boolean endsWithEndTag(StringBuilder content, String endTag)
+    {
+        int start=content.lastIndexOf("<");
+        if(start < 0 || content.length() - start - 1 < endTag.length()){return false;}
+
+        String tag=content.substring(start, content.length() - 1).trim();
+        return tag.equalsIgnoreCase(endTag);
+    }
+
+    private void startTag(String name, Attributes attributes, boolean selfClosing) throws IOException
+    {
+        switch(name)
+        {
+            case "html":
+                ensureHtml();
+                html.attributes().addAll(attributes);
+                return;
+            case "head":
+                ensureHead();
+                return;
+            case "body":
+                ensureBody();
+                body.attributes().addAll(attributes);
+                return;
+            default:
+                break;
+        }
+
+        if(body==null && HEAD_TAGS.contains(name))
+        {
+            ensureHead();
+        }
+        else
+        {
+            ensureBody();
+            closeImpliedElements(name);
+        }
+
+        Tag tag=Tag.valueOf(name);
+        start(new Element(tag, baseUri, attributes));
+        if(RAW_TEXT_TAGS.contains(name))
+        {
+            String content=readRawText(name);
+            if(!("script".equals(name) || "style".equals(name)) && !content.isEmpty())
+            {
+                appendText(Parser.unescapeEntities(content, false));
+            }
+            end();
+        }
+        else if(tag.isEmpty() || selfClosing)
+        {
+            end();
+        }
+    }
+
+    /**
+     * Close the elements whose end tag is implied by a start tag, and open the
+     * implied table elements.
+     */
+    private void closeImpliedElements(String name)
+    {
+        if(CLOSE_PARAGRAPH_TAGS.contains(name))
+        {
+            closeTo(indexOf("p", "table", "td", "th", "caption"));
+        }
+
+        switch(name)
+        {
+            case "li":
+                closeTo(indexOf("li", "ul", "ol", "table"));
+                break;
+            case "td":
+            case "th":
+                closeTo(indexOf(CELLS, "tr", "table"));
+                if(!"tr".equals(current().nodeName()))
+                {
+                    openTableRow();
+                }
+                break;
+            case "tr":
+                closeTo(indexOf("tr", "thead", "tbody", "tfoot", "table"));
+                if("table".equals(current().nodeName()))
+                {
+                    start(new Element(Tag.valueOf("tbody"), baseUri));
+                }
+                break;
+            case "thead":
+            case "tbody":
+            case "tfoot":
+            case "caption":
+                closeTo(indexOf(TABLE_PARTS, "table"));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void openTableRow()
+    {
+        if("table".equals(current().nodeName()))
+        {
+            start(new Element(Tag.valueOf("tbody"), baseUri));
+        }
+        if(TABLE_SECTIONS.contains(current().nodeName()))
+        {
+            start(new Element(Tag.valueOf("tr"), baseUri));
+        }
+    }
+
+    private void endTag(String name)
+    {
+        if("head".equals(name))
+        {
+            if(head!=null && body==null)
+            {
+                closeTo(open.indexOf(head));
+            }
+            return;
+        }
+        if("html".equals(name) || "body".equals(name))
+        {
+            //closed at the end of the input
+            return;
+        }
+
+        int index=indexOf(name);
+        if(index > open.indexOf(body))
+        {
+            closeTo(index);
+        }
+    }
+
+    private void flushText()
+    {
+        if(text.length()==0){return;}
+
+        String content=Parser.unescapeEntities(text.toString(), false);
+        text.setLength(0);
+        if(body==null)
+        {
+            if(content.trim().isEmpty()){return;}
+            ensureBody();
+        }
+        appendText(content);
+    }
+
+    private void appendText(String content)
+    {
+        TextNode node= new TextNode(content, baseUri);
+        current().appendChild(node);
+        if(bufferedIndex < 0)
+        {
+            visitor.head(node, open.size());
+            visitor.tail(node, open.size());
+            node.remove();
+        }
+    }
+
+    private void ensureHtml()
+    {
+        if(html==null)
+        {
+            html= new Element(Tag.valueOf("html"), baseUri);
+            start(html);
+        }
+    }
+
+    private void ensureHead()
+    {
+        ensureHtml();
+        if(head==null && body==null)
+        {
+            head= new Element(Tag.valueOf("head"), baseUri);
+            start(head);
+        }
+    }
+
+    private void ensureBody()
+    {
+        if(body!=null){return;}
+
+        ensureHead();
+        closeTo(open.indexOf(html) + 1);
+        body= new Element(Tag.valueOf("body"), baseUri);
+        start(body);
+    }
+
+    private Element current()
+    {
+        return open.get(open.size() - 1);
+    }
+
+    private int indexOf(String name, String... bounds)
+    {
+        return indexOf(Collections.singleton(name), bounds);
+    }
+
+    /**
+     * Find the innermost open element with one of a set of names, without
+     * looking past the elements that bound it.
+     * @param names names of the element
+     * @param bounds names of the elements that bound the search
+     * @return index of the element on the open element stack; -1 if not found
+     */
+    private int indexOf(Set<String> names, String... bounds)
+    {
+        for(int i=open.size() - 1;i >= 0;i--)
+        {
+            String nodeName=open.get(i).nodeName();
+            if(names.contains(nodeName)){return i;}
+            for(String bound : bounds)
+            {
+                if(nodeName.equals(bound)){return -1;}
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * End the open elements from the top of the stack down to an index.
+     * @param index index of the last element to end; nothing is ended if negative
+     */
+    private void closeTo(int index)
+    {
+        if(index < 0){return;}
+        while(open.size() > index)
+        {
+            end();
+        }
+    }
+
+    private void start(Element element)
+    {
+        current().appendChild(element);
+        open.add(element);
+        if(bufferedIndex >= 0){return;}
+
+        if(BUFFERED_TAGS.contains(element.nodeName()))
+        {
+            bufferedIndex=open.size() - 1;
+        }
+        else
+        {
+            visitor.head(element, open.size() - 1);
+        }
+    }
+
+    private void end()
+    {
+        int index=open.size() - 1;
+        Node node=open.remove(index);
+        if(index==bufferedIndex)
+        {
+            bufferedIndex=-1;
+            node.traverse(visitor);
+        }
+        else if(bufferedIndex >= 0)
+        {
+            //kept in the buffered element, visited when it ends
+            return;
+        }
+        else
+        {
+            visitor.tail(node, index);
+        }
+
+        if(node.parent()!=null)
+        {
+            node.remove();
+        }
+    }
+
+    private int read() throws IOException
+    {
+        if(pushback >= 0)
+        {
+            int c=pushback;
+            pushback=-1;
+            return c;
+        }
+        if(position==limit)
+        {
+            limit=reader.read(buffer, 0, buffer.length);
+            position=0;
+            if(limit <= 0)
+            {
+                limit=0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private void unread(int c)
+    {
+        pushback=c;
+    }
+}
@@ -16,14 +16,23 @@
 package com.baseprogramming.pdwriter.html;
 
 import com.baseprogramming.pdwriter.Utils;
+import com.baseprogramming.pdwriter.font.FontCache;
 import com.baseprogramming.pdwriter.model.Borders;
 import com.baseprogramming.pdwriter.model.PageMetadata;
 import com.baseprogramming.pdwriter.model.PdParagraph;
+import com.baseprogramming.pdwriter.units.PdMillimeters;
+import com.baseprogramming.pdwriter.units.PdPica;
+import com.baseprogramming.pdwriter.units.PdPixels;
 import com.baseprogramming.pdwriter.units.PdPoints;
 import com.baseprogramming.pdwriter.units.PdUnit;
 import java.awt.Color;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.w3c.dom.css.CSSValue;
 
@@ -34,33 +43,55 @@ import org.w3c.dom.css.CSSValue;
  */
 public class HtmlStyle extends PdParagraph
 {
+    private static final Map<String,PDType1Font> fontMap=createFontMap();
     private final float dpi;
-    private static Map<String,PDType1Font> fontMap;
+    private final FontCache fonts;
     private HtmlStyle parent;
     private PdUnit blockWidth;
 
     public HtmlStyle(PageMetadata page,Map<String,CSSValue> style,float dpi)
+    {
+        this(page, style, dpi, null);
+    }
+
+    /**
+     * @param page page metadata
+     * @param style computed CSS properties
+     * @param dpi resolution used to convert pixel dimensions
+     * @param fonts document fonts, used for families registered in the font
+     * registry; null to use the standard 14 fonts only
+     */
+    public HtmlStyle(PageMetadata page,Map<String,CSSValue> style,float dpi,FontCache fonts)
+    {
+        this(page, CssStyle.of(style), dpi, fonts);
+    }
+
+    /**
+     * @param page page metadata
+     * @param style computed CSS properties
+     * @param dpi resolution used to convert pixel dimensions
+     * @param fonts document fonts, used for families registered in the font
+     * registry; null to use the standard 14 fonts only
+     */
+    public HtmlStyle(PageMetadata page,CssStyle style,float dpi,FontCache fonts)
     {
         super(page);
         parent=null;
         this.dpi=dpi;
-        if(fontMap==null)
-        {
-            createFontMap();
-        }
+        this.fonts=fonts;
         
-        setupFromStyleMap(style);
+        setupFromStyle(style);
     }
     
     public HtmlStyle(HtmlStyle parent,Map<String,CSSValue> style,float dpi)
     {
-        this(parent.getPage(),style,dpi);
+        this(parent.getPage(),style,dpi,parent.fonts);
         this.parent=parent;
     }
     
-    private void createFontMap()
+    private static Map<String,PDType1Font> createFontMap()
     {
-        fontMap= new HashMap <>();
+        Map<String,PDType1Font> fontMap= new HashMap <>();
         fontMap.put("TIMES NEW ROMAN", PDType1Font.TIMES_ROMAN);
         fontMap.put("TIMES NEW ROMAN_BOLD", PDType1Font.TIMES_BOLD);
         fontMap.put("TIMES NEW ROMAN_ITALIC", PDType1Font.TIMES_ITALIC);
@@ -78,27 +109,38 @@ public class HtmlStyle extends PdParagraph
         fontMap.put("HELVATICA_OBLIQUE", PDType1Font.HELVETICA_BOLD);
         fontMap.put("HELVATICA_BOLD_ITALIC", PDType1Font.HELVETICA_OBLIQUE);
         fontMap.put("HELVATICA_BOLD_ITALIC", PDType1Font.HELVETICA_BOLD_OBLIQUE);
+        
+        return Collections.unmodifiableMap(fontMap);
     }
     
-    private void  setupFromStyleMap(Map<String,CSSValue> style)
+    private void  setupFromStyle(CssStyle style)
     {
         setupFont(style);
         setupBorders(style);
         setupPadding(style);
         //setupMargin(style);
-        blockWidth = parseDimension(style, "width", new PdPoints(0));
+        blockWidth = parseDimension(style, CssProperty.WIDTH, new PdPoints(0));
     }
     
-    private void setupFont(Map<String,CSSValue> style)
+    private void setupFont(CssStyle style)
     {
-       String fontColor=getStyleValue(style,"color", "black");
-       PdUnit fontSize=parseDimension(style, "font-size", new PdPoints(12));
-       String fontStyle=getStyleValue(style,"font-style", "normal");
-       String fontWeight=getStyleValue(style,"font-weight", "normal");
-       String fontFamily=getStyleValue(style,"font-family", "Times New Roman");
+       String fontColor=getStyleValue(style,CssProperty.COLOR, "black");
+       PdUnit fontSize=parseDimension(style, CssProperty.FONT_SIZE, new PdPoints(12));
+       String fontStyle=getStyleValue(style,CssProperty.FONT_STYLE, "normal");
+       String fontWeight=getStyleValue(style,CssProperty.FONT_WEIGHT, "normal");
+       String fontFamily=getStyleValue(style,CssProperty.FONT_FAMILY, "Times New Roman");
        
-       PDType1Font font=getPDType1Font(fontFamily, fontStyle, fontWeight);
-       setFont(font);
+       //registered families after the first become fallbacks for characters it cannot show
+       List<PDFont> registered=getRegisteredFonts(fontFamily, fontStyle, fontWeight);
+       if(registered.isEmpty())
+       {
+           setFont(getPDType1Font(fontFamily, fontStyle, fontWeight));
+       }
+       else
+       {
+           setFont(registered.get(0));
+           setFallbackFonts(registered.subList(1, registered.size()));
+       }
 
        Color color=getColor(fontColor);
        setFontColor(color);
@@ -106,15 +148,15 @@ public class HtmlStyle extends PdParagraph
         setFontSize(fontSize.getPoints());
     }
     
-    private String getStyleValue(Map<String,CSSValue> style,String name,String defaultValue)
+    private String getStyleValue(CssStyle style,CssProperty property,String defaultValue)
     {
-        CSSValue value=style.get(name);
+        String value=style.getText(property);
         if(value==null)
         {
             return defaultValue;
         }
 
-        return value.getCssText();
+        return value;
     }
     
     public Color getColor(String colorString)
@@ -145,6 +187,30 @@ public class HtmlStyle extends PdParagraph
         }
     }
     
+    private List<PDFont> getRegisteredFonts(String htmlFamily,String style,String weight)
+    {
+        if(fonts==null){return Collections.emptyList();}
+        
+        boolean bold="bold".equals(weight) || "bolder".equals(weight) 
+                || (weight!=null && weight.matches("[6-9]00"));
+        boolean italic="italic".equals(style) || "oblique".equals(style);
+        List<PDFont> registered= new ArrayList<>();
+        try
+        {
+            for(String family : htmlFamily.split(","))
+            {
+                PDFont font=fonts.getFont(family.replace("\"", "").replace("'", ""), bold, italic);
+                if(font!=null && !registered.contains(font)){registered.add(font);}
+            }
+        }
+        catch(IOException e)
+        {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+        
+        return registered;
+    }
+    
     private PDType1Font getPDType1Font(String htmlFamily,String style,String weight)
     {
         String key=htmlFamily;
@@ -163,29 +229,29 @@ public class HtmlStyle extends PdParagraph
        
     }
 
-    private void setupBorders(Map<String,CSSValue> style)
+    private void setupBorders(CssStyle style)
     {
         PdUnit def= new PdPoints(0);
-        PdUnit all=parseDimension(style, "border", def);
+        PdUnit all=parseDimension(style, CssProperty.BORDER, def);
         
-        float top=parseDimension(style, "border-top", all).getPoints();
-        float right=parseDimension(style, "border-right", all).getPoints();
-        float bottom=parseDimension(style, "border-bottom", all).getPoints();
-        float left=parseDimension(style, "border-left", all).getPoints();
+        float top=parseDimension(style, CssProperty.BORDER_TOP, all).getPoints();
+        float right=parseDimension(style, CssProperty.BORDER_RIGHT, all).getPoints();
+        float bottom=parseDimension(style, CssProperty.BORDER_BOTTOM, all).getPoints();
+        float left=parseDimension(style, CssProperty.BORDER_LEFT, all).getPoints();
         
         Borders borders= new Borders(top, right, bottom, left);
         setBorder(borders);
     }
     
-    private void setupPadding(Map<String,CSSValue> style)
+    private void setupPadding(CssStyle style)
     {
         PdUnit def= new PdPoints(0);
-        PdUnit all=parseDimension(style, "padding", def);
+        PdUnit all=parseDimension(style, CssProperty.PADDING, def);
         
-        PdUnit top=parseDimension(style, "padding-top", all);
-        PdUnit right=parseDimension(style, "padding-right", all);
-        PdUnit bottom=parseDimension(style, "padding-bottom", all);
-        PdUnit left=parseDimension(style, "padding-left", all);
+        PdUnit top=parseDimension(style, CssProperty.PADDING_TOP, all);
+        PdUnit right=parseDimension(style, CssProperty.PADDING_RIGHT, all);
+        PdUnit bottom=parseDimension(style, CssProperty.PADDING_BOTTOM, all);
+        PdUnit left=parseDimension(style, CssProperty.PADDING_LEFT, all);
         
         setAboveSpacing(top);
         setBelowSpacing(bottom);
@@ -194,15 +260,15 @@ public class HtmlStyle extends PdParagraph
         
     }
     
-    private void setupMargin(Map<String,CSSValue> style)
+    private void setupMargin(CssStyle style)
     {
         PdUnit def= new PdPoints(0);
-        PdUnit all=parseDimension(style, "margin", def);
+        PdUnit all=parseDimension(style, CssProperty.MARGIN, def);
         
-        PdUnit top=parseDimension(style, "margin-top", all);
-        PdUnit right=parseDimension(style, "margin-right", all);
-        PdUnit bottom=parseDimension(style, "margin-bottom", all);
-        PdUnit left=parseDimension(style, "margin-left", all);
+        PdUnit top=parseDimension(style, CssProperty.MARGIN_TOP, all);
+        PdUnit right=parseDimension(style, CssProperty.MARGIN_RIGHT, all);
+        PdUnit bottom=parseDimension(style, CssProperty.MARGIN_BOTTOM, all);
+        PdUnit left=parseDimension(style, CssProperty.MARGIN_LEFT, all);
         
         setAboveSpacing(top);
         setBelowSpacing(bottom);
@@ -211,21 +277,29 @@ public class HtmlStyle extends PdParagraph
         
     }
     
-    private PdUnit parseDimension(Map<String,CSSValue> style, String name,PdUnit defaultValue)
+    private PdUnit parseDimension(CssStyle style, CssProperty property,PdUnit defaultValue)
     {
-        if(!style.containsKey(name)){return defaultValue;}
-        String input=style.get(name).getCssText();
+        String input=style.getText(property);
         if(input==null || input.isEmpty()){return defaultValue;}
         
+        float value=style.getValue(property);
+        switch(style.getUnit(property))
+        {
+            case CssStyle.UNIT_POINTS: return new PdPoints(value);
+            case CssStyle.UNIT_PIXELS: return new PdPixels(value, dpi);
+            case CssStyle.UNIT_MILLIMETERS: return new PdMillimeters(value);
+            case CssStyle.UNIT_PICAS: return new PdPica(value);
+            case CssStyle.UNIT_EMS: return new PdPoints(getFontSize() * value);
+            default: break;
+        }
+        
+        //not a number with a supported unit; fails as it always has
         if(input.length()<3)
         {
             return new PdPoints(Float.valueOf(input));
         }
         
-        
-        PdUnit unit=Utils.parseDimension(input,getFontSize(),dpi);
-        
-        return unit;
+        return Utils.parseDimension(input,getFontSize(),dpi);
         
     }
 
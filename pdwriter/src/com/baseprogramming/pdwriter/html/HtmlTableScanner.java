@@ -47,15 +47,17 @@ public class HtmlTableScanner implements NodeVisitor
     private boolean scannedHeader=false;
     private boolean firstTrIsHeader=false;
     private boolean scanningBody=false;
+    private boolean loadedTableStyles=false;
     private final List<String> columnNames = new LinkedList<>();
     
     private String tableCaption="";
     private List<String> rowBuffer = new ArrayList<>();
+    private final List<Map<String,Object>> layoutRows = new ArrayList<>();
+    private boolean pendingHeader=false;
     private final Deque<TagScanner> scanners =new ArrayDeque<>();
     private final HtmlPdWriter htmlWriter;
     private PdTable tableModel;
     
-    private String tableNodeId;
     private PdTableWriter tableWriter;
 
     public HtmlTableScanner(HtmlPdWriter htmlWriter)
@@ -68,41 +70,37 @@ public class HtmlTableScanner implements NodeVisitor
     @Override
     public void head(Node node,int depth)
     {
-        String name=node.nodeName();
-        
-        if("table".equals(name))
-        {
-            loadTableStyles(node);
-            tableNodeId=node.attr("id");
-        }
-        else if("caption".equals(name))
-        {
-            TagScanner scanner= new CaptionScanner(node, 0);
-            scanners.add(scanner);
-        }
-        else if("thead".equals(name))
-        {
-            THeadScanner scanner= new THeadScanner(node, 0);
-            scanners.add(scanner);
-            columnNames.clear();
-        }
-        else if("tbody".equals(name) )
+        switch(node.nodeName())
         {
-            if(scannedHeader==false)
-            {
-                firstTrIsHeader=true;
-            }
-            scanningBody=true;
-            TagScanner scanner= new TrScanner(node, depth);
-            scanners.add(scanner);
-        }
-        else
-        {
-            TagScanner scanner=scanners.peekLast();
-            if(scanner!=null)
-            {
-                scanner.head(node, depth);
-            }
+            case "table":
+                //nested tables are written by scanners of their own
+                if(!loadedTableStyles)
+                {
+                    loadTableStyles(node);
+                }
+                break;
+            case "caption":
+                scanners.add(new CaptionScanner(node, 0));
+                break;
+            case "thead":
+                scanners.add(new THeadScanner(node, 0));
+                columnNames.clear();
+                break;
+            case "tbody":
+                if(scannedHeader==false)
+                {
+                    firstTrIsHeader=true;
+                }
+                scanningBody=true;
+                scanners.add(new TrScanner(node, depth));
+                break;
+            default:
+                TagScanner scanner=scanners.peekLast();
+                if(scanner!=null)
+                {
+                    scanner.head(node, depth);
+                }
+                break;
         }
          
     }
@@ -110,14 +108,17 @@ public class HtmlTableScanner implements NodeVisitor
     @Override
     public void tail(Node node, int depth)
     {
-        String name=node.nodeName();
         TagScanner scanner=scanners.peekLast();
         if(scanner!=null)
         {
             scanner.tail(node, depth);
         }
-        if("table".equals(name))
+        if("table".equals(node.nodeName()))
         {
+            if(pendingHeader)
+            {
+                writeLayoutRows();
+            }
             finishTable();
         }
             
@@ -144,8 +145,76 @@ public class HtmlTableScanner implements NodeVisitor
         }
     }
     
+    /**
+     * Hold a row until the widths of the columns are known, then write the
+     * header and the rows held.
+     */
+    private void addLayoutRow(Map<String,Object> rowData)
+    {
+        layoutRows.add(new TreeMap<>(rowData));
+        if(layoutRows.size() >= htmlWriter.getTableLayoutRows())
+        {
+            writeLayoutRows();
+        }
+    }
+
+    private void writeLayoutRows()
+    {
+        pendingHeader=false;
+        try
+        {
+            tableModel.calculateAutoColumnWidths(layoutRows);
+            writeCaptionIfPresent();
+            writeTableHeader();
+            for(Map<String,Object> row : layoutRows)
+            {
+                tableWriter.writeRow(row);
+            }
+        }
+        catch(IOException e)
+        {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+        layoutRows.clear();
+    }
+
+    private void writeTableHeader() throws RuntimeException
+    {
+        try
+        {
+            float y=tableWriter.initYPosition();
+            tableModel.calculateMissingColumnWidths();
+            tableModel.setRepeatHeader(htmlWriter.isRepeatTableHeaders());
+            tableWriter.writeColumnHeaders();
+
+        }
+        catch(Exception e)
+        {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    private void writeCaptionIfPresent() 
+    {
+        try
+        {
+            if(!(tableCaption==null || tableCaption.trim().isEmpty()))
+            {
+                PdWriter writer=htmlWriter.getWriter();
+                writer.write(tableModel, tableCaption);
+                float y=writer.getLastYPosition() + tableModel.getLineHeight();
+                writer.setLastYPosition(y);
+            }
+        }
+        catch(Exception e)
+        {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+    
     public void loadTableStyles(Node node)
     {
+        loadedTableStyles=true;
         PdParagraph style=htmlWriter.createNodeStyle(node);
         if(node.hasAttr("border"))
         {
@@ -191,8 +260,7 @@ public class HtmlTableScanner implements NodeVisitor
         
         @Override public void head(Node node, int depth)
         {
-            String name=node.nodeName();
-            if("#text".equals(name))
+            if(node instanceof TextNode)
             {
                 String string = ((TextNode)node).text();
                 caption.append(string);
@@ -220,21 +288,29 @@ public class HtmlTableScanner implements NodeVisitor
 
         @Override public void head(Node node, int depth)
         {
-            String name = node.nodeName();
-            if ("th".equals(name) || "td".equals(name))
+            switch(node.nodeName())
             {
-                CellScanner scanner = new CellScanner(node, depth, true);
-                PdTableHeader header= tableModel.getHeader();
-                String id="column-"+header.getColumnCount();
-                String label=scanner.getTextContent();
-                
-                PdParagraph style=htmlWriter.createNodeStyle(node);
-                columnStyle.put(id, style);
-                PdUnit width = getBlockWidth(style);
-                PdColumn column= new PdColumn(id,label, width);
-                header.getColumns().add(column);
+                case "th":
+                case "td":
+                    addColumn(node, depth);
+                    break;
+                default:
+                    break;
             }
+        }
 
+        private void addColumn(Node node, int depth)
+        {
+            CellScanner scanner = new CellScanner(node, depth, true);
+            PdTableHeader header= tableModel.getHeader();
+            String id="column-"+header.getColumnCount();
+            String label=scanner.getTextContent();
+            
+            PdParagraph style=htmlWriter.createNodeStyle(node);
+            columnStyle.put(id, style);
+            PdUnit width = getBlockWidth(style);
+            PdColumn column= new PdColumn(id,label, width);
+            header.getColumns().add(column);
         }
 
         private PdUnit getBlockWidth(PdParagraph style)
@@ -258,43 +334,16 @@ public class HtmlTableScanner implements NodeVisitor
             {
                 scannedHeader=true;
                 scanners.poll();
-                
-                writeCaptionIfPresent();
-                writeTableHeader();
-            }
-        }
-        
 
-        private void writeTableHeader() throws RuntimeException
-        {
-            try
-            {
-                float y=tableWriter.initYPosition();
-                tableModel.calculateMissingColumnWidths();
-                tableWriter.writeColumnHeaders();
-                
-            }
-            catch(Exception e)
-            {
-                throw new RuntimeException(e.getMessage(), e);
-            }
-        }
-
-        private void writeCaptionIfPresent() 
-        {
-            try
-            {
-                if(!(tableCaption==null || tableCaption.trim().isEmpty()))
+                if(htmlWriter.getTableLayoutRows() > 0)
                 {
-                    PdWriter writer=htmlWriter.getWriter();
-                    writer.write(tableModel, tableCaption);
-                    float y=writer.getLastYPosition() + tableModel.getLineHeight();
-                    writer.setLastYPosition(y);
+                    pendingHeader=true;
+                }
+                else
+                {
+                    writeCaptionIfPresent();
+                    writeTableHeader();
                 }
-            }
-            catch(Exception e)
-            {
-                throw new RuntimeException(e.getMessage(), e);
             }
         }
     }
@@ -331,10 +380,9 @@ public class HtmlTableScanner implements NodeVisitor
 
         @Override public final void head(Node node, int depth)
         {
-            String name=node.nodeName();
-            if("#text".equals(name))
+            if(node instanceof TextNode)
             {
-                 String string = ((TextNode) node).text();
+                String string = ((TextNode) node).text();
                 content.append(string);
             }
         }
@@ -357,45 +405,60 @@ public class HtmlTableScanner implements NodeVisitor
 
         @Override public void head(Node node, int depth)
         {
-            String name = node.nodeName();
-            if("tr".equals(name))
-            {
-                rowData.clear();
-                cellData = new StringBuffer();
-            }
-            else if ("td".equals(name))
-            {
-                cellData = new StringBuffer();
-            }
-            else if ("#text".equals(name))
+            if(node instanceof TextNode)
             {
                 String string = ((TextNode) node).text();
                 if (!string.trim().isEmpty())
                 {
                     cellData.append(string);
                 }
+                return;
+            }
+            switch(node.nodeName())
+            {
+                case "tr":
+                    rowData.clear();
+                    cellData = new StringBuffer();
+                    break;
+                case "td":
+                    cellData = new StringBuffer();
+                    break;
+                default:
+                    break;
             }
         }
 
         @Override public void tail(Node node, int depth)
         {
-             String name=node.nodeName();
-             if("td".equals(name))
-             {
-                 String id="column-"+rowData.size();
-                 rowData.put(id, cellData.toString());
-             }
-             else if("tr".equals(name))
-             {
-                try 
-                {
-                    tableWriter.writeRow(rowData);
-                }
-                catch(IOException | RuntimeException e)
-                {
-                    throw  new RuntimeException(e.getMessage(), e);
-                }   
-             }
+            switch(node.nodeName())
+            {
+                case "td":
+                    String id="column-"+rowData.size();
+                    rowData.put(id, cellData.toString());
+                    break;
+                case "tr":
+                    writeRow();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void writeRow() throws RuntimeException
+        {
+            if(pendingHeader)
+            {
+                addLayoutRow(rowData);
+                return;
+            }
+            try
+            {
+                tableWriter.writeRow(rowData);
+            }
+            catch(IOException | RuntimeException e)
+            {
+                throw  new RuntimeException(e.getMessage(), e);
+            }
         }
     }
     
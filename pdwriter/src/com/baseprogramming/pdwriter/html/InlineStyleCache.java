@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.html;
+
+import com.baseprogramming.pdwriter.Utils;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of parsed style attributes.  HTML generated from templates repeats the
+ * same few style attributes throughout a document; each distinct attribute
+ * text is parsed once, into an immutable CssStyle shared by every element
+ * using it.
+ * <p>
+ * The cache holds at most a maximum number of attributes; the least recently
+ * used are removed first.  A cache must only be used by one thread at a time.
+ *
+ * @author Roberto C. Benitez
+ */
+public class InlineStyleCache
+{
+    public static final int DEFAULT_MAX_ENTRIES=512;
+
+    private final int maxEntries;
+    private final LinkedHashMap<String,CssStyle> entries;
+    private long hits;
+    private long misses;
+
+    public InlineStyleCache()
+    {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries maximum number of style attributes held
+     */
+    public InlineStyleCache(int maxEntries)
+    {
+        if(maxEntries <=0)
+        {
+            throw new IllegalArgumentException("Invalid maximum entries argument");
+        }
+
+        this.maxEntries = maxEntries;
+        this.entries= new LinkedHashMap<String,CssStyle>(16, 0.75f, true)
+        {
+            @Override protected boolean removeEldestEntry(Map.Entry<String,CssStyle> eldest)
+            {
+                return size() > InlineStyleCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param css text of a style attribute
+     * @return declared properties; shared
+     */
+    public CssStyle get(String css)
+    {
+        CssStyle style=entries.get(css);
+        if(style!=null)
+        {
+            hits++;
+            return style;
+        }
+
+        misses++;
+        style=parse(css);
+        entries.put(css, style);
+        return style;
+    }
+
+    private static CssStyle parse(String css)
+    {
+        try
+        {
+            return CssStyle.of(Utils.createStyleDeclarationMap(Utils.parseStyleDeclaration(css)));
+        }
+        catch(IOException e)
+        {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    public long getHits()
+    {
+        return hits;
+    }
+
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    public void clear()
+    {
+        entries.clear();
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.html;
+
+import com.baseprogramming.pdwriter.Utils;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jsoup.nodes.Element;
+import org.w3c.dom.css.CSSStyleSheet;
+
+/**
+ * Style rules indexed by the rightmost key of their selector: the id of the
+ * subject if it has one, else its first class, else its tag.  Matching an
+ * element only looks at the rules under its id, each of its classes and its
+ * tag (plus the rules for any element), so the cost does not grow with the
+ * number of rules; ancestors are only checked for those candidates.
+ * <p>
+ * The index of the default style sheet is compiled once, and shared by all
+ * writers and threads; it is read only.  Linked style sheets are merged into
+ * read only copies (see {@link CompiledStyleSheet#mergeInto}).  When the
+ * {@value StartupSnapshot#SNAPSHOT_PROPERTY} system property names a snapshot
+ * file, the default index is loaded from it instead (see {@link StartupSnapshot}).
+ *
+ * @author Roberto C. Benitez
+ */
+public class SelectorIndex
+{
+    private static final Comparator<CssRule> CASCADE_ORDER=
+            Comparator.comparingInt(CssRule::getSpecificity).thenComparingInt(CssRule::getOrder);
+
+    private static volatile SelectorIndex defaultIndex;
+
+    private final Map<String,List<CssRule>> idRules= new HashMap<>();
+    private final Map<String,List<CssRule>> classRules= new HashMap<>();
+    private final Map<String,List<CssRule>> tagRules= new HashMap<>();
+    private final List<CssRule> universalRules= new ArrayList<>();
+    private int ruleCount;
+    private boolean readOnly;
+
+    public SelectorIndex()
+    {
+    }
+
+    /**
+     * Create a modifiable copy of an index.  Rules are immutable, and shared.
+     * @param index index to copy
+     */
+    public SelectorIndex(SelectorIndex index)
+    {
+        copyRules(index.idRules, idRules);
+        copyRules(index.classRules, classRules);
+        copyRules(index.tagRules, tagRules);
+        universalRules.addAll(index.universalRules);
+        ruleCount=index.ruleCount;
+    }
+
+    private static void copyRules(Map<String,List<CssRule>> source, Map<String,List<CssRule>> target)
+    {
+        source.forEach((key, rules)->target.put(key, new ArrayList<>(rules)));
+    }
+
+    /**
+     * Get the index of the default HTML style sheet, compiling it on first use.
+     * @return shared, read only index
+     */
+    public static SelectorIndex getDefault()
+    {
+        SelectorIndex index=defaultIndex;
+        if(index==null)
+        {
+            synchronized(SelectorIndex.class)
+            {
+                if(defaultIndex==null)
+                {
+                    defaultIndex=compileDefault();
+                }
+                index=defaultIndex;
+            }
+        }
+        return index;
+    }
+
+    private static SelectorIndex compileDefault()
+    {
+        try
+        {
+            String snapshotFile=System.getProperty(StartupSnapshot.SNAPSHOT_PROPERTY);
+            if(snapshotFile!=null)
+            {
+                StartupSnapshot snapshot=StartupSnapshot.load(new File(snapshotFile));
+                snapshot.registerFontMetrics();
+                return createDefault(snapshot.getDefaultStyleSheet());
+            }
+
+            return createDefault(CompiledStyleSheet.compile(Utils.getDefaultHtmlCss()));
+        }
+        catch(IOException e)
+        {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    private static SelectorIndex createDefault(CompiledStyleSheet styleSheet)
+    {
+        SelectorIndex index= new SelectorIndex();
+        index.addStyleSheet(styleSheet);
+        index.setReadOnly();
+        return index;
+    }
+
+    /**
+     * Use a default style sheet compiled ahead of time, unless the default
+     * index has already been compiled.
+     * @param styleSheet compiled default style sheet
+     */
+    static void setDefaultStyleSheet(CompiledStyleSheet styleSheet)
+    {
+        synchronized(SelectorIndex.class)
+        {
+            if(defaultIndex==null)
+            {
+                defaultIndex=createDefault(styleSheet);
+            }
+        }
+    }
+
+    /**
+     * @return true if rules cannot be added to this index
+     */
+    public boolean isReadOnly()
+    {
+        return readOnly;
+    }
+
+    /**
+     * Prevent rules from being added, so the index can be shared.
+     */
+    public void setReadOnly()
+    {
+        readOnly=true;
+    }
+
+    /**
+     * Add the style rules of a style sheet, after the rules already added.
+     * @param css style sheet
+     */
+    public void addStyleSheet(CSSStyleSheet css)
+    {
+        addStyleSheet(CompiledStyleSheet.compile(css));
+    }
+
+    /**
+     * Add the rules of a compiled style sheet, after the rules already added.
+     * @param styleSheet compiled style sheet
+     */
+    public void addStyleSheet(CompiledStyleSheet styleSheet)
+    {
+        checkModifiable();
+        for(CssRule rule : styleSheet.getRules())
+        {
+            addRule(rule.withOrder(ruleCount));
+        }
+    }
+
+    /**
+     * Add a rule, after the rules already added.  Each selector of a group
+     * becomes a rule of its own; unsupported selectors are ignored.
+     * @param selectorGroup comma separated selectors
+     * @param style declarations of the rule
+     */
+    public void add(String selectorGroup, CssStyle style)
+    {
+        checkModifiable();
+        for(CssRule rule : CssRule.parseGroup(selectorGroup, ruleCount, style))
+        {
+            addRule(rule);
+        }
+    }
+
+    private void checkModifiable()
+    {
+        if(readOnly)
+        {
+            throw new UnsupportedOperationException("Shared style sheet index cannot be modified");
+        }
+    }
+
+    private void addRule(CssRule rule)
+    {
+        ruleCount++;
+        if(rule.getSubjectId()!=null)
+        {
+            idRules.computeIfAbsent(rule.getSubjectId(), k->new ArrayList<>()).add(rule);
+        }
+        else if(rule.getSubjectClass()!=null)
+        {
+            classRules.computeIfAbsent(rule.getSubjectClass(), k->new ArrayList<>()).add(rule);
+        }
+        else if(rule.getSubjectTag()!=null)
+        {
+            tagRules.computeIfAbsent(rule.getSubjectTag(), k->new ArrayList<>()).add(rule);
+        }
+        else
+        {
+            universalRules.add(rule);
+        }
+    }
+
+    /**
+     * @return number of rules indexed
+     */
+    public int size()
+    {
+        return ruleCount;
+    }
+
+    /**
+     * @param element element
+     * @return rules matching the element, in cascade order: by specificity,
+     * then by order of declaration
+     */
+    public List<CssRule> getMatchingRules(Element element)
+    {
+        List<CssRule> matches=null;
+        String id=element.id();
+        if(!id.isEmpty())
+        {
+            matches=addMatches(idRules.get(id), element, matches);
+        }
+
+        String classAttribute=element.className();
+        if(!classAttribute.isEmpty())
+        {
+            for(String className : classAttribute.trim().split("\\s+"))
+            {
+                matches=addMatches(classRules.get(className), element, matches);
+            }
+        }
+        matches=addMatches(tagRules.get(element.tagName()), element, matches);
+        matches=addMatches(universalRules, element, matches);
+
+        if(matches==null){return Collections.emptyList();}
+        if(matches.size() > 1){matches.sort(CASCADE_ORDER);}
+        return matches;
+    }
+
+    private static List<CssRule> addMatches(List<CssRule> candidates, Element element, List<CssRule> matches)
+    {
+        if(candidates==null){return matches;}
+
+        for(CssRule rule : candidates)
+        {
+            if(rule.matches(element))
+            {
+                if(matches==null){matches= new ArrayList<>(4);}
+                if(!matches.contains(rule)){matches.add(rule);}
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.html;
+
+import com.baseprogramming.pdwriter.Utils;
+import com.baseprogramming.pdwriter.font.StandardFontMetrics;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.util.Version;
+
+/**
+ * Binary snapshot of the work done on the first HTML document of a JVM: the
+ * compiled default style sheet, and the glyph widths of the standard 14
+ * fonts.  Loading a snapshot is a single memory-mapped read, with no CSS
+ * parsing and no font encoding lookups.
+ * <p>
+ * Snapshots are written at build time (see {@link #main}) or on first run
+ * (see {@link #load}).  A snapshot records a fingerprint of the default style
+ * sheet and of the PDFBox version, and is ignored (and rewritten by load) when
+ * either changes.  Setting the {@value #SNAPSHOT_PROPERTY} system property to
+ * the snapshot file makes {@link SelectorIndex#getDefault()} load it.
+ *
+ * @author Roberto C. Benitez
+ */
+public final class StartupSnapshot
+{
+    public static final String SNAPSHOT_PROPERTY="pdwriter.snapshot";
+    private static final int MAGIC=0x50445353; //PDSS
+    private static final int VERSION=1;
+    private static final PDType1Font[] STANDARD_FONTS={
+        PDType1Font.TIMES_ROMAN, PDType1Font.TIMES_BOLD, PDType1Font.TIMES_ITALIC, PDType1Font.TIMES_BOLD_ITALIC,
+        PDType1Font.HELVETICA, PDType1Font.HELVETICA_BOLD, PDType1Font.HELVETICA_OBLIQUE, PDType1Font.HELVETICA_BOLD_OBLIQUE,
+        PDType1Font.COURIER, PDType1Font.COURIER_BOLD, PDType1Font.COURIER_OBLIQUE, PDType1Font.COURIER_BOLD_OBLIQUE,
+        PDType1Font.SYMBOL, PDType1Font.ZAPF_DINGBATS};
+
+    private final CompiledStyleSheet defaultStyleSheet;
+    private final List<StandardFontMetrics> fontMetrics;
+
+    private StartupSnapshot(CompiledStyleSheet defaultStyleSheet, List<StandardFontMetrics> fontMetrics)
+    {
+        this.defaultStyleSheet = defaultStyleSheet;
+        this.fontMetrics = Collections.unmodifiableList(fontMetrics);
+    }
+
+    /**
+     * Compile the default style sheet, and compute the metrics of the standard
+     * 14 fonts.
+     * @return new snapshot
+     * @throws IOException if the default style sheet cannot be read
+     */
+    public static StartupSnapshot create() throws IOException
+    {
+        List<StandardFontMetrics> fontMetrics= new ArrayList<>();
+        for(PDType1Font font : STANDARD_FONTS)
+        {
+            fontMetrics.add(StandardFontMetrics.get(font));
+        }
+
+        return new StartupSnapshot(CompiledStyleSheet.compile(Utils.getDefaultHtmlCss()), fontMetrics);
+    }
+
+    /**
+     * Read a snapshot file, creating (or recreating) it if it does not exist,
+     * is out of date or cannot be read.
+     * @param file snapshot file
+     * @return snapshot
+     * @throws IOException if the snapshot cannot be created or written
+     */
+    public static StartupSnapshot load(File file) throws IOException
+    {
+        StartupSnapshot snapshot=null;
+        if(file.isFile())
+        {
+            try
+            {
+                snapshot=read(file);
+            }
+            catch(IOException e)
+            {
+                //truncated or corrupt; rewritten below
+            }
+        }
+
+        if(snapshot==null)
+        {
+            snapshot=create();
+            snapshot.write(file);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Read a snapshot file.
+     * @param file snapshot file
+     * @return snapshot; null if it was written for another default style sheet
+     * or PDFBox version
+     * @throws IOException if the file cannot be read, or is not a valid snapshot
+     */
+    public static StartupSnapshot read(File file) throws IOException
+    {
+        ByteBuffer data;
+        try(FileChannel channel=FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            data=channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try
+        {
+            if(data.getInt()!=MAGIC)
+            {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+            if(data.getInt()!=VERSION || !readString(data).equals(getFingerprint()))
+            {
+                return null;
+            }
+
+            CompiledStyleSheet styleSheet=readStyleSheet(data);
+            int fontCount=readCount(data);
+            List<StandardFontMetrics> fontMetrics= new ArrayList<>(fontCount);
+            for(int i=0;i<fontCount;i++)
+            {
+                fontMetrics.add(StandardFontMetrics.read(readString(data), data));
+            }
+            return new StartupSnapshot(styleSheet, fontMetrics);
+        }
+        catch(BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e)
+        {
+            throw new IOException("Invalid snapshot file: " + file, e);
+        }
+    }
+
+    /**
+     * Write the snapshot.  The file is replaced atomically, so other processes
+     * never read a partial snapshot.
+     * @param file snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file) throws IOException
+    {
+        Path target=file.toPath().toAbsolutePath();
+        Path tmp=Files.createTempFile(target.getParent(), "tmp-", ".part");
+        try
+        {
+            try(DataOutputStream output= new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp))))
+            {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                writeString(output, getFingerprint());
+                writeStyleSheet(output);
+                output.writeInt(fontMetrics.size());
+                for(StandardFontMetrics metrics : fontMetrics)
+                {
+                    writeString(output, metrics.getName());
+                    metrics.write(output);
+                }
+            }
+            move(tmp, target);
+        }
+        finally
+        {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Use the snapshot for the default selector index (unless it has already
+     * been compiled) and for the metrics of the standard 14 fonts.
+     */
+    public void install()
+    {
+        registerFontMetrics();
+        SelectorIndex.setDefaultStyleSheet(defaultStyleSheet);
+    }
+
+    void registerFontMetrics()
+    {
+        for(StandardFontMetrics metrics : fontMetrics)
+        {
+            StandardFontMetrics.register(metrics);
+        }
+    }
+
+    public CompiledStyleSheet getDefaultStyleSheet()
+    {
+        return defaultStyleSheet;
+    }
+
+    public List<StandardFontMetrics> getFontMetrics()
+    {
+        return fontMetrics;
+    }
+
+    /**
+     * Rules are written after the styles they share, so rules of a selector
+     * group still share one style when read back.
+     */
+    private void writeStyleSheet(DataOutputStream output) throws IOException
+    {
+        Map<CssStyle,Integer> styleIndexes= new IdentityHashMap<>();
+        List<CssStyle> styles= new ArrayList<>();
+        for(CssRule rule : defaultStyleSheet.getRules())
+        {
+            if(!styleIndexes.containsKey(rule.getStyle()))
+            {
+                styleIndexes.put(rule.getStyle(), styles.size());
+                styles.add(rule.getStyle());
+            }
+        }
+
+        output.writeInt(styles.size());
+        for(CssStyle style : styles)
+        {
+            Map<CssProperty,String> declarations=style.getDeclarations();
+            output.writeInt(declarations.size());
+            for(Map.Entry<CssProperty,String> e : declarations.entrySet())
+            {
+                writeString(output, e.getKey().getName());
+                writeString(output, e.getValue());
+            }
+        }
+
+        output.writeInt(defaultStyleSheet.getRules().size());
+        for(CssRule rule : defaultStyleSheet.getRules())
+        {
+            writeString(output, rule.getSelector());
+            output.writeInt(rule.getOrder());
+            output.writeInt(styleIndexes.get(rule.getStyle()));
+        }
+    }
+
+    private static CompiledStyleSheet readStyleSheet(ByteBuffer data)
+    {
+        CssStyle[] styles= new CssStyle[readCount(data)];
+        for(int i=0;i<styles.length;i++)
+        {
+            Map<CssProperty,String> declarations= new EnumMap<>(CssProperty.class);
+            int count=readCount(data);
+            for(int j=0;j<count;j++)
+            {
+                String name=readString(data);
+                CssProperty property=CssProperty.forName(name);
+                if(property==null)
+                {
+                    throw new IllegalArgumentException("Unknown property: " + name);
+                }
+                declarations.put(property, readString(data));
+            }
+            styles[i]=CssStyle.ofText(declarations);
+        }
+
+        int ruleCount=readCount(data);
+        List<CssRule> rules= new ArrayList<>(ruleCount);
+        for(int i=0;i<ruleCount;i++)
+        {
+            String selector=readString(data);
+            int order=data.getInt();
+            CssRule rule=CssRule.parse(selector, order, styles[data.getInt()]);
+            if(rule==null)
+            {
+                throw new IllegalArgumentException("Unsupported selector: " + selector);
+            }
+            rules.add(rule);
+        }
+
+        return new CompiledStyleSheet(rules);
+    }
+
+    private static int readCount(ByteBuffer data)
+    {
+        int count=data.getInt();
+        if(count < 0 || count > data.remaining())
+        {
+            throw new BufferUnderflowException();
+        }
+        return count;
+    }
+
+    private static void writeString(DataOutputStream output, String string) throws IOException
+    {
+        byte[] bytes=string.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer data)
+    {
+        byte[] bytes= new byte[readCount(data)];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return checksum of the default style sheet, and PDFBox version (the
+     * source of the font metrics)
+     */
+    private static String getFingerprint() throws IOException
+    {
+        CRC32 checksum= new CRC32();
+        try(InputStream input=Utils.getDefaultHtmlCssInputStream())
+        {
+            byte[] bytes= new byte[4096];
+            for(int n=input.read(bytes);n > 0;n=input.read(bytes))
+            {
+                checksum.update(bytes, 0, n);
+            }
+        }
+
+        return Long.toHexString(checksum.getValue()) + "/pdfbox-" + Version.getVersion();
+    }
+
+    private static void move(Path source, Path target) throws IOException
+    {
+        try
+        {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch(AtomicMoveNotSupportedException e)
+        {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Write a snapshot file, e.g. as a build step.
+     * @param args snapshot file
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length!=1)
+        {
+            System.err.println("Usage: StartupSnapshot <snapshot file>");
+            System.exit(1);
+        }
+        create().write(new File(args[0]));
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.html;
+
+import com.baseprogramming.pdwriter.Utils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compiled style sheet files, by canonical path.  A file is parsed again only
+ * when its modification time or size changes, so documents linking the same
+ * style sheet (e.g. a batch of reports) parse it once.
+ * <p>
+ * The cache is thread safe; compiled style sheets are immutable.
+ *
+ * @author Roberto C. Benitez
+ */
+public final class StyleSheetCache
+{
+    private static final StyleSheetCache INSTANCE= new StyleSheetCache();
+
+    private final ConcurrentHashMap<String,Entry> styleSheets= new ConcurrentHashMap<>();
+    private final LongAdder hits= new LongAdder();
+    private final LongAdder misses= new LongAdder();
+
+    public StyleSheetCache()
+    {
+    }
+
+    /**
+     * @return cache shared by all writers in the JVM
+     */
+    public static StyleSheetCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Get a compiled style sheet, parsing the file if it is not cached or has
+     * changed since it was parsed.
+     * @param cssFile style sheet file
+     * @return compiled style sheet
+     * @throws IOException if the file cannot be read
+     */
+    public CompiledStyleSheet get(File cssFile) throws IOException
+    {
+        File file=cssFile.getCanonicalFile();
+        BasicFileAttributes attributes=Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        long modified=attributes.lastModifiedTime().toMillis();
+        long size=attributes.size();
+
+        Entry entry=styleSheets.get(file.getPath());
+        if(entry!=null && entry.modified==modified && entry.size==size)
+        {
+            hits.increment();
+            return entry.styleSheet;
+        }
+
+        misses.increment();
+        CompiledStyleSheet styleSheet=CompiledStyleSheet.compile(Utils.parseStyleSheet(file));
+        styleSheets.put(file.getPath(), new Entry(modified, size, styleSheet));
+        return styleSheet;
+    }
+
+    /**
+     * Get a compiled style sheet on an executor.
+     * @param cssFile style sheet file
+     * @param executor executor parsing the file, if needed
+     * @return future compiled style sheet; completes exceptionally if the file
+     * cannot be read
+     */
+    public CompletableFuture<CompiledStyleSheet> getAsync(File cssFile, Executor executor)
+    {
+        return CompletableFuture.supplyAsync(()->
+        {
+            try
+            {
+                return get(cssFile);
+            }
+            catch(IOException e)
+            {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    public int size()
+    {
+        return styleSheets.size();
+    }
+
+    public void clear()
+    {
+        styleSheets.clear();
+    }
+
+    private static final class Entry
+    {
+        private final long modified;
+        private final long size;
+        private final CompiledStyleSheet styleSheet;
+
+        public Entry(long modified, long size, CompiledStyleSheet styleSheet)
+        {
+            this.modified = modified;
+            this.size = size;
+            this.styleSheet = styleSheet;
+        }
+    }
+}
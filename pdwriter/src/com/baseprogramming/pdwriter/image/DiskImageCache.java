@@ -0,0 +1,384 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.image;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cross-document cache of encoded image streams, stored as one file per image in
+ * a directory.  Entries are keyed by the content hash (plus the reduced size, for
+ * downsampled images) computed by {@link ImageCache}, and hold the final stream
+ * bytes and image dictionary parameters, so later documents copy the stream
+ * without decoding or compressing the image again.
+ * <p>
+ * The directory is capped at a maximum size; the least recently used entries are
+ * removed first.  Recency survives restarts through the file modification time.
+ * Instances are thread-safe and may be shared by all writers in the process;
+ * entries are written to a temporary file and moved into place, so several
+ * processes may also share a directory.
+ *
+ * @author Roberto C. Benitez
+ */
+public class DiskImageCache
+{
+    private static final int MAGIC=0x50444943; //PDIC
+    private static final int VERSION=1;
+    private static final String SUFFIX=".img";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String,Long> entries= new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param directory directory holding the cache files; created if missing
+     * @param maxBytes maximum total size of the cache files
+     * @throws IOException if the directory cannot be created or listed
+     */
+    public DiskImageCache(File directory, long maxBytes) throws IOException
+    {
+        if(maxBytes <=0)
+        {
+            throw new IllegalArgumentException("Invalid maximum cache size argument");
+        }
+
+        this.directory = directory.toPath();
+        this.maxBytes = maxBytes;
+        Files.createDirectories(this.directory);
+        loadEntries();
+    }
+
+    private void loadEntries() throws IOException
+    {
+        List<Path> files= new ArrayList<>();
+        try(DirectoryStream<Path> stream=Files.newDirectoryStream(directory, "*" + SUFFIX))
+        {
+            stream.forEach(files::add);
+        }
+
+        files.sort((a, b)->getLastModified(a).compareTo(getLastModified(b)));
+        for(Path file : files)
+        {
+            String name=file.getFileName().toString();
+            long size=file.toFile().length();
+            entries.put(name.substring(0, name.length() - SUFFIX.length()), size);
+            totalBytes+=size;
+        }
+    }
+
+    private static FileTime getLastModified(Path file)
+    {
+        try
+        {
+            return Files.getLastModifiedTime(file);
+        }
+        catch(IOException e)
+        {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    public File getDirectory()
+    {
+        return directory.toFile();
+    }
+
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    public synchronized long getTotalBytes()
+    {
+        return totalBytes;
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * Get a cached image.
+     * @param key cache key
+     * @return encoded image, or null if the key is not cached (or the entry is unreadable)
+     */
+    public EncodedImage get(String key)
+    {
+        String name=getEntryName(key);
+        Path file=getFile(name);
+        List<String> evicted= new ArrayList<>();
+        synchronized(this)
+        {
+            if(entries.get(name)==null)
+            {
+                if(!Files.isRegularFile(file))
+                {
+                    misses++;
+                    return null;
+                }
+                //written by another process sharing the directory
+                long size=file.toFile().length();
+                entries.put(name, size);
+                totalBytes+=size;
+                evicted=evict(name);
+            }
+        }
+        deleteFiles(evicted);
+
+        try(DataInputStream input= new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+        {
+            if(input.readInt()!=MAGIC || input.readInt()!=VERSION)
+            {
+                remove(name);
+                return null;
+            }
+            EncodedImage image=readImage(input);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            synchronized(this)
+            {
+                hits++;
+            }
+
+            return image;
+        }
+        catch(IOException e)
+        {
+            //removed by another process or truncated; treat as a miss
+            remove(name);
+            synchronized(this)
+            {
+                misses++;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Store an image, evicting the least recently used entries if the cache
+     * exceeds its maximum size.
+     * @param key cache key
+     * @param image encoded image
+     * @throws IOException if the entry cannot be written
+     */
+    public void put(String key, EncodedImage image) throws IOException
+    {
+        String name=getEntryName(key);
+        Path file=getFile(name);
+        Path tmp=Files.createTempFile(directory, "tmp-", ".part");
+        try
+        {
+            try(DataOutputStream output= new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp))))
+            {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                writeImage(output, image);
+            }
+            move(tmp, file);
+        }
+        finally
+        {
+            Files.deleteIfExists(tmp);
+        }
+
+        long size=file.toFile().length();
+        List<String> evicted;
+        synchronized(this)
+        {
+            Long previous=entries.put(name, size);
+            totalBytes+=size - ((previous==null)?0:previous);
+            evicted=evict(name);
+        }
+        deleteFiles(evicted);
+    }
+
+    /**
+     * Drop the least recently used entries until the cache fits its maximum
+     * size.  Called holding the lock; the files are deleted after it is
+     * released.
+     * @param keep entry just added, never evicted
+     * @return names of the evicted entries
+     */
+    private List<String> evict(String keep)
+    {
+        List<String> evicted= new ArrayList<>();
+        Iterator<Map.Entry<String,Long>> iterator=entries.entrySet().iterator();
+        while(totalBytes > maxBytes && iterator.hasNext())
+        {
+            Map.Entry<String,Long> eldest=iterator.next();
+            if(eldest.getKey().equals(keep)){continue;}
+            totalBytes-=eldest.getValue();
+            evicted.add(eldest.getKey());
+            iterator.remove();
+        }
+
+        return evicted;
+    }
+
+    private void deleteFiles(List<String> names)
+    {
+        for(String name : names)
+        {
+            try
+            {
+                Files.deleteIfExists(getFile(name));
+            }
+            catch(IOException e)
+            {
+                //left for the next eviction
+            }
+        }
+    }
+
+    public void remove(String key)
+    {
+        String name=getEntryName(key);
+        synchronized(this)
+        {
+            Long size=entries.remove(name);
+            if(size!=null)
+            {
+                totalBytes-=size;
+            }
+        }
+
+        try
+        {
+            Files.deleteIfExists(getFile(name));
+        }
+        catch(IOException e)
+        {
+            //left for the next eviction
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException
+    {
+        try
+        {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch(AtomicMoveNotSupportedException e)
+        {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch(NoSuchFileException e)
+        {
+            throw new IOException("Cache directory no longer exists: " + source.getParent(), e);
+        }
+    }
+
+    private static String getEntryName(String key)
+    {
+        StringBuilder name= new StringBuilder(key.length());
+        for(int i=0;i<key.length();i++)
+        {
+            char c=key.charAt(i);
+            name.append(Character.isLetterOrDigit(c)?c:'_');
+        }
+
+        return name.toString();
+    }
+
+    private Path getFile(String name)
+    {
+        return directory.resolve(name + SUFFIX);
+    }
+
+    private static void writeImage(DataOutputStream output, EncodedImage image) throws IOException
+    {
+        output.writeUTF(image.getFilter());
+        output.writeInt(image.getWidth());
+        output.writeInt(image.getHeight());
+        output.writeInt(image.getBitsPerComponent());
+        output.writeUTF(image.getColorSpace());
+        writeBytes(output, image.getPalette());
+        output.writeInt(image.getPredictorColors());
+        writeBytes(output, image.getData());
+
+        output.writeBoolean(image.getSoftMask()!=null);
+        if(image.getSoftMask()!=null)
+        {
+            writeImage(output, image.getSoftMask());
+        }
+    }
+
+    private static EncodedImage readImage(DataInputStream input) throws IOException
+    {
+        String filter=input.readUTF();
+        int width=input.readInt();
+        int height=input.readInt();
+        int bitsPerComponent=input.readInt();
+        String colorSpace=input.readUTF();
+        byte[] palette=readBytes(input);
+        int predictorColors=input.readInt();
+        byte[] data=readBytes(input);
+        EncodedImage mask=input.readBoolean()?readImage(input):null;
+
+        return new EncodedImage(filter, width, height, bitsPerComponent, colorSpace, palette,
+                predictorColors, data, mask);
+    }
+
+    private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException
+    {
+        if(bytes==null)
+        {
+            output.writeInt(-1);
+            return;
+        }
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream input) throws IOException
+    {
+        int length=input.readInt();
+        if(length < 0){return null;}
+
+        byte[] bytes= new byte[length];
+        input.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.image;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceCMYK;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.color.PDIndexed;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+/**
+ * An image whose samples are already encoded with a PDF stream filter.  The
+ * bytes are copied into the document as-is; nothing is decoded or compressed
+ * again when the XObject is created.
+ *
+ * @author Roberto C. Benitez
+ */
+public final class EncodedImage
+{
+    public static final String DCT_DECODE="DCTDecode";
+    public static final String FLATE_DECODE="FlateDecode";
+
+    public static final String DEVICE_GRAY="DeviceGray";
+    public static final String DEVICE_RGB="DeviceRGB";
+    public static final String DEVICE_CMYK="DeviceCMYK";
+
+    private static final int PNG_PREDICTOR=15;
+
+    private final String filter;
+    private final int width;
+    private final int height;
+    private final int bitsPerComponent;
+    private final String colorSpace;
+    private final byte[] palette;
+    private final int predictorColors;
+    private final byte[] data;
+    private final EncodedImage softMask;
+
+    /**
+     * @param filter stream filter name, e.g. DCTDecode
+     * @param width width in pixels
+     * @param height height in pixels
+     * @param bitsPerComponent bits per color component
+     * @param colorSpace device color space name (or base of the palette)
+     * @param palette RGB lookup table for indexed images; null otherwise
+     * @param predictorColors number of colors for PNG predictor decode parameters; 0 for none
+     * @param data encoded stream bytes
+     */
+    public EncodedImage(String filter, int width, int height, int bitsPerComponent,
+            String colorSpace, byte[] palette, int predictorColors, byte[] data)
+    {
+        this(filter, width, height, bitsPerComponent, colorSpace, palette, predictorColors, data, null);
+    }
+
+    /**
+     * @param filter stream filter name, e.g. DCTDecode
+     * @param width width in pixels
+     * @param height height in pixels
+     * @param bitsPerComponent bits per color component
+     * @param colorSpace device color space name (or base of the palette)
+     * @param palette RGB lookup table for indexed images; null otherwise
+     * @param predictorColors number of colors for PNG predictor decode parameters; 0 for none
+     * @param data encoded stream bytes
+     * @param softMask DeviceGray alpha channel of the image; null if opaque
+     */
+    public EncodedImage(String filter, int width, int height, int bitsPerComponent,
+            String colorSpace, byte[] palette, int predictorColors, byte[] data, EncodedImage softMask)
+    {
+        this.filter = filter;
+        this.width = width;
+        this.height = height;
+        this.bitsPerComponent = bitsPerComponent;
+        this.colorSpace = colorSpace;
+        this.palette = palette;
+        this.predictorColors = predictorColors;
+        this.data = data;
+        this.softMask = softMask;
+    }
+
+    public String getFilter()
+    {
+        return filter;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    public int getBitsPerComponent()
+    {
+        return bitsPerComponent;
+    }
+
+    public String getColorSpace()
+    {
+        return colorSpace;
+    }
+
+    public boolean isIndexed()
+    {
+        return palette!=null;
+    }
+
+    public byte[] getPalette()
+    {
+        return palette;
+    }
+
+    public int getPredictorColors()
+    {
+        return predictorColors;
+    }
+
+    /**
+     * Encoded stream bytes.  The array is shared, and must not be modified.
+     * @return encoded bytes
+     */
+    public byte[] getData()
+    {
+        return data;
+    }
+
+    public int getLength()
+    {
+        return data.length;
+    }
+
+    public EncodedImage getSoftMask()
+    {
+        return softMask;
+    }
+
+    /**
+     * Create an image XObject in the given document, copying the encoded bytes
+     * verbatim into the image stream.
+     * @param document target document
+     * @return new image XObject
+     * @throws IOException if the stream cannot be written
+     */
+    public PDImageXObject toXObject(PDDocument document) throws IOException
+    {
+        PDImageXObject image = new PDImageXObject(document, new ByteArrayInputStream(data),
+                COSName.getPDFName(filter), width, height, bitsPerComponent, createColorSpace());
+
+        if(predictorColors > 0)
+        {
+            COSDictionary parms= new COSDictionary();
+            parms.setInt(COSName.PREDICTOR, PNG_PREDICTOR);
+            parms.setInt(COSName.COLORS, predictorColors);
+            parms.setInt(COSName.BITS_PER_COMPONENT, bitsPerComponent);
+            parms.setInt(COSName.COLUMNS, width);
+            image.getCOSObject().setItem(COSName.DECODE_PARMS, parms);
+        }
+
+        if(softMask!=null)
+        {
+            image.getCOSObject().setItem(COSName.SMASK, softMask.toXObject(document));
+        }
+
+        return image;
+    }
+
+    /**
+     * Capture the encoded stream and parameters of an existing image XObject, so
+     * it can be stored and copied into other documents.  Only images this class
+     * can reproduce exactly are supported: a single DCTDecode or FlateDecode
+     * filter, a device color space, PNG predictor parameters and an optional
+     * soft mask of the same kind.
+     * @param image image XObject
+     * @return encoded image, or null if the XObject uses other features
+     * @throws IOException if the stream cannot be read
+     */
+    public static EncodedImage fromXObject(PDImageXObject image) throws IOException
+    {
+        COSStream stream=image.getCOSObject();
+        String filter=getSingleFilter(stream.getFilters());
+        if(!(DCT_DECODE.equals(filter) || FLATE_DECODE.equals(filter))){return null;}
+        if(image.isStencil() || stream.getDictionaryObject(COSName.DECODE)!=null
+                || stream.getDictionaryObject(COSName.MASK)!=null)
+        {
+            return null;
+        }
+
+        COSBase colorSpace=stream.getDictionaryObject(COSName.COLORSPACE);
+        if(!(COSName.DEVICEGRAY.equals(colorSpace) || COSName.DEVICERGB.equals(colorSpace)
+                || COSName.DEVICECMYK.equals(colorSpace)))
+        {
+            return null;
+        }
+
+        int predictorColors=0;
+        COSBase parms=stream.getDictionaryObject(COSName.DECODE_PARMS);
+        if(parms!=null)
+        {
+            if(!(parms instanceof COSDictionary)){return null;}
+            COSDictionary dictionary=(COSDictionary)parms;
+            int predictor=dictionary.getInt(COSName.PREDICTOR, 1);
+            if(predictor!=1)
+            {
+                if(predictor < 10 || dictionary.getInt(COSName.COLUMNS, 1)!=image.getWidth()
+                        || dictionary.getInt(COSName.BITS_PER_COMPONENT, 8)!=image.getBitsPerComponent())
+                {
+                    return null;
+                }
+                predictorColors=dictionary.getInt(COSName.COLORS, 1);
+            }
+        }
+
+        EncodedImage mask=null;
+        if(stream.getDictionaryObject(COSName.SMASK)!=null)
+        {
+            mask=fromXObject(image.getSoftMask());
+            if(mask==null){return null;}
+        }
+
+        byte[] data;
+        try(InputStream is=stream.createRawInputStream())
+        {
+            data=IOUtils.toByteArray(is);
+        }
+
+        return new EncodedImage(filter, image.getWidth(), image.getHeight(), image.getBitsPerComponent(),
+                ((COSName)colorSpace).getName(), null, predictorColors, data, mask);
+    }
+
+    private static String getSingleFilter(COSBase filters)
+    {
+        if(filters instanceof COSArray && ((COSArray)filters).size()==1)
+        {
+            filters=((COSArray)filters).getObject(0);
+        }
+
+        return (filters instanceof COSName)?((COSName)filters).getName():null;
+    }
+
+    private PDColorSpace createColorSpace() throws IOException
+    {
+        PDColorSpace base;
+        if(DEVICE_GRAY.equals(colorSpace))
+        {
+            base=PDDeviceGray.INSTANCE;
+        }
+        else if(DEVICE_CMYK.equals(colorSpace))
+        {
+            base=PDDeviceCMYK.INSTANCE;
+        }
+        else
+        {
+            base=PDDeviceRGB.INSTANCE;
+        }
+
+        if(palette==null){return base;}
+
+        COSArray array= new COSArray();
+        array.add(COSName.INDEXED);
+        array.add(base.getCOSObject());
+        array.add(COSInteger.get(palette.length / 3 - 1));
+        array.add(new COSString(palette));
+
+        return new PDIndexed(array);
+    }
+}
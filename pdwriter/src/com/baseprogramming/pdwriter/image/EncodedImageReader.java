@@ -0,0 +1,224 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.image;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Reads JPEG and PNG files straight into an {@link EncodedImage}, without
+ * decoding the samples.  JPEG bytes are embedded as DCTDecode; the IDAT data of
+ * a non-interlaced PNG is embedded as FlateDecode with the PNG predictor.  Any
+ * file that cannot be passed through (alpha, transparency, interlacing, CMYK
+ * or arithmetic-coded JPEG, unknown format) yields null, and the caller should
+ * fall back to a full decode.
+ *
+ * @author Roberto C. Benitez
+ */
+public final class EncodedImageReader
+{
+    private static final byte[] PNG_SIGNATURE={(byte)0x89,'P','N','G','\r','\n',0x1A,'\n'};
+
+    private static final int PNG_GRAY=0;
+    private static final int PNG_RGB=2;
+    private static final int PNG_INDEXED=3;
+
+    private EncodedImageReader(){}
+
+    /**
+     * Read an image file for passthrough embedding.
+     * @param imageFile JPEG or PNG file
+     * @return encoded image, or null if the file must be decoded instead
+     * @throws IOException if the file cannot be read
+     */
+    public static EncodedImage read(File imageFile) throws IOException
+    {
+        byte[] content=Files.readAllBytes(imageFile.toPath());
+        return read(content);
+    }
+
+    public static EncodedImage read(byte[] content)
+    {
+        if(isJpeg(content))
+        {
+            return readJpeg(content);
+        }
+        else if(isPng(content))
+        {
+            return readPng(content);
+        }
+
+        return null;
+    }
+
+    public static boolean isJpeg(byte[] content)
+    {
+        return content.length > 3 && (content[0] & 0xFF)==0xFF && (content[1] & 0xFF)==0xD8;
+    }
+
+    public static boolean isPng(byte[] content)
+    {
+        if(content.length < PNG_SIGNATURE.length){return false;}
+        for(int i=0;i<PNG_SIGNATURE.length;i++)
+        {
+            if(content[i]!=PNG_SIGNATURE[i]){return false;}
+        }
+
+        return true;
+    }
+
+    private static EncodedImage readJpeg(byte[] content)
+    {
+        int pos=2;
+        while(pos + 4 <= content.length)
+        {
+            if((content[pos] & 0xFF)!=0xFF){return null;}
+            int marker=content[pos + 1] & 0xFF;
+            if(marker==0xFF)
+            {
+                pos++; //fill byte
+                continue;
+            }
+            pos+=2;
+            if(marker==0x01 || (marker >= 0xD0 && marker <= 0xD8))
+            {
+                continue; //standalone marker; no length
+            }
+            if(marker==0xD9 || marker==0xDA)
+            {
+                return null; //reached image data without a frame header
+            }
+
+            int length=readUnsignedShort(content, pos);
+            if(isStartOfFrame(marker))
+            {
+                if(!isDctFrame(marker) || pos + 7 >= content.length){return null;}
+
+                int precision=content[pos + 2] & 0xFF;
+                int height=readUnsignedShort(content, pos + 3);
+                int width=readUnsignedShort(content, pos + 5);
+                int components=content[pos + 7] & 0xFF;
+                String colorSpace=getJpegColorSpace(components);
+                if(precision!=8 || width==0 || height==0 || colorSpace==null){return null;}
+
+                return new EncodedImage(EncodedImage.DCT_DECODE, width, height, precision,
+                        colorSpace, null, 0, content);
+            }
+            pos+=length;
+        }
+
+        return null;
+    }
+
+    private static boolean isStartOfFrame(int marker)
+    {
+        return marker >= 0xC0 && marker <= 0xCF && marker!=0xC4 && marker!=0xC8 && marker!=0xCC;
+    }
+
+    private static boolean isDctFrame(int marker)
+    {
+        //baseline, extended sequential and progressive huffman frames
+        return marker==0xC0 || marker==0xC1 || marker==0xC2;
+    }
+
+    private static String getJpegColorSpace(int components)
+    {
+        if(components==1){return EncodedImage.DEVICE_GRAY;}
+        if(components==3){return EncodedImage.DEVICE_RGB;}
+
+        //CMYK/YCCK jpegs are often stored inverted (Adobe); let the decoder handle them
+        return null;
+    }
+
+    private static EncodedImage readPng(byte[] content)
+    {
+        int pos=PNG_SIGNATURE.length;
+        int width=0;
+        int height=0;
+        int bitDepth=0;
+        int colorType=-1;
+        byte[] palette=null;
+        ByteArrayOutputStream idat= new ByteArrayOutputStream(content.length);
+
+        while(pos + 8 <= content.length)
+        {
+            int length=readInt(content, pos);
+            String type=new String(content, pos + 4, 4, StandardCharsets.US_ASCII);
+            int dataStart=pos + 8;
+            if(length < 0 || dataStart + length > content.length){return null;}
+
+            if("IHDR".equals(type))
+            {
+                width=readInt(content, dataStart);
+                height=readInt(content, dataStart + 4);
+                bitDepth=content[dataStart + 8] & 0xFF;
+                colorType=content[dataStart + 9] & 0xFF;
+                int compression=content[dataStart + 10] & 0xFF;
+                int filter=content[dataStart + 11] & 0xFF;
+                int interlace=content[dataStart + 12] & 0xFF;
+                if(compression!=0 || filter!=0 || interlace!=0){return null;}
+                if(!(colorType==PNG_GRAY || colorType==PNG_RGB || colorType==PNG_INDEXED)){return null;}
+                if(colorType==PNG_RGB && bitDepth < 8){return null;}
+            }
+            else if("PLTE".equals(type))
+            {
+                palette=new byte[length];
+                System.arraycopy(content, dataStart, palette, 0, length);
+            }
+            else if("tRNS".equals(type))
+            {
+                return null; //transparency requires a soft mask
+            }
+            else if("IDAT".equals(type))
+            {
+                idat.write(content, dataStart, length);
+            }
+            else if("IEND".equals(type))
+            {
+                break;
+            }
+            pos=dataStart + length + 4; //skip crc
+        }
+
+        if(width <=0 || height <=0 || idat.size()==0){return null;}
+
+        if(colorType==PNG_INDEXED)
+        {
+            if(palette==null){return null;}
+            return new EncodedImage(EncodedImage.FLATE_DECODE, width, height, bitDepth,
+                    EncodedImage.DEVICE_RGB, palette, 1, idat.toByteArray());
+        }
+
+        int colors=(colorType==PNG_RGB)?3:1;
+        String colorSpace=(colorType==PNG_RGB)?EncodedImage.DEVICE_RGB:EncodedImage.DEVICE_GRAY;
+        return new EncodedImage(EncodedImage.FLATE_DECODE, width, height, bitDepth,
+                colorSpace, null, colors, idat.toByteArray());
+    }
+
+    private static int readUnsignedShort(byte[] content, int pos)
+    {
+        return ((content[pos] & 0xFF) << 8) | (content[pos + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] content, int pos)
+    {
+        return ((content[pos] & 0xFF) << 24) | ((content[pos + 1] & 0xFF) << 16)
+                | ((content[pos + 2] & 0xFF) << 8) | (content[pos + 3] & 0xFF);
+    }
+}
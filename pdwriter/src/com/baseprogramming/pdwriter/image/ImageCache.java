@@ -0,0 +1,607 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.image;
+
+import java.awt.Dimension;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+/**
+ * Document-scoped cache of image XObjects.  Images are looked up by canonical
+ * path first (validated against the file size and modification time), which
+ * yields the content hash; the hash is then used to find the embedded image.
+ * Drawing the same file (or two files with identical content) more than once
+ * embeds a single XObject.
+ * <p>
+ * New JPEG and PNG images are embedded through {@link EncodedImageReader}, which
+ * copies the compressed data without decoding it; other images fall back to
+ * PDFBox's decoding factories.  When a {@link ImageDownsampler} is set, images
+ * that exceed its target resolution at the size they are drawn are reduced
+ * first, and cached per reduced size.  When a {@link DiskImageCache} is set,
+ * encoded streams are also shared with other documents through it.
+ * <p>
+ * Only the embedded image stream, which the document owns anyway, is retained.
+ * Decoded pixels are never held by the cache; the raster PDFBox caches on a
+ * PDImageXObject is soft referenced and is released by the GC under memory
+ * pressure.
+ *
+ * @author Roberto C. Benitez
+ */
+public class ImageCache
+{
+    private static final String HASH_ALGORITHM="SHA-1";
+
+    private final PDDocument document;
+    private final Map<String,FileSignature> signatures= new HashMap<>();
+    private final Map<String,PDImageXObject> images= new HashMap<>();
+    private final Map<String,EncodedImage> preparedImages= new HashMap<>();
+    private final Map<String,List<CompletableFuture<PreparedImage>>> prefetchedImages= new HashMap<>();
+    private ImageDownsampler downsampler;
+    private DiskImageCache diskCache;
+    private int hits;
+    private int misses;
+    private int fileReads;
+    private String lastReadPath;
+    private byte[] lastReadContent;
+
+    public ImageCache(PDDocument document)
+    {
+        this.document = document;
+    }
+
+    public PDDocument getDocument()
+    {
+        return document;
+    }
+
+    public ImageDownsampler getDownsampler()
+    {
+        return downsampler;
+    }
+
+    /**
+     * Set the downsampler applied to images before they are embedded.
+     * @param downsampler downsampler, or null to embed images at their native resolution
+     */
+    public void setDownsampler(ImageDownsampler downsampler)
+    {
+        this.downsampler = downsampler;
+    }
+
+    public DiskImageCache getDiskCache()
+    {
+        return diskCache;
+    }
+
+    /**
+     * Set the cross-document cache consulted before an image is encoded, and
+     * updated after.
+     * @param diskCache shared disk cache, or null to encode every new image
+     */
+    public void setDiskCache(DiskImageCache diskCache)
+    {
+        this.diskCache = diskCache;
+    }
+
+    /**
+     * Get the size, in pixels, of the image in the given file (before any downsampling).
+     * @param imageFile file containing the image
+     * @return image size
+     * @throws IOException if the file cannot be read or decoded
+     */
+    public Dimension getImageSize(File imageFile) throws IOException
+    {
+        FileSignature signature=getSignature(imageFile);
+        if(signature.getSize()==null)
+        {
+            PDImageXObject image=getImage(imageFile);
+            return new Dimension(image.getWidth(), image.getHeight());
+        }
+
+        return new Dimension(signature.getSize());
+    }
+
+    /**
+     * Get the image XObject for the given file at its native resolution.
+     * @param imageFile file containing the image
+     * @return image XObject belonging to this cache's document
+     * @throws IOException if the file cannot be read or decoded
+     */
+    public PDImageXObject getImage(File imageFile) throws IOException
+    {
+        return getImage(imageFile, 0, 0);
+    }
+
+    /**
+     * Get the image XObject for the given file, embedding it in the document
+     * only the first time its content is seen at the resulting resolution.
+     * @param imageFile file containing the image
+     * @param width drawn width in points; 0 to use the image width
+     * @param height drawn height in points; 0 to use the image height
+     * @return image XObject belonging to this cache's document
+     * @throws IOException if the file cannot be read or decoded
+     */
+    public PDImageXObject getImage(File imageFile, float width, float height) throws IOException
+    {
+        SignedContent signed=readSignature(imageFile);
+        FileSignature signature=signed.getSignature();
+        lastReadPath=null;
+        lastReadContent=null;
+        Dimension target=getTargetSize(downsampler, signature.getSize(), width, height);
+        String key=getKey(signature.getHash(), target);
+
+        PDImageXObject image=images.get(key);
+        if(image!=null)
+        {
+            hits++;
+            return image;
+        }
+
+        misses++;
+        EncodedImage encoded=preparedImages.remove(key);
+        if(encoded==null)
+        {
+            encoded=getCachedImage(diskCache, key);
+        }
+        if(encoded==null)
+        {
+            //the content is only at hand if it was the last file hashed
+            byte[] content=signed.getContent();
+            if(content==null)
+            {
+                content=Files.readAllBytes(imageFile.toPath());
+                fileReads++;
+            }
+            encoded=encode(content, target, downsampler);
+            if(encoded!=null)
+            {
+                putCachedImage(diskCache, key, encoded);
+            }
+        }
+
+        if(encoded!=null)
+        {
+            image=encoded.toXObject(document);
+        }
+        else
+        {
+            image=PDImageXObject.createFromFileByContent(imageFile, document);
+            storeDecodedImage(key, image);
+        }
+        images.put(key, image);
+
+        return image;
+    }
+
+    private static EncodedImage getCachedImage(DiskImageCache cache, String key)
+    {
+        return (cache==null)?null:cache.get(key);
+    }
+
+    private static void putCachedImage(DiskImageCache cache, String key, EncodedImage image)
+    {
+        if(cache==null){return;}
+
+        try
+        {
+            cache.put(key, image);
+        }
+        catch(IOException e)
+        {
+            //the disk cache is best-effort; the image is still written to the document
+            cache.remove(key);
+        }
+    }
+
+    private void storeDecodedImage(String key, PDImageXObject image) throws IOException
+    {
+        if(diskCache==null){return;}
+
+        EncodedImage encoded=EncodedImage.fromXObject(image);
+        if(encoded!=null)
+        {
+            putCachedImage(diskCache, key, encoded);
+        }
+    }
+
+    /**
+     * Start reading, hashing and (if needed) downsampling images on the given
+     * executor, and return immediately.  When one of the files is later drawn,
+     * its result is collected (waiting for it if it has not finished yet), and
+     * only the creation of the XObject is done on the calling thread.  Failed
+     * prefetches are ignored; the file is read again when drawn, which reports
+     * the error.
+     * @param requests images and the sizes they will be drawn at
+     * @param executor executor running the prefetch tasks
+     * @throws IOException if a file path cannot be resolved
+     */
+    public void prefetch(Collection<ImageRequest> requests, Executor executor) throws IOException
+    {
+        ImageDownsampler sampler=downsampler;
+        DiskImageCache cache=diskCache;
+        Set<String> submitted= new HashSet<>();
+        for(ImageRequest request : requests)
+        {
+            String path=request.getFile().getCanonicalPath();
+            if(!submitted.add(path + "|" + request.getWidth() + "|" + request.getHeight())){continue;}
+
+            CompletableFuture<PreparedImage> future=CompletableFuture.supplyAsync(()->prepare(request, sampler, cache), executor);
+            prefetchedImages.computeIfAbsent(path, e->new ArrayList<>()).add(future);
+        }
+    }
+
+    private void collectPrefetchedImages(String path)
+    {
+        List<CompletableFuture<PreparedImage>> futures=prefetchedImages.remove(path);
+        if(futures==null){return;}
+
+        for(CompletableFuture<PreparedImage> future : futures)
+        {
+            try
+            {
+                addPreparedImage(future.join());
+            }
+            catch(CompletionException | CancellationException e)
+            {
+                //read again when drawn
+            }
+        }
+    }
+
+    private void addPreparedImage(PreparedImage prepared)
+    {
+        signatures.put(prepared.getPath(), prepared.getSignature());
+        if(prepared.getImage()!=null && !images.containsKey(prepared.getKey()))
+        {
+            preparedImages.putIfAbsent(prepared.getKey(), prepared.getImage());
+        }
+    }
+
+    private static PreparedImage prepare(ImageRequest request, ImageDownsampler sampler, DiskImageCache cache)
+    {
+        try
+        {
+            File file=request.getFile();
+            String path=file.getCanonicalPath();
+            long length=file.length();
+            long lastModified=file.lastModified();
+            byte[] content=Files.readAllBytes(file.toPath());
+
+            FileSignature signature=createSignature(length, lastModified, content);
+            Dimension target=getTargetSize(sampler, signature.getSize(), request.getWidth(), request.getHeight());
+            String key=getKey(signature.getHash(), target);
+            EncodedImage image=getCachedImage(cache, key);
+            if(image==null)
+            {
+                image=encode(content, target, sampler);
+                if(image!=null)
+                {
+                    putCachedImage(cache, key, image);
+                }
+            }
+
+            return new PreparedImage(path, signature, key, image);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e.getMessage(), e);
+        }
+    }
+
+    private static EncodedImage encode(byte[] content, Dimension target, ImageDownsampler sampler) throws IOException
+    {
+        if(target!=null)
+        {
+            try
+            {
+                EncodedImage image=sampler.downsample(content, target);
+                if(image!=null){return image;}
+            }
+            catch(IOException e)
+            {
+                //not decodable by ImageIO; embed at native resolution instead
+            }
+        }
+
+        return EncodedImageReader.read(content);
+    }
+
+    private static Dimension getTargetSize(ImageDownsampler sampler, Dimension size, float width, float height)
+    {
+        if(sampler==null || size==null){return null;}
+
+        float drawnWidth=(width<=0)?size.width:width;
+        float drawnHeight=(height<=0)?size.height:height;
+
+        return sampler.getTargetSize(size.width, size.height, drawnWidth, drawnHeight);
+    }
+
+    private static String getKey(String hash, Dimension target)
+    {
+        if(target==null){return hash;}
+
+        return hash + "@" + target.width + "x" + target.height;
+    }
+
+    private FileSignature getSignature(File file) throws IOException
+    {
+        return readSignature(file).getSignature();
+    }
+
+    /**
+     * Get the signature of a file, reading and hashing the file only if it is
+     * new or has changed.  The content of the last file read is kept until the
+     * next image is drawn, since its size is usually looked up just before it
+     * is drawn.
+     * @param file file to sign
+     * @return signature, with the content of the file if it was the last one read
+     * @throws IOException if the file cannot be read
+     */
+    private SignedContent readSignature(File file) throws IOException
+    {
+        String path=file.getCanonicalPath();
+        collectPrefetchedImages(path);
+        long length=file.length();
+        long lastModified=file.lastModified();
+
+        FileSignature signature=signatures.get(path);
+        if(signature!=null && signature.matches(length, lastModified))
+        {
+            return new SignedContent(signature, path.equals(lastReadPath)?lastReadContent:null);
+        }
+
+        byte[] content=Files.readAllBytes(file.toPath());
+        fileReads++;
+        signature=createSignature(length, lastModified, content);
+        signatures.put(path, signature);
+        lastReadPath=path;
+        lastReadContent=content;
+
+        return new SignedContent(signature, content);
+    }
+
+    private static FileSignature createSignature(long length, long lastModified, byte[] content)
+    {
+        return new FileSignature(length, lastModified, hashContent(content), readImageSize(content));
+    }
+
+    /**
+     * Get the hash of the file content.  The file is only read again if its
+     * size or modification time changed since it was last hashed.
+     * @param file file to hash
+     * @return hex encoded content hash
+     * @throws IOException if the file cannot be read
+     */
+    public String getContentHash(File file) throws IOException
+    {
+        return getSignature(file).getHash();
+    }
+
+    public int getHits()
+    {
+        return hits;
+    }
+
+    public int getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * @return number of times an image file was read on the drawing thread;
+     * files read by {@link #prefetch} are not counted
+     */
+    public int getFileReads()
+    {
+        return fileReads;
+    }
+
+    public int size()
+    {
+        return images.size();
+    }
+
+    public void clear()
+    {
+        signatures.clear();
+        images.clear();
+        lastReadPath=null;
+        lastReadContent=null;
+        clearPrefetchedImages();
+    }
+
+    /**
+     * Drop the prefetched images that were not drawn (their requested size did
+     * not match the drawn one, or they were never reached), cancelling the
+     * prefetches still queued.
+     */
+    public void clearPrefetchedImages()
+    {
+        preparedImages.clear();
+        prefetchedImages.values().forEach(e->e.forEach(future->future.cancel(false)));
+        prefetchedImages.clear();
+    }
+
+    public static String hashContent(byte[] content)
+    {
+        MessageDigest digest=createDigest();
+        return toHex(digest.digest(content));
+    }
+
+    private static MessageDigest createDigest() throws IllegalStateException
+    {
+        try
+        {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    private static String toHex(byte[] bytes)
+    {
+        StringBuilder string= new StringBuilder(bytes.length * 2);
+        for(byte b : bytes)
+        {
+            string.append(Character.forDigit((b >> 4) & 0xF, 16));
+            string.append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return string.toString();
+    }
+
+    /**
+     * Read the image size from the file header, without decoding the image.
+     * @param content image file content
+     * @return size in pixels, or null if no ImageIO reader supports the content
+     */
+    private static Dimension readImageSize(byte[] content)
+    {
+        try(ImageInputStream input=ImageIO.createImageInputStream(new ByteArrayInputStream(content)))
+        {
+            Iterator<ImageReader> readers=ImageIO.getImageReaders(input);
+            if(!readers.hasNext()){return null;}
+
+            ImageReader reader=readers.next();
+            try
+            {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+        catch(IOException e)
+        {
+            return null;
+        }
+    }
+
+    private static class FileSignature
+    {
+        private final long length;
+        private final long lastModified;
+        private final String hash;
+        private final Dimension size;
+
+        public FileSignature(long length, long lastModified, String hash, Dimension size)
+        {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.size = size;
+        }
+
+        public boolean matches(long length, long lastModified)
+        {
+            return this.length==length && this.lastModified==lastModified;
+        }
+
+        public String getHash()
+        {
+            return hash;
+        }
+
+        public Dimension getSize()
+        {
+            return size;
+        }
+    }
+
+    private static class SignedContent
+    {
+        private final FileSignature signature;
+        private final byte[] content;
+
+        public SignedContent(FileSignature signature, byte[] content)
+        {
+            this.signature = signature;
+            this.content = content;
+        }
+
+        public FileSignature getSignature()
+        {
+            return signature;
+        }
+
+        public byte[] getContent()
+        {
+            return content;
+        }
+    }
+
+    private static class PreparedImage
+    {
+        private final String path;
+        private final FileSignature signature;
+        private final String key;
+        private final EncodedImage image;
+
+        public PreparedImage(String path, FileSignature signature, String key, EncodedImage image)
+        {
+            this.path = path;
+            this.signature = signature;
+            this.key = key;
+            this.image = image;
+        }
+
+        public String getPath()
+        {
+            return path;
+        }
+
+        public FileSignature getSignature()
+        {
+            return signature;
+        }
+
+        public String getKey()
+        {
+            return key;
+        }
+
+        public EncodedImage getImage()
+        {
+            return image;
+        }
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.image;
+
+import com.baseprogramming.pdwriter.units.PdUnit;
+import java.awt.Dimension;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.zip.DeflaterOutputStream;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Reduces images to a target resolution before they are embedded.  The source
+ * is decoded once, from top to bottom, and each row is area-averaged into the
+ * output as it is read.  Non-interlaced PNG sources are decoded a row at a time
+ * (see {@link PngRowReader}), so memory is bounded by the file, a couple of
+ * rows and the (small) output image rather than the full source raster; other
+ * formats are decoded by ImageIO in a single read, subsampled to at most twice
+ * the output size, so a large JPEG is never held at full resolution.  JPEG
+ * sources are re-encoded as JPEG; everything else is stored with FlateDecode,
+ * with any alpha channel as a soft mask.
+ * <p>
+ * Instances are immutable and may be shared by threads downsampling several
+ * images at once.
+ *
+ * @author Roberto C. Benitez
+ */
+public class ImageDownsampler
+{
+    public static final float DEFAULT_JPEG_QUALITY=0.85f;
+    /** Source pixels kept per output pixel, along each axis, when ImageIO subsamples the source. */
+    private static final int SUBSAMPLED_PIXELS=2;
+
+    private final float targetDpi;
+    private final float jpegQuality;
+
+    public ImageDownsampler(float targetDpi)
+    {
+        this(targetDpi, DEFAULT_JPEG_QUALITY);
+    }
+
+    /**
+     * @param targetDpi target resolution
+     * @param jpegQuality quality of re-encoded JPEG images
+     */
+    public ImageDownsampler(float targetDpi, float jpegQuality)
+    {
+        if(targetDpi <=0)
+        {
+            throw new IllegalArgumentException("Invalid target DPI argument");
+        }
+
+        this.targetDpi = targetDpi;
+        this.jpegQuality = jpegQuality;
+    }
+
+    public float getTargetDpi()
+    {
+        return targetDpi;
+    }
+
+    public float getJpegQuality()
+    {
+        return jpegQuality;
+    }
+
+    /**
+     * Get the pixel size an image should be reduced to when drawn at the given size.
+     * @param sourceWidth source width in pixels
+     * @param sourceHeight source height in pixels
+     * @param drawnWidth drawn width in points
+     * @param drawnHeight drawn height in points
+     * @return reduced size, or null if the source does not exceed the target resolution
+     */
+    public Dimension getTargetSize(int sourceWidth, int sourceHeight, float drawnWidth, float drawnHeight)
+    {
+        if(drawnWidth <=0 || drawnHeight <=0){return null;}
+
+        int width=Math.max(1, (int)Math.ceil(drawnWidth / PdUnit.POINTS_PER_INCH * targetDpi));
+        int height=Math.max(1, (int)Math.ceil(drawnHeight / PdUnit.POINTS_PER_INCH * targetDpi));
+        if(width >= sourceWidth && height >= sourceHeight){return null;}
+
+        return new Dimension(Math.min(width, sourceWidth), Math.min(height, sourceHeight));
+    }
+
+    /**
+     * Decode and area-average an image to the given size.
+     * @param content image file content
+     * @param target output size in pixels
+     * @return downsampled image, or null if no ImageIO reader supports the content
+     * @throws IOException if the image cannot be decoded or encoded
+     */
+    public EncodedImage downsample(byte[] content, Dimension target) throws IOException
+    {
+        try(PngRowReader png=PngRowReader.open(content))
+        {
+            if(png!=null)
+            {
+                return readRows(png, target).encode(false, jpegQuality);
+            }
+        }
+
+        try(ImageInputStream input=ImageIO.createImageInputStream(new ByteArrayInputStream(content)))
+        {
+            Iterator<ImageReader> readers=ImageIO.getImageReaders(input);
+            if(!readers.hasNext()){return null;}
+
+            ImageReader reader=readers.next();
+            try
+            {
+                reader.setInput(input, true, true);
+                boolean jpeg="jpeg".equalsIgnoreCase(reader.getFormatName());
+                AreaAverager averager=readImage(reader, target);
+
+                return averager.encode(jpeg, jpegQuality);
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static AreaAverager readRows(PngRowReader png, Dimension target) throws IOException
+    {
+        AreaAverager averager=new AreaAverager(png.getWidth(), png.getHeight(), target.width, target.height,
+                png.isGray(), png.hasAlpha());
+        int[] row=new int[png.getWidth() * png.getChannels()];
+        for(int y=0;y<png.getHeight();y++)
+        {
+            png.readRow(row);
+            averager.addRow(row);
+        }
+
+        return averager;
+    }
+
+    /**
+     * Decode an image with a single read, keeping every n-th pixel of every n-th
+     * row, so the decoded raster is at most twice the output size along each
+     * axis.  The readers of the JDK cannot seek to a row, so reading in source
+     * regions would decode every row above each region again.
+     */
+    private static AreaAverager readImage(ImageReader reader, Dimension target) throws IOException
+    {
+        ImageReadParam param=reader.getDefaultReadParam();
+        param.setSourceSubsampling(getSubsampling(reader.getWidth(0), target.width),
+                getSubsampling(reader.getHeight(0), target.height), 0, 0);
+        BufferedImage image=reader.read(0, param);
+        ColorModel model=image.getColorModel();
+        AreaAverager averager=new AreaAverager(image.getWidth(), image.getHeight(), target.width, target.height,
+                isGray(model), model.hasAlpha());
+        int[] row=new int[image.getWidth() * averager.channels];
+        for(int y=0;y<image.getHeight();y++)
+        {
+            averager.readRow(image, y, row);
+            averager.addRow(row);
+        }
+
+        return averager;
+    }
+
+    /**
+     * @param sourceSize source width or height, in pixels
+     * @param targetSize output width or height, in pixels
+     * @return period at which ImageIO keeps source pixels
+     */
+    static int getSubsampling(int sourceSize, int targetSize)
+    {
+        return Math.max(1, sourceSize / (targetSize * SUBSAMPLED_PIXELS));
+    }
+
+    private static boolean isGray(ColorModel model)
+    {
+        return model.getNumComponents()==1 && !(model instanceof IndexColorModel)
+                && model.getColorSpace().getType()==ColorSpace.TYPE_GRAY;
+    }
+
+    /**
+     * Box filter accumulating source rows into the output.  Each source pixel
+     * contributes to at most two output columns and two output rows, weighted by
+     * the fraction of its area that falls within each.
+     */
+    private static final class AreaAverager
+    {
+        private final int sourceWidth;
+        private final int outputWidth;
+        private final int outputHeight;
+        private final boolean gray;
+        private final boolean alpha;
+        private final int colors;
+        private final int channels;
+
+        private final float scaleY;
+        private final int[] columnIndex;
+        private final float[] columnWeight;
+        private final float[] nextColumnWeight;
+
+        private final float[] rowSum;
+        private final float[][] accumulators= new float[2][];
+        private final byte[] samples;
+        private final byte[] alphaSamples;
+        private int sourceRow;
+        private int nextOutputRow;
+
+        public AreaAverager(int sourceWidth, int sourceHeight, int outputWidth, int outputHeight,
+                boolean gray, boolean alpha)
+        {
+            this.sourceWidth = sourceWidth;
+            this.outputWidth = outputWidth;
+            this.outputHeight = outputHeight;
+            this.gray = gray && !alpha;
+            this.alpha = alpha;
+            colors=this.gray?1:3;
+            channels=colors + (alpha?1:0);
+
+            scaleY=(float)sourceHeight / outputHeight;
+            float scaleX=(float)sourceWidth / outputWidth;
+            columnIndex=new int[sourceWidth];
+            columnWeight=new float[sourceWidth];
+            nextColumnWeight=new float[sourceWidth];
+            for(int x=0;x<sourceWidth;x++)
+            {
+                float left=x / scaleX;
+                float right=(x + 1) / scaleX;
+                int index=Math.min((int)left, outputWidth - 1);
+                float split=Math.min(index + 1, right);
+                columnIndex[x]=index;
+                columnWeight[x]=split - left;
+                nextColumnWeight[x]=(index + 1 < outputWidth)?Math.max(0, right - split):0;
+            }
+
+            rowSum=new float[outputWidth * channels];
+            accumulators[0]=new float[outputWidth * channels];
+            accumulators[1]=new float[outputWidth * channels];
+            samples=new byte[outputWidth * outputHeight * colors];
+            alphaSamples=alpha?new byte[outputWidth * outputHeight]:null;
+        }
+
+        public void readRow(BufferedImage image, int y, int[] row)
+        {
+            if(gray)
+            {
+                Raster raster=image.getRaster();
+                raster.getSamples(0, y, sourceWidth, 1, 0, row);
+                int max=(1 << image.getColorModel().getComponentSize(0)) - 1;
+                if(max!=255)
+                {
+                    for(int x=0;x<sourceWidth;x++)
+                    {
+                        row[x]=row[x] * 255 / max;
+                    }
+                }
+                return;
+            }
+
+            int[] argb=image.getRGB(0, y, sourceWidth, 1, null, 0, sourceWidth);
+            for(int x=0, i=0;x<sourceWidth;x++)
+            {
+                int pixel=argb[x];
+                row[i++]=(pixel >> 16) & 0xFF;
+                row[i++]=(pixel >> 8) & 0xFF;
+                row[i++]=pixel & 0xFF;
+                if(alpha)
+                {
+                    row[i++]=(pixel >>> 24);
+                }
+            }
+        }
+
+        public void addRow(int[] row)
+        {
+            Arrays.fill(rowSum, 0);
+            for(int x=0, i=0;x<sourceWidth;x++)
+            {
+                int target=columnIndex[x] * channels;
+                float weight=columnWeight[x];
+                float nextWeight=nextColumnWeight[x];
+                for(int c=0;c<channels;c++, i++)
+                {
+                    rowSum[target + c]+=row[i] * weight;
+                    if(nextWeight > 0)
+                    {
+                        rowSum[target + channels + c]+=row[i] * nextWeight;
+                    }
+                }
+            }
+
+            float top=sourceRow / scaleY;
+            float bottom=(sourceRow + 1) / scaleY;
+            int index=Math.min((int)top, outputHeight - 1);
+            while(nextOutputRow < index)
+            {
+                finishRow(nextOutputRow++);
+            }
+
+            float split=Math.min(index + 1, bottom);
+            add(index, split - top);
+            if(index + 1 < outputHeight && bottom > split)
+            {
+                add(index + 1, bottom - split);
+            }
+            sourceRow++;
+        }
+
+        private void add(int outputRow, float weight)
+        {
+            float[] accumulator=accumulators[outputRow & 1];
+            for(int i=0;i<accumulator.length;i++)
+            {
+                accumulator[i]+=rowSum[i] * weight;
+            }
+        }
+
+        private void finishRow(int outputRow)
+        {
+            float[] accumulator=accumulators[outputRow & 1];
+            int offset=outputRow * outputWidth;
+            for(int x=0, i=0;x<outputWidth;x++)
+            {
+                for(int c=0;c<colors;c++)
+                {
+                    samples[(offset + x) * colors + c]=toByte(accumulator[i++]);
+                }
+                if(alpha)
+                {
+                    alphaSamples[offset + x]=toByte(accumulator[i++]);
+                }
+            }
+            Arrays.fill(accumulator, 0);
+        }
+
+        private static byte toByte(float value)
+        {
+            int sample=Math.round(value);
+            if(sample < 0){sample=0;}
+            if(sample > 255){sample=255;}
+            return (byte)sample;
+        }
+
+        public EncodedImage encode(boolean jpeg, float quality) throws IOException
+        {
+            while(nextOutputRow < outputHeight)
+            {
+                finishRow(nextOutputRow++);
+            }
+
+            String colorSpace=gray?EncodedImage.DEVICE_GRAY:EncodedImage.DEVICE_RGB;
+            EncodedImage mask=null;
+            if(alpha)
+            {
+                mask=new EncodedImage(EncodedImage.FLATE_DECODE, outputWidth, outputHeight, 8,
+                        EncodedImage.DEVICE_GRAY, null, 0, deflate(alphaSamples));
+            }
+
+            if(jpeg && !alpha)
+            {
+                return new EncodedImage(EncodedImage.DCT_DECODE, outputWidth, outputHeight, 8,
+                        colorSpace, null, 0, encodeJpeg(quality));
+            }
+
+            return new EncodedImage(EncodedImage.FLATE_DECODE, outputWidth, outputHeight, 8,
+                    colorSpace, null, 0, deflate(samples), mask);
+        }
+
+        private byte[] encodeJpeg(float quality) throws IOException
+        {
+            int type=gray?BufferedImage.TYPE_BYTE_GRAY:BufferedImage.TYPE_3BYTE_BGR;
+            BufferedImage image= new BufferedImage(outputWidth, outputHeight, type);
+            int[] pixels= new int[samples.length];
+            for(int i=0;i<samples.length;i++)
+            {
+                pixels[i]=samples[i] & 0xFF;
+            }
+            image.getRaster().setPixels(0, 0, outputWidth, outputHeight, pixels);
+
+            ImageWriter writer=ImageIO.getImageWritersByFormatName("jpeg").next();
+            ByteArrayOutputStream out= new ByteArrayOutputStream();
+            try(ImageOutputStream output=ImageIO.createImageOutputStream(out))
+            {
+                ImageWriteParam param=writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality);
+                writer.setOutput(output);
+                writer.write(null, new IIOImage(image, null, null), param);
+            }
+            finally
+            {
+                writer.dispose();
+            }
+
+            return out.toByteArray();
+        }
+
+        private static byte[] deflate(byte[] data) throws IOException
+        {
+            ByteArrayOutputStream out= new ByteArrayOutputStream(data.length / 2 + 64);
+            try(DeflaterOutputStream deflater= new DeflaterOutputStream(out))
+            {
+                deflater.write(data);
+            }
+
+            return out.toByteArray();
+        }
+    }
+}
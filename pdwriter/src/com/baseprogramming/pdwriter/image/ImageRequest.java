@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.image;
+
+import java.io.File;
+
+/**
+ * An image file together with the size it will be drawn at.
+ *
+ * @author Roberto C. Benitez
+ */
+public final class ImageRequest
+{
+    private final File file;
+    private final float width;
+    private final float height;
+
+    /**
+     * @param file file containing the image
+     * @param width drawn width in points; 0 to use the image width
+     * @param height drawn height in points; 0 to use the image height
+     */
+    public ImageRequest(File file, float width, float height)
+    {
+        this.file = file;
+        this.width = width;
+        this.height = height;
+    }
+
+    public ImageRequest(File file)
+    {
+        this(file, 0, 0);
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public float getWidth()
+    {
+        return width;
+    }
+
+    public float getHeight()
+    {
+        return height;
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.image;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decodes a non-interlaced PNG image one row at a time, in a single pass over
+ * its IDAT data.  Only the previous row is kept for unfiltering, so memory is
+ * bounded by the compressed file and two rows, whatever the image height.
+ * <p>
+ * Rows are returned as 8 bit samples: one gray sample per pixel for gray
+ * images, and red, green and blue (followed by alpha, if the image has any)
+ * for everything else.  16 bit samples are reduced to their high byte, and
+ * lower bit depths are scaled up to 255.
+ *
+ * @author Roberto C. Benitez
+ */
+class PngRowReader implements Closeable
+{
+    private static final byte[] PNG_SIGNATURE={(byte)0x89,'P','N','G','\r','\n',0x1A,'\n'};
+    private static final int PNG_GRAY=0;
+    private static final int PNG_RGB=2;
+    private static final int PNG_INDEXED=3;
+    private static final int PNG_GRAY_ALPHA=4;
+    private static final int PNG_RGB_ALPHA=6;
+
+    private final byte[] content;
+    private final int width;
+    private final int height;
+    private final int bitDepth;
+    private final int colorType;
+    private final int samplesPerPixel;
+    private final int bytesPerPixel;
+    private final byte[] palette;
+    private final byte[] paletteAlpha;
+    private final Inflater inflater= new Inflater();
+    private final byte[] filterType= new byte[1];
+    private byte[] row;
+    private byte[] previousRow;
+    private int chunkPos;
+    private int rowsRead;
+
+    private PngRowReader(byte[] content, int width, int height, int bitDepth, int colorType,
+            byte[] palette, byte[] paletteAlpha, int chunkPos)
+    {
+        this.content = content;
+        this.width = width;
+        this.height = height;
+        this.bitDepth = bitDepth;
+        this.colorType = colorType;
+        this.palette = palette;
+        this.paletteAlpha = paletteAlpha;
+        this.chunkPos = chunkPos;
+
+        samplesPerPixel=getSamplesPerPixel(colorType);
+        bytesPerPixel=Math.max(1, samplesPerPixel * bitDepth / 8);
+        int rowLength=(int)(((long)width * samplesPerPixel * bitDepth + 7) / 8);
+        row=new byte[rowLength];
+        previousRow=new byte[rowLength];
+    }
+
+    /**
+     * Read the header of a PNG image.
+     * @param content image file content
+     * @return reader positioned at the first row, or null if the content is not
+     * a PNG image that can be read row by row (interlaced, color key
+     * transparency, or malformed)
+     */
+    public static PngRowReader open(byte[] content)
+    {
+        if(!EncodedImageReader.isPng(content)){return null;}
+
+        int pos=PNG_SIGNATURE.length;
+        int width=0;
+        int height=0;
+        int bitDepth=0;
+        int colorType=-1;
+        byte[] palette=null;
+        byte[] paletteAlpha=null;
+        while(pos + 8 <= content.length)
+        {
+            int length=readInt(content, pos);
+            String type=new String(content, pos + 4, 4, StandardCharsets.US_ASCII);
+            int dataStart=pos + 8;
+            if(length < 0 || dataStart + length > content.length){return null;}
+
+            if("IHDR".equals(type))
+            {
+                if(length < 13){return null;}
+                width=readInt(content, dataStart);
+                height=readInt(content, dataStart + 4);
+                bitDepth=content[dataStart + 8] & 0xFF;
+                colorType=content[dataStart + 9] & 0xFF;
+                int compression=content[dataStart + 10] & 0xFF;
+                int filter=content[dataStart + 11] & 0xFF;
+                int interlace=content[dataStart + 12] & 0xFF;
+                if(compression!=0 || filter!=0 || interlace!=0){return null;}
+                if(getSamplesPerPixel(colorType)==0){return null;}
+                if(!(bitDepth==1 || bitDepth==2 || bitDepth==4 || bitDepth==8 || bitDepth==16)){return null;}
+            }
+            else if("PLTE".equals(type))
+            {
+                palette=new byte[length];
+                System.arraycopy(content, dataStart, palette, 0, length);
+            }
+            else if("tRNS".equals(type))
+            {
+                //a color key would need its exact (unreduced) samples
+                if(colorType!=PNG_INDEXED){return null;}
+                paletteAlpha=new byte[length];
+                System.arraycopy(content, dataStart, paletteAlpha, 0, length);
+            }
+            else if("IDAT".equals(type))
+            {
+                break;
+            }
+            else if("IEND".equals(type))
+            {
+                return null;
+            }
+            pos=dataStart + length + 4; //skip crc
+        }
+
+        if(width <=0 || height <=0 || pos + 8 > content.length){return null;}
+        if(colorType==PNG_INDEXED && palette==null){return null;}
+
+        return new PngRowReader(content, width, height, bitDepth, colorType, palette, paletteAlpha, pos);
+    }
+
+    private static int getSamplesPerPixel(int colorType)
+    {
+        switch(colorType)
+        {
+            case PNG_GRAY:
+            case PNG_INDEXED:
+                return 1;
+            case PNG_GRAY_ALPHA:
+                return 2;
+            case PNG_RGB:
+                return 3;
+            case PNG_RGB_ALPHA:
+                return 4;
+            default:
+                return 0;
+        }
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * @return true if rows have a single gray sample per pixel
+     */
+    public boolean isGray()
+    {
+        return colorType==PNG_GRAY;
+    }
+
+    public boolean hasAlpha()
+    {
+        return colorType==PNG_GRAY_ALPHA || colorType==PNG_RGB_ALPHA || paletteAlpha!=null;
+    }
+
+    /**
+     * @return number of samples per pixel in the rows returned
+     */
+    public int getChannels()
+    {
+        return (isGray()?1:3) + (hasAlpha()?1:0);
+    }
+
+    public int getRowsRead()
+    {
+        return rowsRead;
+    }
+
+    /**
+     * Decode the next row.
+     * @param samples output, of at least width * channels samples
+     * @throws IOException if the image data is truncated or corrupt
+     */
+    public void readRow(int[] samples) throws IOException
+    {
+        if(rowsRead >= height)
+        {
+            throw new IllegalStateException("All the rows have been read");
+        }
+
+        byte[] swap=previousRow;
+        previousRow=row;
+        row=swap;
+        inflate(filterType);
+        inflate(row);
+        unfilter(filterType[0] & 0xFF);
+        toSamples(samples);
+        rowsRead++;
+    }
+
+    private void inflate(byte[] buffer) throws IOException
+    {
+        int offset=0;
+        try
+        {
+            while(offset < buffer.length)
+            {
+                int count=inflater.inflate(buffer, offset, buffer.length - offset);
+                offset+=count;
+                if(count > 0){continue;}
+
+                if(inflater.finished() || inflater.needsDictionary())
+                {
+                    throw new IOException("Truncated PNG image data");
+                }
+                if(inflater.needsInput() && !nextDataChunk())
+                {
+                    throw new IOException("Truncated PNG image data");
+                }
+            }
+        }
+        catch(DataFormatException e)
+        {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Pass the next IDAT chunk to the inflater.
+     * @return false if there are no more IDAT chunks
+     */
+    private boolean nextDataChunk()
+    {
+        while(chunkPos + 8 <= content.length)
+        {
+            int length=readInt(content, chunkPos);
+            String type=new String(content, chunkPos + 4, 4, StandardCharsets.US_ASCII);
+            int dataStart=chunkPos + 8;
+            if(length < 0 || dataStart + length > content.length){return false;}
+
+            chunkPos=dataStart + length + 4; //skip crc
+            if("IDAT".equals(type))
+            {
+                inflater.setInput(content, dataStart, length);
+                return true;
+            }
+            if("IEND".equals(type)){return false;}
+        }
+
+        return false;
+    }
+
+    private void unfilter(int filter) throws IOException
+    {
+        switch(filter)
+        {
+            case 0:
+                break;
+            case 1:
+                for(int i=bytesPerPixel;i < row.length;i++)
+                {
+                    row[i]+=row[i - bytesPerPixel];
+                }
+                break;
+            case 2:
+                for(int i=0;i < row.length;i++)
+                {
+                    row[i]+=previousRow[i];
+                }
+                break;
+            case 3:
+                for(int i=0;i < row.length;i++)
+                {
+                    int left=(i >= bytesPerPixel)?row[i - bytesPerPixel] & 0xFF:0;
+                    row[i]+=(left + (previousRow[i] & 0xFF)) / 2;
+                }
+                break;
+            case 4:
+                for(int i=0;i < row.length;i++)
+                {
+                    int left=(i >= bytesPerPixel)?row[i - bytesPerPixel] & 0xFF:0;
+                    int upperLeft=(i >= bytesPerPixel)?previousRow[i - bytesPerPixel] & 0xFF:0;
+                    row[i]+=paeth(left, previousRow[i] & 0xFF, upperLeft);
+                }
+                break;
+            default:
+                throw new IOException("Invalid PNG filter type: " + filter);
+        }
+    }
+
+    private static int paeth(int left, int up, int upperLeft)
+    {
+        int estimate=left + up - upperLeft;
+        int leftDistance=Math.abs(estimate - left);
+        int upDistance=Math.abs(estimate - up);
+        int upperLeftDistance=Math.abs(estimate - upperLeft);
+        if(leftDistance <= upDistance && leftDistance <= upperLeftDistance){return left;}
+        if(upDistance <= upperLeftDistance){return up;}
+        return upperLeft;
+    }
+
+    private void toSamples(int[] samples)
+    {
+        int max=(1 << Math.min(bitDepth, 8)) - 1;
+        for(int x=0, i=0;x < width;x++)
+        {
+            if(colorType==PNG_INDEXED)
+            {
+                int index=getSample(x);
+                int offset=index * 3;
+                boolean valid=offset + 2 < palette.length;
+                samples[i++]=valid?palette[offset] & 0xFF:0;
+                samples[i++]=valid?palette[offset + 1] & 0xFF:0;
+                samples[i++]=valid?palette[offset + 2] & 0xFF:0;
+                if(paletteAlpha!=null)
+                {
+                    samples[i++]=(index < paletteAlpha.length)?paletteAlpha[index] & 0xFF:255;
+                }
+                continue;
+            }
+
+            int first=x * samplesPerPixel;
+            if(colorType==PNG_GRAY || colorType==PNG_GRAY_ALPHA)
+            {
+                int gray=getSample(first) * 255 / max;
+                samples[i++]=gray;
+                if(colorType==PNG_GRAY_ALPHA)
+                {
+                    samples[i++]=gray;
+                    samples[i++]=gray;
+                    samples[i++]=getSample(first + 1);
+                }
+            }
+            else
+            {
+                for(int c=0;c < samplesPerPixel;c++)
+                {
+                    samples[i++]=getSample(first + c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get a sample of the current row, reduced to at most 8 bits.
+     */
+    private int getSample(int index)
+    {
+        switch(bitDepth)
+        {
+            case 8:
+                return row[index] & 0xFF;
+            case 16:
+                return row[index * 2] & 0xFF;
+            default:
+                int bit=index * bitDepth;
+                int shift=8 - bitDepth - (bit & 7);
+                return ((row[bit >> 3] & 0xFF) >> shift) & ((1 << bitDepth) - 1);
+        }
+    }
+
+    @Override public void close()
+    {
+        inflater.end();
+    }
+
+    private static int readInt(byte[] content, int pos)
+    {
+        return ((content[pos] & 0xFF) << 24) | ((content[pos + 1] & 0xFF) << 16)
+                | ((content[pos + 2] & 0xFF) << 8) | (content[pos + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.model;
+
+/**
+ * Provides the text of a dynamic page template slot, such as a page number.
+ *
+ * @author Roberto C. Benitez
+ */
+public interface PageValueProvider
+{
+    /**
+     * @param pageNumber 1-based number of the page being decorated
+     * @return value to write on the page
+     */
+    public Object getValue(int pageNumber);
+}
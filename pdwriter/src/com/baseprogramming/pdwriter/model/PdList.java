@@ -69,7 +69,8 @@ public class PdList extends PdParagraph
         par.setAboveSpacing(new PdInch(0));
         par.setBelowSpacing(new PdInch(0));
         par.setAfterTextIndent(getAfterTextIndent());
-        par.setFont(getFont());
+        par.setFont(getPdFont());
+        par.setFallbackFonts(getFallbackFonts());
         par.setFontSize(getFontSize());
         par.setFontColor(getFontColor());
         
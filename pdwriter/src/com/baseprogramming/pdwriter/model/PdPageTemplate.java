@@ -0,0 +1,343 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decoration repeated on every page: headers, footers, rules, logos and
+ * watermarks.  The static content is rendered once per document into a form
+ * XObject and drawn on each page with a single operator; only the slots (e.g.
+ * the page number) are written to each page.
+ * <p>
+ * Positions are absolute page coordinates, in points.  The static content is
+ * rendered the first time the template is used in a document; later changes
+ * to it are not reflected in that document.
+ *
+ * @author Roberto C. Benitez
+ */
+public class PdPageTemplate
+{
+    private final PageMetadata page;
+    private final List<Text> texts= new ArrayList<>();
+    private final List<Image> images= new ArrayList<>();
+    private final List<Line> lines= new ArrayList<>();
+    private final List<Slot> slots= new ArrayList<>();
+
+    public PdPageTemplate(PageMetadata page)
+    {
+        this.page = page;
+    }
+
+    public PageMetadata getPage()
+    {
+        return page;
+    }
+
+    public PdPageTemplate addText(PdParagraph style, float x, float y, String text)
+    {
+        texts.add(new Text(style, x, y, 0, 1, text));
+        return this;
+    }
+
+    /**
+     * Add text drawn diagonally across the center of the page.
+     * @param style font, size and color of the text
+     * @param text watermark text
+     * @param angle rotation, in degrees counter-clockwise
+     * @param opacity opacity of the text, from 0 (invisible) to 1 (opaque)
+     * @return this template
+     */
+    public PdPageTemplate addWatermark(PdParagraph style, String text, float angle, float opacity)
+    {
+        float centerX=page.getPageFormat().getWidth() / 2;
+        float centerY=page.getPageFormat().getHeight() / 2;
+        float width;
+        try
+        {
+            width=style.getStringWidth(text);
+        }
+        catch(Exception e)
+        {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+
+        double radians=Math.toRadians(angle);
+        float x=(float)(centerX - Math.cos(radians) * width / 2);
+        float y=(float)(centerY - Math.sin(radians) * width / 2);
+        texts.add(new Text(style, x, y, angle, opacity, text));
+        return this;
+    }
+
+    /**
+     * Add an image.
+     * @param imageFile file containing the image
+     * @param x left edge of the image
+     * @param y bottom edge of the image
+     * @param width drawn width; the image width if less than or equal to 0
+     * @param height drawn height; the image height if less than or equal to 0
+     * @return this template
+     */
+    public PdPageTemplate addImage(File imageFile, float x, float y, float width, float height)
+    {
+        images.add(new Image(imageFile, x, y, width, height));
+        return this;
+    }
+
+    public PdPageTemplate addLine(float lineWidth, float x1, float y1, float x2, float y2)
+    {
+        lines.add(new Line(lineWidth, x1, y1, x2, y2));
+        return this;
+    }
+
+    /**
+     * Add a rule across the page, between the left and right margins.
+     * @param lineWidth line width
+     * @param y vertical position of the line
+     * @return this template
+     */
+    public PdPageTemplate addHorizontalLine(float lineWidth, float y)
+    {
+        return addLine(lineWidth, page.getLowerLeftX(), y, page.getUpperRightX(), y);
+    }
+
+    /**
+     * Add text that is written on each page, rather than rendered once.
+     * @param style font, size and color of the text
+     * @param x left edge of the text
+     * @param y text baseline
+     * @param provider value of the slot for a given page
+     * @return this template
+     */
+    public PdPageTemplate addSlot(PdParagraph style, float x, float y, PageValueProvider provider)
+    {
+        slots.add(new Slot(style, x, y, provider));
+        return this;
+    }
+
+    /**
+     * Add the page number.
+     * @param style font, size and color of the text
+     * @param x left edge of the text
+     * @param y text baseline
+     * @param format format of the page number, e.g. "Page %d"
+     * @return this template
+     */
+    public PdPageTemplate addPageNumber(PdParagraph style, float x, float y, String format)
+    {
+        return addSlot(style, x, y, e->String.format(format, e));
+    }
+
+    public List<Text> getTexts()
+    {
+        return Collections.unmodifiableList(texts);
+    }
+
+    public List<Image> getImages()
+    {
+        return Collections.unmodifiableList(images);
+    }
+
+    public List<Line> getLines()
+    {
+        return Collections.unmodifiableList(lines);
+    }
+
+    public List<Slot> getSlots()
+    {
+        return Collections.unmodifiableList(slots);
+    }
+
+    public boolean hasStaticContent()
+    {
+        return !(texts.isEmpty() && images.isEmpty() && lines.isEmpty());
+    }
+
+    public static class Text
+    {
+        private final PdParagraph style;
+        private final float x;
+        private final float y;
+        private final float angle;
+        private final float opacity;
+        private final String text;
+
+        public Text(PdParagraph style, float x, float y, float angle, float opacity, String text)
+        {
+            this.style = style;
+            this.x = x;
+            this.y = y;
+            this.angle = angle;
+            this.opacity = opacity;
+            this.text = text;
+        }
+
+        public PdParagraph getStyle()
+        {
+            return style;
+        }
+
+        public float getX()
+        {
+            return x;
+        }
+
+        public float getY()
+        {
+            return y;
+        }
+
+        public float getAngle()
+        {
+            return angle;
+        }
+
+        public float getOpacity()
+        {
+            return opacity;
+        }
+
+        public String getText()
+        {
+            return text;
+        }
+    }
+
+    public static class Image
+    {
+        private final File file;
+        private final float x;
+        private final float y;
+        private final float width;
+        private final float height;
+
+        public Image(File file, float x, float y, float width, float height)
+        {
+            this.file = file;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        public File getFile()
+        {
+            return file;
+        }
+
+        public float getX()
+        {
+            return x;
+        }
+
+        public float getY()
+        {
+            return y;
+        }
+
+        public float getWidth()
+        {
+            return width;
+        }
+
+        public float getHeight()
+        {
+            return height;
+        }
+    }
+
+    public static class Line
+    {
+        private final float lineWidth;
+        private final float x1;
+        private final float y1;
+        private final float x2;
+        private final float y2;
+
+        public Line(float lineWidth, float x1, float y1, float x2, float y2)
+        {
+            this.lineWidth = lineWidth;
+            this.x1 = x1;
+            this.y1 = y1;
+            this.x2 = x2;
+            this.y2 = y2;
+        }
+
+        public float getLineWidth()
+        {
+            return lineWidth;
+        }
+
+        public float getX1()
+        {
+            return x1;
+        }
+
+        public float getY1()
+        {
+            return y1;
+        }
+
+        public float getX2()
+        {
+            return x2;
+        }
+
+        public float getY2()
+        {
+            return y2;
+        }
+    }
+
+    public static class Slot
+    {
+        private final PdParagraph style;
+        private final float x;
+        private final float y;
+        private final PageValueProvider provider;
+
+        public Slot(PdParagraph style, float x, float y, PageValueProvider provider)
+        {
+            this.style = style;
+            this.x = x;
+            this.y = y;
+            this.provider = provider;
+        }
+
+        public PdParagraph getStyle()
+        {
+            return style;
+        }
+
+        public float getX()
+        {
+            return x;
+        }
+
+        public float getY()
+        {
+            return y;
+        }
+
+        public PageValueProvider getProvider()
+        {
+            return provider;
+        }
+    }
+}
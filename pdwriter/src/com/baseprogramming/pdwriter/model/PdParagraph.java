@@ -17,8 +17,15 @@ package com.baseprogramming.pdwriter.model;
 
 import com.baseprogramming.pdwriter.units.PdInch;
 import com.baseprogramming.pdwriter.units.PdUnit;
+import com.baseprogramming.pdwriter.font.FontCoverage;
+import com.baseprogramming.pdwriter.font.StandardFontMetrics;
+import com.baseprogramming.pdwriter.font.TextRun;
 import java.awt.Color;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
 
 
@@ -39,9 +46,10 @@ public class PdParagraph
     
     private float lineSpacing=1;
     private PdUnit blockWidth;
-    private PDType1Font font = PDType1Font.TIMES_ROMAN;
+    private PDFont font = PDType1Font.TIMES_ROMAN;
     private float fontSize=12;
     private Color fontColor=Color.BLACK;
+    private List<PDFont> fallbackFonts=Collections.emptyList();
 
     public PdParagraph(PageMetadata page)
     {
@@ -69,16 +77,47 @@ public class PdParagraph
         this.border = border;
     }
 
+    /**
+     * @return font of the paragraph, when it is a Type 1 font (e.g. one of the
+     * standard 14 fonts)
+     * @throws IllegalStateException if the font is of another type, such as a
+     * TrueType font; see {@link #getPdFont()}
+     */
     public PDType1Font getFont()
+    {
+        if(font==null || font instanceof PDType1Font){return (PDType1Font)font;}
+        throw new IllegalStateException(String.format("Font '%s' is not a Type 1 font; use getPdFont()", font.getName()));
+    }
+
+    /**
+     * @return font of the paragraph, of any type
+     */
+    public PDFont getPdFont()
     {
         return font;
     }
 
-    public void setFont(PDType1Font font)
+    public void setFont(PDFont font)
     {
         this.font = font;
     }
 
+    public List<PDFont> getFallbackFonts()
+    {
+        return fallbackFonts;
+    }
+
+    /**
+     * Set the fonts used, in order, for characters the font cannot show.
+     * Characters none of them can show are replaced.
+     * @param fallbackFonts fallback fonts
+     */
+    public void setFallbackFonts(List<PDFont> fallbackFonts)
+    {
+        this.fallbackFonts = (fallbackFonts==null || fallbackFonts.isEmpty())?Collections.emptyList()
+                :Collections.unmodifiableList(new ArrayList<>(fallbackFonts));
+    }
+
     public float getFontSize()
     {
         return fontSize;
@@ -271,7 +310,27 @@ public class PdParagraph
     
     public float getStringWidth(String string) throws IOException
     {
-        return (font.getStringWidth(string) / 1000 * fontSize);
+        if(FontCoverage.covers(font, string))
+        {
+            return (StandardFontMetrics.measure(font, string) / 1000 * fontSize);
+        }
+
+        float width=0;
+        for(TextRun run : getTextRuns(string))
+        {
+            width+=run.getWidth(fontSize);
+        }
+        return width;
+    }
+
+    /**
+     * Split a string into runs of the font and fallback fonts.
+     * @param string string to split
+     * @return text runs
+     */
+    public List<TextRun> getTextRuns(String string)
+    {
+        return TextRun.split(string, getPdFont(), fallbackFonts);
     }
     
     public void copyTo(PdParagraph target)
@@ -280,7 +339,8 @@ public class PdParagraph
         target.setBelowSpacing(getBelowSpacing());
         target.setBeforeTextIndent(getBeforeTextIndent());
         target.setAfterTextIndent(getAfterTextIndent());
-        target.setFont(getFont());
+        target.setFont(getPdFont());
+        target.setFallbackFonts(getFallbackFonts());
         target.setFontSize(getFontSize());
         target.setFontColor(getFontColor());
         target.setLineSpacing(getLineSpacing());
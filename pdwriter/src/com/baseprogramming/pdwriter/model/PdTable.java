@@ -40,13 +40,14 @@ public class PdTable extends PdParagraph
     private PdUnit cellPadding;
     private float rowBorder = 0;
     private float columnBorder = 0;
+    private boolean repeatHeader = false;
 
     private float startYPosition;
 
     public PdTable(PageMetadata page, List<PdColumn> columns)
     {
         super(page);
-        header = new PdTableHeader(columns, getFont(), getFontSize());
+        header = new PdTableHeader(columns, getPdFont(), getFontSize());
         cellPadding = new PdPoints(0);
         cellSpacing = new PdPoints(0);
         setBelowSpacing();
@@ -86,6 +87,76 @@ public class PdTable extends PdParagraph
         PdUnit columnWidth=new PdPoints(availableWidth / columns.size());
         columns.stream().forEach(e->e.setWidth(columnWidth));
     }
+
+    /**
+     * Set the width of columns without one from the content of sample rows.
+     * Each column is measured for the width of its widest word (or label),
+     * below which its content cannot wrap, and of its widest cell.  When the
+     * widest cells fit, every column gets its widest cell plus a share of the
+     * rest of the table width; otherwise every column gets its widest word
+     * plus a share of the width left, in proportion to how much its content
+     * must wrap.  Columns are given equal widths when the rows have no content.
+     * @param rows sample rows, keyed by column name
+     * @throws IOException if the content cannot be measured
+     */
+    public void calculateAutoColumnWidths(List<Map<String, Object>> rows) throws IOException
+    {
+        List<PdColumn> columns=header.getColumnsWithUnsetWidth();
+        if(columns.isEmpty()){return;}
+
+        float slack=getFontSize() / 4;
+        float[] minWidths= new float[columns.size()];
+        float[] maxWidths= new float[columns.size()];
+        float minSum=0;
+        float maxSum=0;
+        for(int i=0;i<columns.size();i++)
+        {
+            PdColumn column=columns.get(i);
+            float minWidth=getStringWidth(column.getLabel());
+            float maxWidth=minWidth;
+            for(Map<String, Object> row : rows)
+            {
+                Object value=row.get(column.getName());
+                if(value==null){continue;}
+
+                String text=value.toString().trim();
+                maxWidth=Math.max(maxWidth, getStringWidth(text));
+                for(String word : text.split("\\s+"))
+                {
+                    minWidth=Math.max(minWidth, getStringWidth(word));
+                }
+            }
+            minWidths[i]=(minWidth > 0)?minWidth + slack:0;
+            maxWidths[i]=(maxWidth > 0)?maxWidth + slack:0;
+            minSum+=minWidths[i];
+            maxSum+=maxWidths[i];
+        }
+
+        if(maxSum <= 0)
+        {
+            calculateMissingColumnWidths();
+            return;
+        }
+
+        float availableWidth=getWidth() - getContentWidth();
+        for(int i=0;i<columns.size();i++)
+        {
+            float width;
+            if(maxSum <= availableWidth)
+            {
+                width=maxWidths[i] + (availableWidth - maxSum) * maxWidths[i] / maxSum;
+            }
+            else if(minSum < availableWidth)
+            {
+                width=minWidths[i] + (availableWidth - minSum) * (maxWidths[i] - minWidths[i]) / (maxSum - minSum);
+            }
+            else
+            {
+                width=(minSum > 0)?availableWidth * minWidths[i] / minSum:availableWidth / columns.size();
+            }
+            columns.get(i).setWidth(new PdPoints(width));
+        }
+    }
     
     public float getContentWidth()
     {
@@ -215,6 +286,21 @@ public class PdTable extends PdParagraph
         this.columnBorder = columnBorder;
     }
 
+    public boolean isRepeatHeader()
+    {
+        return repeatHeader;
+    }
+
+    /**
+     * Repeat the column headers at the top of each page the table continues on.
+     * The header row is rendered once, and placed on every page.
+     * @param repeatHeader true to repeat the column headers
+     */
+    public void setRepeatHeader(boolean repeatHeader)
+    {
+        this.repeatHeader = repeatHeader;
+    }
+
     public float getColumnXPosition(float offset)
     {
         float padding = getCellPadding().getPoints();
@@ -230,7 +316,7 @@ public class PdTable extends PdParagraph
     public final PdTableHeader createTableHeader(String... names)
     {
         List<PdColumn> columns = createColumns(names);
-        return new PdTableHeader(columns, getFont(), getFontSize());
+        return new PdTableHeader(columns, getPdFont(), getFontSize());
     }
 
     public List<PdColumn> createColumns(String... names)
@@ -265,7 +351,7 @@ public class PdTable extends PdParagraph
         {
             
             float width = spacing+calculateColumnWidth(column, rowsToSample, data);
-            float labelWidth=spacing+header.getFont().getStringWidth(column.getLabel())/1000;
+            float labelWidth=spacing+header.getPdFont().getStringWidth(column.getLabel())/1000;
             
             if(labelWidth > width){width=labelWidth;}
             
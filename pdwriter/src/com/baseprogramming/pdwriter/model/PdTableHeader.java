@@ -18,6 +18,7 @@ package com.baseprogramming.pdwriter.model;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
 
 /**
@@ -27,10 +28,10 @@ import org.apache.pdfbox.pdmodel.font.PDType1Font;
 public class PdTableHeader
 {
     private List<PdColumn> columns;
-    private PDType1Font font;
+    private PDFont font;
     private float fontSize;
 
-    public PdTableHeader(List<PdColumn> column, PDType1Font font, float fontSize)
+    public PdTableHeader(List<PdColumn> column, PDFont font, float fontSize)
     {
         this.columns = column;
         this.font = font;
@@ -49,7 +50,7 @@ public class PdTableHeader
                 
     }
 
-    public void setFont(PDType1Font font)
+    public void setFont(PDFont font)
     {
         this.font = font;
     }
@@ -75,7 +76,22 @@ public class PdTableHeader
         return columns.size();
     }
 
+    /**
+     * @return font of the header, when it is a Type 1 font (e.g. one of the
+     * standard 14 fonts)
+     * @throws IllegalStateException if the font is of another type, such as a
+     * TrueType font; see {@link #getPdFont()}
+     */
     public PDType1Font getFont()
+    {
+        if(font==null || font instanceof PDType1Font){return (PDType1Font)font;}
+        throw new IllegalStateException(String.format("Font '%s' is not a Type 1 font; use getPdFont()", font.getName()));
+    }
+
+    /**
+     * @return font of the header, of any type
+     */
+    public PDFont getPdFont()
     {
         return font;
     }
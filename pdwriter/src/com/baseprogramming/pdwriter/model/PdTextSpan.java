@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.model;
+
+/**
+ * A piece of paragraph text with its own font, font size and color, taken from
+ * a style.  Spans of a paragraph are laid out together, so lines wrap across
+ * span boundaries.
+ *
+ * @author Roberto C. Benitez
+ */
+public class PdTextSpan
+{
+    private final PdParagraph style;
+    private final String text;
+
+    public PdTextSpan(PdParagraph style, String text)
+    {
+        this.style = style;
+        this.text = text;
+    }
+
+    /**
+     * @return style providing the font, font size, fallback fonts and color of the text
+     */
+    public PdParagraph getStyle()
+    {
+        return style;
+    }
+
+    public String getText()
+    {
+        return text;
+    }
+
+    @Override public String toString()
+    {
+        return text;
+    }
+}
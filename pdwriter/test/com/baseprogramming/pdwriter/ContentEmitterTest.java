@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter;
+
+import com.baseprogramming.pdwriter.model.Margin;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Roberto C. Benitez
+ */
+public class ContentEmitterTest
+{
+    @Test public void testFormatNumber()
+    {
+        assertEquals("0", format(0f, 4));
+        assertEquals("0", format(-0.00001f, 4));
+        assertEquals("100", format(100f, 4));
+        assertEquals("-3.1416", format(-3.14159f, 4));
+        assertEquals("0.05", format(0.05f, 4));
+        assertEquals("612.5", format(612.5f, 2));
+        assertEquals("13", format(12.5f, 0));
+        assertEquals("1099511627776", format(1099511627776f, 4));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidNumber()
+    {
+        format(Float.NaN, 4);
+    }
+
+    @Test public void testCoordinatePrecision() throws IOException
+    {
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            writer.setCoordinatePrecision(1);
+            writer.drawHorizontalLine(0.5f, 72.25f, 123.456f, 540f);
+            writer.write("Hello");
+
+            String content=getContent(doc.getPage(0));
+            assertTrue(content, content.contains("0.5 w\n72.3 123.5 m\n540 123.5 l\nS\n"));
+            assertTrue(content, content.contains("BT\n54 "));
+            assertEquals("Hello", new PDFTextStripper().getText(doc).trim());
+        }
+    }
+
+    private static String getContent(PDPage page) throws IOException
+    {
+        ByteArrayOutputStream output= new ByteArrayOutputStream();
+        try(InputStream input=page.getContents())
+        {
+            byte[] bytes= new byte[4096];
+            for(int n=input.read(bytes);n > 0;n=input.read(bytes))
+            {
+                output.write(bytes, 0, n);
+            }
+        }
+
+        return output.toString("ISO-8859-1");
+    }
+
+    private static String format(float value, int digits)
+    {
+        byte[] bytes= new byte[64];
+        int length=ContentEmitter.formatNumber(value, digits, bytes, 0);
+        return new String(bytes, 0, length);
+    }
+}
@@ -0,0 +1,550 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter;
+
+import com.baseprogramming.pdwriter.html.ComputedStyleCache;
+import com.baseprogramming.pdwriter.image.ImageCache;
+import com.baseprogramming.pdwriter.model.Margin;
+import com.baseprogramming.pdwriter.model.PdParagraph;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import javax.imageio.ImageIO;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeVisitor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Roberto C. Benitez
+ */
+public class HtmlPdWriterTest
+{
+    @Rule public TemporaryFolder folder= new TemporaryFolder();
+
+    @Test public void testNestedStylesAreInherited() throws IOException
+    {
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            new HtmlPdWriter(writer).write("<div style='font-size:20pt'><p>Big <span>Nested</span></p><p id='p2'>Sibling</p></div>"
+                    + "<p>Small</p>");
+
+            Map<String,Float> sizes=getWordFontSizes(doc);
+            assertEquals(20f, sizes.get("Big"), 0.001f);
+            assertEquals(20f, sizes.get("Nested"), 0.001f);
+            assertEquals(20f, sizes.get("Sibling"), 0.001f);
+            assertEquals(12f, sizes.get("Small"), 0.001f);
+        }
+    }
+
+    @Test public void testRepeatedElementsShareComputedStyles() throws IOException
+    {
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            HtmlPdWriter htmlWriter= new HtmlPdWriter(writer);
+            StringBuilder html= new StringBuilder("<div>");
+            for(int i=0;i<20;i++)
+            {
+                html.append("<p class='item'>Item <b>").append(i).append("</b></p><p style='font-size:20pt'>Big</p>");
+            }
+            htmlWriter.write(html.append("</div>").toString());
+
+            ComputedStyleCache cache=htmlWriter.getStyleCache();
+            assertTrue(cache.getMisses() <= 10);
+            assertTrue(cache.getHits() >= 57);
+            Map<String,Float> sizes=getWordFontSizes(doc);
+            assertEquals(12f, sizes.get("Item"), 0.001f);
+            assertEquals(20f, sizes.get("Big"), 0.001f);
+        }
+    }
+
+    @Test public void testWriteHtmlReusesStyles() throws IOException
+    {
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            writer.writeHtml("<h1>Title</h1><p class='item'>One</p>");
+            HtmlPdWriter htmlWriter=writer.getHtmlWriter();
+            long misses=htmlWriter.getStyleCache().getMisses();
+
+            writer.writeHtml("<h1>Title</h1><p class='item'>Two</p>");
+            assertSame(htmlWriter, writer.getHtmlWriter());
+            assertEquals(misses, htmlWriter.getStyleCache().getMisses());
+            assertEquals(Arrays.asList("Title", "One", "Title", "Two"),
+                    Arrays.asList(new PDFTextStripper().getText(doc).trim().split("\\s*\\n")));
+        }
+    }
+
+    @Test public void testLinkedStyleSheets() throws IOException
+    {
+        Files.write(folder.newFile("a.css").toPath(), "p { font-size: 20pt }".getBytes(StandardCharsets.UTF_8));
+        Files.write(folder.newFile("b.css").toPath(), "p.small { font-size: 8pt }".getBytes(StandardCharsets.UTF_8));
+        File html=folder.newFile("page.html");
+        Files.write(html.toPath(), ("<html><head><link type='text/css' rel='stylesheet' href='a.css'>"
+                + "<link type='text/css' rel='stylesheet' href='b.css'></head>"
+                + "<body><p>Big</p><p class='small'>Small</p></body></html>").getBytes(StandardCharsets.UTF_8));
+
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            writer.writeHtml(html);
+            writer.writeHtml(html);
+
+            Map<String,Float> sizes=getWordFontSizes(doc);
+            assertEquals(20f, sizes.get("Big"), 0.001f);
+            assertEquals(8f, sizes.get("Small"), 0.001f);
+        }
+    }
+
+    @Test public void testStreamingMatchesDocument() throws IOException
+    {
+        String html="<html><head><title>Report</title></head><body><h1>Report &amp; summary</h1>"
+                + "<p>Some <b>bold</b> text<p class='note'>Implied end"
+                + "<table border='1'><thead><tr><th>Id</th><th>Name</th></tr></thead>"
+                + "<tr><td>1<td>Alpha<tr><td>2<td>Beta</table>"
+                + "<ul><li>One<li>Two <i>items</i></ul><div>End</div></body></html>";
+
+        String expected;
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            new HtmlPdWriter(writer).write(html);
+            expected=new PDFTextStripper().getText(doc);
+        }
+
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            new HtmlPdWriter(writer).writeStreaming(new StringReader(html), "");
+            String text=new PDFTextStripper().getText(doc);
+            assertEquals(expected, text);
+            assertTrue(text, text.contains("Alpha"));
+        }
+    }
+
+    @Test public void testWrittenNodesAreReleased() throws IOException
+    {
+        String html="<h1>Title</h1><p>Some <b>bold</b> text</p><ul><li>One</li><li>Two</li></ul><p>End</p>";
+        List<String> expected= new ArrayList<>();
+        Jsoup.parse(html).traverse(new EventRecorder(expected));
+
+        List<String> events= new ArrayList<>();
+        Document document=Jsoup.parse(html);
+        HtmlPdWriter.traverseReleasing(document, new EventRecorder(events)
+        {
+            @Override public void tail(Node node, int depth)
+            {
+                super.tail(node, depth);
+                //the node and its earlier siblings are no longer in the tree
+                assertTrue(node.parent()==null || node.parent().childNodeSize()==0);
+            }
+        });
+        assertEquals(expected, events);
+        assertEquals(0, document.childNodeSize());
+
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            HtmlPdWriter htmlWriter= new HtmlPdWriter(writer);
+            htmlWriter.setReleaseWrittenNodes(false);
+            htmlWriter.write(html);
+            htmlWriter.setReleaseWrittenNodes(true);
+            htmlWriter.write(html);
+
+            String text=new PDFTextStripper().getText(doc).trim();
+            int second=text.indexOf("Title", 1);
+            assertTrue(second > 0);
+            assertEquals(text.substring(0, second).trim(), text.substring(second).trim());
+        }
+    }
+
+    @Test public void testTagHandlers() throws IOException
+    {
+        String html="<ul><li>Outer one<ol><li>Inner</li><li>Inner two</li></ol>Outer tail</li><li>Outer two</li></ul>"
+                + "<hr><p>End</p>";
+        List<String> events= new ArrayList<>();
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            HtmlPdWriter htmlWriter= new HtmlPdWriter(writer);
+            htmlWriter.setTagHandler("hr", new TagHandler()
+            {
+                @Override public void start(HtmlPdWriter htmlWriter, Element element, PdParagraph style) throws IOException
+                {
+                    events.add("start " + element.tagName());
+                    htmlWriter.getWriter().write("Rule");
+                }
+
+                @Override public void end(HtmlPdWriter htmlWriter, Element element) throws IOException
+                {
+                    events.add("end " + element.tagName());
+                }
+            });
+            htmlWriter.write(html);
+
+            assertEquals(Arrays.asList("start hr", "end hr"), events);
+            String text=new PDFTextStripper().getText(doc);
+            assertEquals(Arrays.asList("* Outer one", "1. Inner", "2. Inner two", "Outer tail", "* Outer two", "Rule", "End"),
+                    Arrays.asList(text.trim().split("\\s*\\n")));
+
+            //the nested list is indented, on lines of its own
+            Map<String,TextPosition> positions=getTextPositions(doc);
+            TextPosition outer=positions.get("*");
+            TextPosition inner=positions.get("1.");
+            assertTrue(inner.getXDirAdj() > outer.getXDirAdj());
+            assertEquals(inner.getXDirAdj(), positions.get("2.").getXDirAdj(), 0.01f);
+            assertEquals(positions.get("Outer one").getXDirAdj(), positions.get("Outer tail").getXDirAdj(), 0.01f);
+            assertTrue(positions.get("Inner").getXDirAdj() > positions.get("Outer one").getXDirAdj());
+            float lineHeight=inner.getYDirAdj() - outer.getYDirAdj();
+            assertTrue(lineHeight > 0);
+            assertEquals(outer.getYDirAdj(), positions.get("Outer one").getYDirAdj(), 0.01f);
+            assertEquals(inner.getYDirAdj(), positions.get("Inner").getYDirAdj(), 0.01f);
+            assertEquals(lineHeight * 4, positions.get("Outer two").getYDirAdj() - outer.getYDirAdj(), 0.01f);
+        }
+    }
+
+    @Test public void testTagHandlerContent() throws IOException
+    {
+        String html="<p>Before</p><div>Some <b>bold</b> text</div>";
+        List<String> events= new ArrayList<>();
+        TagHandler handler= new TagHandler()
+        {
+            @Override public void start(HtmlPdWriter htmlWriter, Element element, PdParagraph style) throws IOException
+            {
+                events.add("start " + element.text());
+                htmlWriter.pushScanner(element, new NodeVisitor()
+                {
+                    @Override public void head(Node node, int depth)
+                    {
+                        if(node instanceof TextNode)
+                        {
+                            events.add("text " + ((TextNode)node).text());
+                        }
+                    }
+
+                    @Override public void tail(Node node, int depth)
+                    {
+                    }
+                });
+            }
+
+            @Override public void end(HtmlPdWriter htmlWriter, Element element) throws IOException
+            {
+                events.add("end " + element.text());
+            }
+        };
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            HtmlPdWriter htmlWriter= new HtmlPdWriter(writer);
+            htmlWriter.setTagHandler("div", handler);
+
+            assertFalse(htmlWriter.isReleaseWrittenNodes());
+            htmlWriter.write(html);
+            assertEquals("start Some bold text", events.get(0));
+            assertEquals(Arrays.asList("text Some ", "text bold", "text  text"), events.subList(1, 4));
+            assertEquals("end Some bold text", events.get(4));
+
+            //released: the content is only seen by the scanner
+            events.clear();
+            htmlWriter.writeStreaming(new StringReader(html), "");
+            assertEquals("start ", events.get(0));
+            assertEquals(Arrays.asList("text Some ", "text bold", "text  text"), events.subList(1, 4));
+            assertEquals("end ", events.get(4));
+
+            events.clear();
+            htmlWriter.setReleaseWrittenNodes(true);
+            htmlWriter.write(html);
+            assertEquals("start Some bold text", events.get(0));
+            assertEquals("end ", events.get(4));
+        }
+    }
+
+    @Test public void testTableAutoLayout() throws IOException
+    {
+        StringBuilder html= new StringBuilder("<table><thead><tr><th>Id</th><th>Code</th><th>Description</th></tr></thead><tbody>");
+        for(int i=0;i<40;i++)
+        {
+            html.append("<tr><td>").append(i).append("</td><td>C").append(i)
+                    .append("</td><td>A longer description of row ").append(i)
+                    .append(", which takes more than a third of the line to write out in full</td></tr>");
+        }
+        html.append("</tbody></table><p>End</p>");
+
+        List<String> equalLines=writeTable(html.toString(), 0);
+        List<String> autoLines=writeTable(html.toString(), 10);
+        assertTrue(autoLines.size() < equalLines.size());
+        for(int i=0;i<40;i++)
+        {
+            assertTrue(autoLines.contains(i + " C" + i + " A longer description of row " + i + ", which takes more than a third of the line to write out in full"));
+        }
+        assertEquals("End", autoLines.get(autoLines.size() - 1));
+    }
+
+    @Test public void testRepeatTableHeaders() throws IOException
+    {
+        StringBuilder html= new StringBuilder("<table><thead><tr><th>Id</th><th>Code</th></tr></thead><tbody>");
+        for(int i=0;i<80;i++)
+        {
+            html.append("<tr><td>").append(i).append("</td><td>C").append(i).append("</td></tr>");
+        }
+        html.append("</tbody></table>");
+
+        assertEquals(1, countTableHeaders(html.toString(), false));
+        assertTrue(countTableHeaders(html.toString(), true) > 1);
+    }
+
+    private int countTableHeaders(String html, boolean repeat) throws IOException
+    {
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            HtmlPdWriter htmlWriter= new HtmlPdWriter(writer);
+            htmlWriter.setRepeatTableHeaders(repeat);
+            htmlWriter.write(html);
+
+            assertTrue(doc.getNumberOfPages() > 1);
+            int count=0;
+            PDFTextStripper stripper= new PDFTextStripper();
+            for(int i=1;i<=doc.getNumberOfPages();i++)
+            {
+                stripper.setStartPage(i);
+                stripper.setEndPage(i);
+                if(stripper.getText(doc).startsWith("Id Code")){count++;}
+            }
+            return count;
+        }
+    }
+
+    private List<String> writeTable(String html, int layoutRows) throws IOException
+    {
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            HtmlPdWriter htmlWriter= new HtmlPdWriter(writer);
+            htmlWriter.setTableLayoutRows(layoutRows);
+            htmlWriter.write(html);
+
+            return Arrays.asList(new PDFTextStripper().getText(doc).trim().split("\\s*\\n"));
+        }
+    }
+
+    private File createImagePage() throws IOException
+    {
+        for(String name : new String[]{"a.png", "b.png"})
+        {
+            BufferedImage image= new BufferedImage(20, 10, BufferedImage.TYPE_INT_RGB);
+            image.setRGB(0, 0, name.hashCode());
+            ImageIO.write(image, "png", folder.newFile(name));
+        }
+        File html=folder.newFile("images.html");
+        Files.write(html.toPath(), ("<html><body><p>Images</p><img src='a.png'><img src='b.png'>"
+                + "<img src='a.png'><img src='a.png' width='10px' height='5px'><p>End</p></body></html>")
+                .getBytes(StandardCharsets.UTF_8));
+        return html;
+    }
+
+    private ImageCache writeImagePage(File html, Executor executor) throws IOException
+    {
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            HtmlPdWriter htmlWriter= new HtmlPdWriter(writer);
+            htmlWriter.setImageExecutor(executor);
+            htmlWriter.write(html);
+
+            String text=new PDFTextStripper().getText(doc);
+            assertEquals(Arrays.asList("Images", "End"), Arrays.asList(text.trim().split("\\s*\\n")));
+            assertEquals(4, getImageCount(doc));
+            return writer.getImageCache();
+        }
+    }
+
+    private static int getImageCount(PDDocument doc) throws IOException
+    {
+        int count=0;
+        for(PDPage page : doc.getPages())
+        {
+            ByteArrayOutputStream output= new ByteArrayOutputStream();
+            try(InputStream input=page.getContents())
+            {
+                byte[] bytes= new byte[4096];
+                for(int n=input.read(bytes);n > 0;n=input.read(bytes))
+                {
+                    output.write(bytes, 0, n);
+                }
+            }
+            String content=output.toString("ISO-8859-1");
+            for(int i=content.indexOf(" Do\n");i >= 0;i=content.indexOf(" Do\n", i + 1))
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test public void testPrefetchedImagesAreNotReadAgain() throws IOException
+    {
+        ImageCache cache=writeImagePage(createImagePage(), ForkJoinPool.commonPool());
+        assertEquals(0, cache.getFileReads());
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test public void testImagesWithoutExecutorAreReadWhenDrawn() throws IOException
+    {
+        ImageCache cache=writeImagePage(createImagePage(), null);
+        assertEquals(2, cache.getFileReads());
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test public void testFailedPrefetchIsReadWhenDrawn() throws IOException
+    {
+        File html=createImagePage();
+        File image= new File(folder.getRoot(), "a.png");
+        File moved= new File(folder.getRoot(), "moved.png");
+        //a.png is missing while it is prefetched
+        Executor executor=task->
+        {
+            boolean hide=image.renameTo(moved);
+            try
+            {
+                task.run();
+            }
+            finally
+            {
+                if(hide){moved.renameTo(image);}
+            }
+        };
+
+        ImageCache cache=writeImagePage(html, executor);
+        assertEquals(1, cache.getFileReads());
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test public void testFontRelativeImagesAreNotPrefetched() throws IOException
+    {
+        ImageIO.write(new BufferedImage(20, 10, BufferedImage.TYPE_INT_RGB), "png", folder.newFile("a.png"));
+        File html=folder.newFile("em.html");
+        Files.write(html.toPath(), ("<html><body><p>Images</p><img src='a.png' width='2em' height='1em'>"
+                + "<img src='a.png' width='10px' height='5px'><p>End</p></body></html>")
+                .getBytes(StandardCharsets.UTF_8));
+        List<Runnable> tasks= new ArrayList<>();
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            HtmlPdWriter htmlWriter= new HtmlPdWriter(writer);
+            htmlWriter.setImageExecutor(task->
+            {
+                tasks.add(task);
+                task.run();
+            });
+            htmlWriter.write(html);
+
+            assertEquals(1, tasks.size());
+            assertEquals(2, getImageCount(doc));
+        }
+    }
+
+    private static class EventRecorder implements NodeVisitor
+    {
+        private final List<String> events;
+
+        public EventRecorder(List<String> events)
+        {
+            this.events = events;
+        }
+
+        @Override public void head(Node node, int depth)
+        {
+            events.add(depth + node.nodeName());
+        }
+
+        @Override public void tail(Node node, int depth)
+        {
+            events.add(depth + "/" + node.nodeName());
+        }
+    }
+
+    /**
+     * Get the position of the first character of each piece of text written,
+     * the first time it is written.
+     */
+    private static Map<String,TextPosition> getTextPositions(PDDocument doc) throws IOException
+    {
+        Map<String,TextPosition> pieces= new LinkedHashMap<>();
+        PDFTextStripper stripper= new PDFTextStripper()
+        {
+            @Override protected void writeString(String text, List<TextPosition> positions) throws IOException
+            {
+                pieces.putIfAbsent(text.trim(), positions.get(0));
+            }
+        };
+        stripper.getText(doc);
+        return pieces;
+    }
+
+    private static Map<String,Float> getWordFontSizes(PDDocument doc) throws IOException
+    {
+        Map<String,Float> sizes= new LinkedHashMap<>();
+        PDFTextStripper stripper= new PDFTextStripper()
+        {
+            @Override protected void writeString(String text, List<TextPosition> positions) throws IOException
+            {
+                int start=0;
+                for(String word : text.split(" "))
+                {
+                    if(!word.isEmpty())
+                    {
+                        sizes.put(word, positions.get(text.indexOf(word, start)).getFontSize());
+                    }
+                    start+=word.length() + 1;
+                }
+            }
+        };
+        stripper.getText(doc);
+        return sizes;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter;
+
+import com.baseprogramming.pdwriter.model.Margin;
+import java.io.File;
+import java.io.IOException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Roberto C. Benitez
+ */
+public class PdPageImporterTest
+{
+    @Rule public TemporaryFolder folder= new TemporaryFolder();
+
+    private File createLetterhead() throws IOException
+    {
+        File file=folder.newFile("letterhead.pdf");
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.5f, 0.5f, 0.5f, 0.5f));
+            writer.write("Baseprogramming Letterhead");
+            doc.save(file);
+        }
+        return file;
+    }
+
+    @Test public void testPageIsImportedOnce() throws IOException
+    {
+        File letterhead=createLetterhead();
+        try(PDDocument doc = new PDDocument())
+        {
+            PdPageImporter importer= new PdPageImporter(doc);
+            PDFormXObject form=importer.importPage(letterhead, 0);
+            assertSame(form, importer.importPage(letterhead, 0));
+            assertEquals(1, importer.getMisses());
+            assertEquals(1, importer.getHits());
+        }
+    }
+
+    @Test public void testImportedPageIsBackgroundOfNewPages() throws IOException
+    {
+        File letterhead=createLetterhead();
+        File output=folder.newFile("letter.pdf");
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            writer.setPageBackground(writer.importPage(letterhead, 0));
+            writer.write("First page");
+            writer.createPageBreak();
+            writer.write("Second page");
+            doc.save(output);
+        }
+
+        try(PDDocument doc = PDDocument.load(output))
+        {
+            assertEquals(2, doc.getNumberOfPages());
+            PDFTextStripper stripper= new PDFTextStripper();
+            stripper.setStartPage(2);
+            stripper.setEndPage(2);
+            String text=stripper.getText(doc);
+            assertTrue(text.contains("Baseprogramming Letterhead"));
+            assertTrue(text.contains("Second page"));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter;
+
+import com.baseprogramming.pdwriter.model.Margin;
+import com.baseprogramming.pdwriter.model.PdPageTemplate;
+import com.baseprogramming.pdwriter.model.PdParagraph;
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Roberto C. Benitez
+ */
+public class PdPageTemplateWriterTest
+{
+    private PdPageTemplate createTemplate(PdWriter writer)
+    {
+        PdParagraph style=writer.createParagraph();
+        style.setFontSize(10);
+        PdParagraph watermark=writer.createParagraph();
+        watermark.setFontSize(72);
+        watermark.setFontColor(Color.LIGHT_GRAY);
+
+        PdPageTemplate template=writer.createPageTemplate();
+        template.addText(style, 72, 760, "Quarterly Report")
+                .addHorizontalLine(0.5f, 755)
+                .addWatermark(watermark, "DRAFT", 45, 0.3f)
+                .addPageNumber(style, 72, 30, "Page %d");
+        return template;
+    }
+
+    private int countXObjects(PDPage page)
+    {
+        int count=0;
+        if(page.getResources()==null){return count;}
+        for(COSName name : page.getResources().getXObjectNames())
+        {
+            count++;
+        }
+        return count;
+    }
+
+    @Test public void testTemplateFormIsSharedByAllPages() throws Exception
+    {
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            writer.setPageTemplate(createTemplate(writer));
+            writer.createPageBreak();
+            writer.createPageBreak();
+            writer.createPageBreak();
+
+            assertEquals(3, doc.getNumberOfPages());
+            Set<Object> forms= new HashSet<>();
+            for(PDPage page : doc.getPages())
+            {
+                PDResources resources=page.getResources();
+                for(COSName name : resources.getXObjectNames())
+                {
+                    forms.add(resources.getXObject(name).getCOSObject());
+                }
+            }
+            assertEquals(1, forms.size());
+
+            doc.save(new ByteArrayOutputStream());
+            PDFTextStripper stripper= new PDFTextStripper();
+            for(int i=1;i<=3;i++)
+            {
+                stripper.setStartPage(i);
+                stripper.setEndPage(i);
+                String text=stripper.getText(doc);
+                assertTrue(text.contains("Quarterly Report"));
+                assertTrue(text.contains("Page " + i));
+            }
+        }
+    }
+
+    @Test public void testPagesWithoutTemplateAreUndecorated() throws Exception
+    {
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            writer.setPageTemplate(createTemplate(writer));
+            writer.createPageBreak();
+            writer.setPageTemplate(null);
+            writer.createPageBreak();
+
+            assertEquals(1, countXObjects(doc.getPage(0)));
+            assertEquals(0, countXObjects(doc.getPage(1)));
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter;
+
+import com.baseprogramming.pdwriter.model.Margin;
+import com.baseprogramming.pdwriter.model.PdTable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ *
+ * @author Roberto C. Benitez
+ */
+public class PdTableWriterTest
+{
+    private static final File FONT_FILE= new File("/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf");
+
+    private List<Map<String,Object>> createRows(int count)
+    {
+        List<Map<String,Object>> rows= new ArrayList<>();
+        for(int i=0;i<count;i++)
+        {
+            Map<String,Object> row= new HashMap<>();
+            row.put("Id", i);
+            row.put("Name", "Name " + i);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    @Test public void testRepeatedHeaderIsSharedByAllPages() throws Exception
+    {
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            PdTable table=writer.createTable("Id","Name");
+            table.setRowBorder(1);
+            table.setRepeatHeader(true);
+            writer.write(table, createRows(200));
+
+            assertTrue(doc.getNumberOfPages() > 2);
+            Set<Object> forms= new HashSet<>();
+            for(PDPage page : doc.getPages())
+            {
+                PDResources resources=page.getResources();
+                for(COSName name : resources.getXObjectNames())
+                {
+                    forms.add(resources.getXObject(name).getCOSObject());
+                }
+            }
+            assertEquals(1, forms.size());
+
+            PDFTextStripper stripper= new PDFTextStripper();
+            for(int i=1;i<=doc.getNumberOfPages();i++)
+            {
+                stripper.setStartPage(i);
+                stripper.setEndPage(i);
+                assertTrue(stripper.getText(doc).replaceAll("\\s", "").startsWith("IdName"));
+            }
+        }
+    }
+
+    @Test public void testHeaderUsesFallbackFonts() throws Exception
+    {
+        assumeTrue("DejaVu Sans not installed", FONT_FILE.isFile());
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            PdTable table=writer.createTable("Id","Ωmega");
+            table.setFallbackFonts(Collections.singletonList(writer.loadFont(FONT_FILE)));
+            Map<String,Object> row= new HashMap<>();
+            row.put("Id", 1);
+            row.put("Ωmega", "Ω 1");
+            writer.write(table, Collections.singletonList(row));
+
+            assertEquals("IdΩmega1Ω1", new PDFTextStripper().getText(doc).replaceAll("\\s", ""));
+        }
+    }
+
+    @Test public void testRepeatedHeaderIsNotLeftAloneOnLastPage() throws Exception
+    {
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.735f, 0.75f));
+            PdTable table=writer.createTable("Id","Name");
+            table.setRowBorder(1);
+            table.setRepeatHeader(true);
+            //the last of 26 rows ends right at the bottom of the first page
+            try(PdTableWriter tableWriter= new PdTableWriter(writer, table))
+            {
+                tableWriter.initYPosition();
+                table.calculateMissingColumnWidths();
+                tableWriter.writeColumnHeaders();
+                for(Map<String,Object> row : createRows(26))
+                {
+                    tableWriter.writeRow(row);
+                }
+            }
+
+            PDFTextStripper stripper= new PDFTextStripper();
+            stripper.setStartPage(1);
+            stripper.setEndPage(1);
+            assertTrue(stripper.getText(doc).replaceAll("\\s", "").endsWith("25Name25"));
+            for(int i=2;i<=doc.getNumberOfPages();i++)
+            {
+                stripper.setStartPage(i);
+                stripper.setEndPage(i);
+                assertEquals("", stripper.getText(doc).trim());
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter;
+
+import com.baseprogramming.pdwriter.model.Margin;
+import com.baseprogramming.pdwriter.model.PdParagraph;
+import com.baseprogramming.pdwriter.model.PdTextSpan;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Roberto C. Benitez
+ */
+public class PdTextSpanWriterTest
+{
+    @Test public void testSpansWrapAsOneParagraph() throws IOException
+    {
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            PdParagraph style=writer.createParagraph();
+            PdParagraph bold=writer.createParagraph();
+            bold.setFont(PDType1Font.TIMES_BOLD);
+
+            StringBuilder words= new StringBuilder();
+            for(int i=0;i<40;i++)
+            {
+                words.append(" word").append(i);
+            }
+            writer.write(style, Arrays.asList(new PdTextSpan(style, "Plain"), new PdTextSpan(bold, "Bold"),
+                    new PdTextSpan(style, words.toString())));
+
+            List<String> lines= new ArrayList<>();
+            List<TextPosition> boldText= new ArrayList<>();
+            PDFTextStripper stripper= new PDFTextStripper()
+            {
+                @Override protected void writeString(String text, List<TextPosition> positions) throws IOException
+                {
+                    lines.add(text);
+                    for(TextPosition position : positions)
+                    {
+                        if(position.getFont().getName().equals("Times-Bold")){boldText.add(position);}
+                    }
+                }
+            };
+            stripper.getText(doc);
+
+            assertTrue(lines.size() > 1);
+            assertTrue(lines.get(0).startsWith("PlainBold word0 word1"));
+            for(String line : lines)
+            {
+                assertFalse(line, line.startsWith(" "));
+            }
+            assertEquals(4, boldText.size());
+            assertEquals("B", boldText.get(0).getUnicode());
+        }
+    }
+
+    @Test public void testLinesMakeRoomForLargerText() throws IOException
+    {
+        Map<String,Float> even=writeMixedSizes(12);
+        Map<String,Float> mixed=writeMixedSizes(24);
+
+        //the first line moves down by the extra ascent of the large text
+        assertEquals(12, mixed.get("Big") - even.get("Big"), 0.5f);
+        //each line advance is measured from the line it places
+        assertEquals(12.2, even.get("Large") - even.get("Small"), 0.5f);
+        assertEquals(24.2, mixed.get("Large") - mixed.get("Small"), 0.5f);
+        assertEquals(12.4, mixed.get("After") - mixed.get("Large"), 0.5f);
+    }
+
+    private static Map<String,Float> writeMixedSizes(float largeSize) throws IOException
+    {
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            PdParagraph style=writer.createParagraph();
+            PdParagraph large=writer.createParagraph();
+            large.setFontSize(largeSize);
+            writer.write(style, Arrays.asList(new PdTextSpan(large, "Big"), new PdTextSpan(style, " first")));
+            writer.write(style, Arrays.asList(new PdTextSpan(style, "Small\n"), new PdTextSpan(large, "Large"),
+                    new PdTextSpan(style, " tail\nAfter")));
+
+            Map<String,Float> baselines= new HashMap<>();
+            PDFTextStripper stripper= new PDFTextStripper()
+            {
+                @Override protected void writeString(String text, List<TextPosition> positions) throws IOException
+                {
+                    baselines.put(text.split(" ")[0], positions.get(0).getYDirAdj());
+                }
+            };
+            stripper.getText(doc);
+            return baselines;
+        }
+    }
+
+    @Test public void testHtmlInlineElementsShareLines() throws IOException
+    {
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            new HtmlPdWriter(writer).write("<p>One <b>two</b> <i>three</i><span>four</span>.</p><p>Next</p>");
+
+            String text=new PDFTextStripper().getText(doc);
+            assertEquals(Arrays.asList("One two threefour.", "Next"), Arrays.asList(text.trim().split("\\s*\\n")));
+        }
+    }
+}
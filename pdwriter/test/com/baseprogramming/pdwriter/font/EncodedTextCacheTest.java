@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.font;
+
+import com.baseprogramming.pdwriter.PdWriter;
+import com.baseprogramming.pdwriter.model.Margin;
+import com.baseprogramming.pdwriter.model.PdParagraph;
+import java.io.File;
+import java.io.IOException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ *
+ * @author Roberto C. Benitez
+ */
+public class EncodedTextCacheTest
+{
+    private static final File FONT_FILE= new File("/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf");
+
+    @Rule public TemporaryFolder folder= new TemporaryFolder();
+
+    @Test public void testCommandIsCachedPerFont() throws IOException
+    {
+        EncodedTextCache cache= new EncodedTextCache();
+        byte[] command=cache.getShowTextCommand(PDType1Font.HELVETICA, "a(b)");
+        assertEquals("(a\\(b\\)) Tj\n", new String(command, "ISO-8859-1"));
+
+        assertSame(command, cache.getShowTextCommand(PDType1Font.HELVETICA, "a(b)"));
+        assertNotSame(command, cache.getShowTextCommand(PDType1Font.TIMES_ROMAN, "a(b)"));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1 / 3d, cache.getHitRate(), 0.0001);
+    }
+
+    @Test public void testLeastRecentlyUsedIsEvicted() throws IOException
+    {
+        EncodedTextCache cache= new EncodedTextCache(2);
+        byte[] first=cache.getShowTextCommand(PDType1Font.HELVETICA, "first");
+        cache.getShowTextCommand(PDType1Font.HELVETICA, "second");
+        cache.getShowTextCommand(PDType1Font.HELVETICA, "first");
+        byte[] second=cache.getShowTextCommand(PDType1Font.HELVETICA, "third");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertSame(first, cache.getShowTextCommand(PDType1Font.HELVETICA, "first"));
+        assertSame(second, cache.getShowTextCommand(PDType1Font.HELVETICA, "third"));
+    }
+
+    @Test public void testRepeatedTextIsWrittenFromCache() throws IOException
+    {
+        assumeTrue("DejaVu Sans not installed", FONT_FILE.isFile());
+
+        File output=folder.newFile("cached.pdf");
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            PdParagraph style=writer.createParagraph();
+            style.setFont(writer.loadFont(FONT_FILE));
+            for(int i=0;i<3;i++)
+            {
+                writer.write(style, "Ωmega");
+            }
+            assertEquals(2, writer.getTextCache().getHits());
+            doc.save(output);
+        }
+
+        try(PDDocument doc = PDDocument.load(output))
+        {
+            String text=new PDFTextStripper().getText(doc).replaceAll("\\s+", " ").trim();
+            assertEquals("Ωmega Ωmega Ωmega", text);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.font;
+
+import com.baseprogramming.pdwriter.PdWriter;
+import com.baseprogramming.pdwriter.model.Margin;
+import com.baseprogramming.pdwriter.model.PdParagraph;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ *
+ * @author Roberto C. Benitez
+ */
+public class FontRegistryTest
+{
+    private static final File FONT_FILE= new File("/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf");
+
+    @Rule public TemporaryFolder folder= new TemporaryFolder();
+
+    @Before public void checkFont()
+    {
+        assumeTrue("DejaVu Sans not installed", FONT_FILE.isFile());
+    }
+
+    @Test public void testConcurrentRegistrationLoadsOnce() throws Exception
+    {
+        FontRegistry registry= new FontRegistry();
+        ExecutorService executor=Executors.newFixedThreadPool(8);
+        try
+        {
+            List<Future<FontFace>> futures= new ArrayList<>();
+            for(int i=0;i<16;i++)
+            {
+                futures.add(executor.submit((Callable<FontFace>)()->registry.register(FONT_FILE)));
+            }
+
+            FontFace face=futures.get(0).get();
+            for(Future<FontFace> future : futures)
+            {
+                assertSame(face, future.get());
+            }
+            assertSame(face, registry.getFace("DejaVu Sans", false, false));
+            assertSame(face, registry.getFace("DejaVuSans"));
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test public void testFaceIsEmbeddedInEachDocument() throws IOException
+    {
+        FontFace face=FontRegistry.getInstance().register(FONT_FILE);
+        assertTrue(face.hasGlyph('Ω'));
+        assertFalse(face.hasGlyph(0xE000));
+
+        String text="Zürich – Ωmega";
+        for(int i=0;i<2;i++)
+        {
+            File output=folder.newFile("shared" + i + ".pdf");
+            try(PDDocument doc = new PDDocument())
+            {
+                PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+                PDType0Font font=writer.getFontCache().getFont(face);
+                assertSame(font, writer.getFontCache().getFont(face));
+
+                PdParagraph style=writer.createParagraph();
+                style.setFont(font);
+                writer.write(style, text);
+                doc.save(output);
+            }
+
+            try(PDDocument doc = PDDocument.load(output))
+            {
+                assertEquals(text, new PDFTextStripper().getText(doc).trim());
+            }
+        }
+    }
+
+    @Test public void testTrueTypeFontIsSubsetEmbedded() throws IOException
+    {
+        File output=folder.newFile("truetype.pdf");
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            PDFont font=writer.loadFont(FONT_FILE);
+            assertSame(font, writer.loadFont(FONT_FILE));
+
+            PdParagraph style=writer.createParagraph();
+            assertSame(PDType1Font.TIMES_ROMAN, style.getFont());
+            style.setFont(font);
+            assertSame(font, style.getPdFont());
+            try
+            {
+                style.getFont();
+                fail("A TrueType font is not a Type 1 font");
+            }
+            catch(IllegalStateException e)
+            {
+            }
+            writer.write(style, "Zürich – Ωmega");
+            doc.save(output);
+        }
+
+        try(PDDocument doc = PDDocument.load(output))
+        {
+            COSName name=doc.getPage(0).getResources().getFontNames().iterator().next();
+            PDFont font=doc.getPage(0).getResources().getFont(name);
+            assertTrue(font instanceof PDType0Font);
+            assertTrue(font.getName().matches("[A-Z]{6}\\+DejaVuSans"));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.font;
+
+import com.baseprogramming.pdwriter.PdWriter;
+import com.baseprogramming.pdwriter.model.Margin;
+import com.baseprogramming.pdwriter.model.PdParagraph;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ *
+ * @author Roberto C. Benitez
+ */
+public class TextRunTest
+{
+    private static final File FONT_FILE= new File("/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf");
+
+    @Rule public TemporaryFolder folder= new TemporaryFolder();
+
+    @Test public void testCoveredTextIsSingleRun()
+    {
+        List<TextRun> runs=TextRun.split("Zürich", PDType1Font.TIMES_ROMAN, Collections.emptyList());
+        assertEquals(1, runs.size());
+        assertSame(PDType1Font.TIMES_ROMAN, runs.get(0).getFont());
+        assertEquals("Zürich", runs.get(0).getText());
+        assertTrue(FontCoverage.covers(PDType1Font.TIMES_ROMAN, "Zürich"));
+        assertFalse(FontCoverage.covers(PDType1Font.TIMES_ROMAN, 'Ω'));
+    }
+
+    @Test public void testUncoveredCharacterIsReplaced() throws IOException
+    {
+        List<TextRun> runs=TextRun.split("Ωmega", PDType1Font.TIMES_ROMAN, Collections.emptyList());
+        assertEquals(1, runs.size());
+        assertEquals("?mega", runs.get(0).getText());
+
+        PdParagraph style= new PdParagraph(null);
+        assertEquals(style.getStringWidth("?mega"), style.getStringWidth("Ωmega"), 0.001f);
+    }
+
+    @Test public void testCoverageOfFontFromOwnRegistry() throws IOException
+    {
+        assumeTrue("DejaVu Sans not installed", FONT_FILE.isFile());
+
+        try(PDDocument doc = new PDDocument())
+        {
+            PDFont font= new FontCache(doc, new FontRegistry()).getFont(FONT_FILE);
+            assertTrue(FontCoverage.covers(font, 'Ω'));
+            assertFalse(FontCoverage.covers(font, 0xE000));
+
+            List<TextRun> runs=TextRun.split("Ω\uE000", font, Collections.emptyList());
+            assertEquals(1, runs.size());
+            assertEquals("Ω?", runs.get(0).getText());
+        }
+    }
+
+    @Test public void testFallbackFontRuns() throws IOException
+    {
+        assumeTrue("DejaVu Sans not installed", FONT_FILE.isFile());
+
+        File output=folder.newFile("fallback.pdf");
+        try(PDDocument doc = new PDDocument())
+        {
+            PdWriter writer= new PdWriter(doc, new Margin(0.75f, 0.75f, 0.75f, 0.75f));
+            PDFont fallback=writer.loadFont(FONT_FILE);
+
+            List<TextRun> runs=TextRun.split("Zürich Ωmega", PDType1Font.TIMES_ROMAN, Collections.singletonList(fallback));
+            assertEquals(3, runs.size());
+            assertEquals("Zürich ", runs.get(0).getText());
+            assertSame(fallback, runs.get(1).getFont());
+            assertEquals("Ω", runs.get(1).getText());
+            assertSame(PDType1Font.TIMES_ROMAN, runs.get(2).getFont());
+
+            PdParagraph style=writer.createParagraph();
+            style.setFallbackFonts(Collections.singletonList(fallback));
+            writer.write(style, "Zürich Ωmega");
+            doc.save(output);
+        }
+
+        try(PDDocument doc = PDDocument.load(output))
+        {
+            assertEquals("Zürich Ωmega", new PDFTextStripper().getText(doc).trim());
+        }
+    }
+}
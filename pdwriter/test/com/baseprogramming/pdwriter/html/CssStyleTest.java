@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.html;
+
+import com.steadystate.css.parser.CSSOMParser;
+import com.steadystate.css.parser.SACParserCSS3;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.w3c.css.sac.InputSource;
+import org.w3c.dom.css.CSSStyleDeclaration;
+import org.w3c.dom.css.CSSValue;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Roberto C. Benitez
+ */
+public class CssStyleTest
+{
+    @Test public void testCascade() throws IOException
+    {
+        CssStyle parent=CssStyle.cascade(null, parse("font-size: 20pt; color: red"));
+        CssStyle element=parse("font-weight: bold; color: blue; text-align: center");
+        CssStyle inline=parse("color: green");
+
+        CssStyle style=CssStyle.cascade(parent, element, null, inline);
+        assertSame(parent, style.getParent());
+        assertEquals("green", style.getText(CssProperty.COLOR));
+        assertEquals("bold", style.getText(CssProperty.FONT_WEIGHT));
+        assertEquals("20pt", style.getText(CssProperty.FONT_SIZE));
+        assertFalse(style.isSet(CssProperty.FONT_FAMILY));
+        assertNull(style.getText(CssProperty.FONT_FAMILY));
+
+        assertSame(parent, CssStyle.cascade(parent, null, CssStyle.EMPTY));
+        assertTrue(CssStyle.cascade(null, parse("text-align: center")).isEmpty());
+    }
+
+    @Test public void testLengths() throws IOException
+    {
+        CssStyle style=parse("font-size: 1.5em; width: 120px; padding: 0; border: thin");
+        assertEquals(CssStyle.UNIT_EMS, style.getUnit(CssProperty.FONT_SIZE));
+        assertEquals(1.5f, style.getValue(CssProperty.FONT_SIZE), 0);
+        assertEquals(CssStyle.UNIT_PIXELS, style.getUnit(CssProperty.WIDTH));
+        assertEquals(120f, style.getValue(CssProperty.WIDTH), 0);
+        assertEquals(CssStyle.UNIT_POINTS, style.getUnit(CssProperty.PADDING));
+        assertEquals(CssStyle.UNIT_NONE, style.getUnit(CssProperty.BORDER));
+        assertEquals("thin", style.getText(CssProperty.BORDER));
+    }
+
+    private static CssStyle parse(String css) throws IOException
+    {
+        CSSOMParser parser= new CSSOMParser(new SACParserCSS3());
+        CSSStyleDeclaration declaration=parser.parseStyleDeclaration(new InputSource(new StringReader(css)));
+        Map<String,CSSValue> map= new HashMap<>();
+        for(int i=0;i<declaration.getLength();i++)
+        {
+            map.put(declaration.item(i), declaration.getPropertyCSSValue(declaration.item(i)));
+        }
+        return CssStyle.of(map);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.html;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeVisitor;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Roberto C. Benitez
+ */
+public class HtmlStreamParserTest
+{
+    @Test public void testImpliedElements() throws IOException
+    {
+        List<String> events=parse("<p>One<p>Two <b>&lt;bold&gt;</b><!-- note --><table><tr><td>1<td>2</table>");
+        assertEquals("#document,html,head,/head,body,p,'One',/p,p,'Two ',b,'<bold>',/b,/p,"
+                + "table,tbody,tr,td,'1',/td,td,'2',/td,/tr,/tbody,/table,/body,/html,/#document", String.join(",", events));
+    }
+
+    @Test public void testTableHeadersAreBuffered() throws IOException
+    {
+        List<String> events= new ArrayList<>();
+        new HtmlStreamParser(new StringReader("<table><thead><tr><th>A</th><th>B</th></tr></thead></table>"), "")
+                .parse(new NodeVisitor()
+        {
+            @Override public void head(Node node, int depth)
+            {
+                if("thead".equals(node.nodeName()))
+                {
+                    events.add(((Element)node).text());
+                }
+            }
+
+            @Override public void tail(Node node, int depth)
+            {
+            }
+        });
+        assertEquals("[A B]", events.toString());
+    }
+
+    @Test public void testFinishedNodesAreDetached() throws IOException
+    {
+        StringBuilder html= new StringBuilder("<body><div>");
+        for(int i=0;i<1000;i++)
+        {
+            html.append("<p title=\"").append(i).append("\">Paragraph ").append(i).append("</p>\n");
+        }
+        html.append("</div></body>");
+
+        List<Integer> siblings= new ArrayList<>();
+        new HtmlStreamParser(new StringReader(html.toString()), "").parse(new NodeVisitor()
+        {
+            @Override public void head(Node node, int depth)
+            {
+                if("p".equals(node.nodeName()))
+                {
+                    siblings.add(node.parent().childNodeSize());
+                    assertEquals(String.valueOf(siblings.size() - 1), node.attr("title"));
+                }
+            }
+
+            @Override public void tail(Node node, int depth)
+            {
+            }
+        });
+        assertEquals(1000, siblings.size());
+        assertTrue(siblings.stream().allMatch(n->n==1));
+    }
+
+    private static List<String> parse(String html) throws IOException
+    {
+        List<String> events= new ArrayList<>();
+        new HtmlStreamParser(new StringReader(html), "").parse(new NodeVisitor()
+        {
+            @Override public void head(Node node, int depth)
+            {
+                events.add((node instanceof TextNode)?"'" + ((TextNode)node).text() + "'":node.nodeName());
+            }
+
+            @Override public void tail(Node node, int depth)
+            {
+                if(node instanceof Element){events.add("/" + node.nodeName());}
+            }
+        });
+        return events;
+    }
+}
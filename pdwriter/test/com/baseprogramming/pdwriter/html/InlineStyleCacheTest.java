@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.html;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Roberto C. Benitez
+ */
+public class InlineStyleCacheTest
+{
+    @Test public void testRepeatedStylesAreParsedOnce()
+    {
+        InlineStyleCache cache= new InlineStyleCache(2);
+        CssStyle style=cache.get("color: red; font-size: 10pt");
+        assertEquals("red", style.getText(CssProperty.COLOR));
+        assertEquals(10f, style.getValue(CssProperty.FONT_SIZE), 0);
+        assertSame(style, cache.get("color: red; font-size: 10pt"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        cache.get("color: blue");
+        cache.get("color: green");
+        assertEquals(2, cache.size());
+        assertNotSame(style, cache.get("color: red; font-size: 10pt"));
+        assertEquals(4, cache.getMisses());
+    }
+}
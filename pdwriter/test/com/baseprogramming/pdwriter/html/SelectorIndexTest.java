@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.html;
+
+import com.baseprogramming.pdwriter.Utils;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Roberto C. Benitez
+ */
+public class SelectorIndexTest
+{
+    private static final String CSS="#intro { color: red }\n"
+            + "p { color: black }\n"
+            + ".note { color: blue }\n"
+            + "div p.note { color: green }\n"
+            + "div > .note.wide { font-size: 20pt }\n"
+            + "h1, h2 { font-weight: bold }\n"
+            + "a:hover, input[type=text] { color: yellow }\n"
+            + "* { font-family: Courier }\n";
+
+    @Test public void testMatchingRules() throws IOException
+    {
+        SelectorIndex index= new SelectorIndex();
+        index.addStyleSheet(Utils.parseStyleSheet(new ByteArrayInputStream(CSS.getBytes(StandardCharsets.UTF_8))));
+        assertEquals(8, index.size());
+
+        Document document=Jsoup.parse("<div><section><p id='intro' class='wide note'>a</p></section>"
+                + "<p class='note wide'>b</p></div><p class='note'>c</p><h2>d</h2>");
+        Element intro=document.getElementById("intro");
+        assertEquals("[*, p, .note, div p.note, #intro]", getSelectors(index.getMatchingRules(intro)));
+
+        Element child=document.select("div > p.wide").first();
+        assertEquals("[*, p, .note, div p.note, div > .note.wide]", getSelectors(index.getMatchingRules(child)));
+
+        Element outside=document.select("body > p").first();
+        assertEquals("[*, p, .note]", getSelectors(index.getMatchingRules(outside)));
+        assertEquals("[*, h2]", getSelectors(index.getMatchingRules(document.select("h2").first())));
+    }
+
+    @Test public void testDefaultIndexIsShared()
+    {
+        SelectorIndex index=SelectorIndex.getDefault();
+        assertSame(index, SelectorIndex.getDefault());
+        assertTrue(index.isReadOnly());
+        try
+        {
+            index.add("p", CssStyle.EMPTY);
+            fail("Expected UnsupportedOperationException");
+        }
+        catch(UnsupportedOperationException e)
+        {
+            //expected
+        }
+
+        SelectorIndex copy= new SelectorIndex(index);
+        assertFalse(copy.isReadOnly());
+        assertEquals(index.size(), copy.size());
+        assertFalse(index.getMatchingRules(Jsoup.parse("<b>b</b>").select("b").first()).isEmpty());
+    }
+
+    @Test public void testHasClass()
+    {
+        assertTrue(CssRule.hasClass("note wide", "wide"));
+        assertTrue(CssRule.hasClass(" note\twide ", "note"));
+        assertFalse(CssRule.hasClass("notes wide", "note"));
+        assertFalse(CssRule.hasClass("footnote", "note"));
+    }
+
+    @Test public void testUnsupportedSelectors()
+    {
+        CssStyle style=CssStyle.EMPTY;
+        assertNull(CssRule.parse("a:hover", 0, style));
+        assertNull(CssRule.parse("div + p", 0, style));
+        assertNull(CssRule.parse("input[type=\"text\"]", 0, style));
+        assertNull(CssRule.parse("> p", 0, style));
+        assertEquals(0x010101, CssRule.parse("div#main > .note", 0, style).getSpecificity());
+    }
+
+    private static String getSelectors(List<CssRule> rules)
+    {
+        return rules.stream().map(CssRule::getSelector).collect(Collectors.toList()).toString();
+    }
+}
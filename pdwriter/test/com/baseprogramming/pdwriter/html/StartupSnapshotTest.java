@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.html;
+
+import com.baseprogramming.pdwriter.font.StandardFontMetrics;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Roberto C. Benitez
+ */
+public class StartupSnapshotTest
+{
+    @Rule public TemporaryFolder folder= new TemporaryFolder();
+
+    @Test public void testSnapshotRoundTrip() throws IOException
+    {
+        File file= new File(folder.getRoot(), "pdwriter.snapshot");
+        StartupSnapshot snapshot=StartupSnapshot.create();
+        snapshot.write(file);
+        StartupSnapshot loaded=StartupSnapshot.read(file);
+
+        List<CssRule> rules=snapshot.getDefaultStyleSheet().getRules();
+        List<CssRule> loadedRules=loaded.getDefaultStyleSheet().getRules();
+        assertFalse(rules.isEmpty());
+        assertEquals(rules.size(), loadedRules.size());
+        for(int i=0;i<rules.size();i++)
+        {
+            CssRule rule=rules.get(i);
+            CssRule loadedRule=loadedRules.get(i);
+            assertEquals(rule.getSelector(), loadedRule.getSelector());
+            assertEquals(rule.getOrder(), loadedRule.getOrder());
+            assertEquals(rule.getSpecificity(), loadedRule.getSpecificity());
+            assertEquals(rule.getStyle().getDeclarations(), loadedRule.getStyle().getDeclarations());
+            assertEquals(rule.getStyle().getValue(CssProperty.FONT_SIZE), loadedRule.getStyle().getValue(CssProperty.FONT_SIZE), 0);
+        }
+
+        assertEquals(14, loaded.getFontMetrics().size());
+        StandardFontMetrics times=loaded.getFontMetrics().get(0);
+        assertEquals("Times-Roman", times.getName());
+        assertEquals(times.getCoverage(), snapshot.getFontMetrics().get(0).getCoverage());
+    }
+
+    @Test public void testWidthsMatchPdfBox() throws IOException
+    {
+        String text="Snapshot widths: été, “quoted” — €12.50";
+        for(PDType1Font font : new PDType1Font[]{PDType1Font.TIMES_ROMAN, PDType1Font.HELVETICA_BOLD, PDType1Font.COURIER})
+        {
+            assertEquals(font.getStringWidth(text), StandardFontMetrics.get(font).getStringWidth(text), 0);
+        }
+    }
+
+    @Test public void testInvalidSnapshotIsRewritten() throws IOException
+    {
+        File file=folder.newFile("pdwriter.snapshot");
+        Files.write(file.toPath(), new byte[]{'P', 'D'});
+        try
+        {
+            StartupSnapshot.read(file);
+            fail("Truncated snapshot was read");
+        }
+        catch(IOException e)
+        {
+            //expected
+        }
+
+        StartupSnapshot snapshot=StartupSnapshot.load(file);
+        assertEquals(snapshot.getDefaultStyleSheet().getRules().size(),
+                StartupSnapshot.read(file).getDefaultStyleSheet().getRules().size());
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.html;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Roberto C. Benitez
+ */
+public class StyleSheetCacheTest
+{
+    @Rule public TemporaryFolder folder= new TemporaryFolder();
+
+    @Test public void testChangedFilesAreParsedAgain() throws IOException
+    {
+        File file=folder.newFile("style.css");
+        write(file, "p { color: red }");
+        StyleSheetCache cache= new StyleSheetCache();
+
+        CompiledStyleSheet styleSheet=cache.get(file);
+        assertEquals(1, styleSheet.getRules().size());
+        assertSame(styleSheet, cache.get(new File(folder.getRoot(), "./style.css")));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        write(file, "p { color: red } h1, h2 { color: blue }");
+        CompiledStyleSheet changed=cache.get(file);
+        assertNotSame(styleSheet, changed);
+        assertEquals(3, changed.getRules().size());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.size());
+    }
+
+    @Test public void testMergedIndexesAreShared() throws IOException
+    {
+        File file=folder.newFile("style.css");
+        write(file, ".note { color: red }");
+        CompiledStyleSheet styleSheet= new StyleSheetCache().get(file);
+
+        SelectorIndex base=SelectorIndex.getDefault();
+        SelectorIndex merged=styleSheet.mergeInto(base);
+        assertTrue(merged.isReadOnly());
+        assertEquals(base.size() + 1, merged.size());
+        assertSame(merged, styleSheet.mergeInto(base));
+    }
+
+    private static void write(File file, String css) throws IOException
+    {
+        Files.write(file.toPath(), css.getBytes(StandardCharsets.UTF_8));
+    }
+}
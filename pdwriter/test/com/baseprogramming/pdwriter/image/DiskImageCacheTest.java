@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.image;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Roberto C. Benitez
+ */
+public class DiskImageCacheTest
+{
+    @Rule public TemporaryFolder folder= new TemporaryFolder();
+    
+    public DiskImageCacheTest()
+    {
+    }
+
+    private EncodedImage createImage(int size)
+    {
+        EncodedImage mask= new EncodedImage(EncodedImage.FLATE_DECODE, 4, 4, 8,
+                EncodedImage.DEVICE_GRAY, null, 0, new byte[]{1, 2, 3});
+        return new EncodedImage(EncodedImage.FLATE_DECODE, 4, 4, 8,
+                EncodedImage.DEVICE_RGB, null, 3, new byte[size], mask);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        File dir=folder.newFolder("images");
+        DiskImageCache cache= new DiskImageCache(dir, 1024 * 1024);
+        cache.put("abc@10x20", createImage(100));
+
+        DiskImageCache reopened= new DiskImageCache(dir, 1024 * 1024);
+        EncodedImage image=reopened.get("abc@10x20");
+        assertNotNull(image);
+        assertEquals(100, image.getLength());
+        assertEquals(3, image.getPredictorColors());
+        assertEquals(EncodedImage.DEVICE_RGB, image.getColorSpace());
+        assertArrayEquals(new byte[]{1, 2, 3}, image.getSoftMask().getData());
+        assertNull(reopened.get("missing"));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws IOException
+    {
+        DiskImageCache cache= new DiskImageCache(folder.newFolder("lru"), 2500);
+        cache.put("a", createImage(1000));
+        cache.put("b", createImage(1000));
+        assertNotNull(cache.get("a"));
+        cache.put("c", createImage(1000));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertTrue(cache.getTotalBytes() <= 2500);
+    }
+
+    @Test
+    public void testEntriesOfOtherProcessesAreEvicted() throws IOException
+    {
+        File dir=folder.newFolder("shared");
+        DiskImageCache cache= new DiskImageCache(dir, 2500);
+        DiskImageCache other= new DiskImageCache(dir, 1024 * 1024);
+        other.put("a", createImage(1000));
+        other.put("b", createImage(1000));
+        other.put("c", createImage(1000));
+
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(2, cache.size());
+        assertTrue(cache.getTotalBytes() <= 2500);
+        assertFalse(new File(dir, "a.img").exists());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.image;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Roberto C. Benitez
+ */
+public class EncodedImageReaderTest
+{
+    
+    public EncodedImageReaderTest()
+    {
+    }
+
+    private byte[] createImage(int type, String format) throws IOException
+    {
+        BufferedImage image= new BufferedImage(40, 30, type);
+        for(int x=0;x<40;x++)
+        {
+            for(int y=0;y<30;y++)
+            {
+                Color color=(x < 20)?Color.RED:Color.BLUE;
+                image.setRGB(x, y, color.getRGB());
+            }
+        }
+        ByteArrayOutputStream out= new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testPngPassthrough() throws IOException
+    {
+        byte[] png=createImage(BufferedImage.TYPE_INT_RGB, "png");
+        EncodedImage encoded=EncodedImageReader.read(png);
+        assertNotNull(encoded);
+        assertEquals(EncodedImage.FLATE_DECODE, encoded.getFilter());
+        assertEquals(40, encoded.getWidth());
+        assertEquals(30, encoded.getHeight());
+        assertEquals(3, encoded.getPredictorColors());
+
+        try(PDDocument doc= new PDDocument())
+        {
+            PDImageXObject image=encoded.toXObject(doc);
+            assertEquals(COSName.FLATE_DECODE, image.getCOSObject().getDictionaryObject(COSName.FILTER));
+            BufferedImage decoded=image.getImage();
+            assertEquals(Color.RED.getRGB(), decoded.getRGB(5, 5));
+            assertEquals(Color.BLUE.getRGB(), decoded.getRGB(35, 25));
+        }
+    }
+
+    @Test
+    public void testJpegPassthrough() throws IOException
+    {
+        byte[] jpeg=createImage(BufferedImage.TYPE_INT_RGB, "jpg");
+        EncodedImage encoded=EncodedImageReader.read(jpeg);
+        assertNotNull(encoded);
+        assertEquals(EncodedImage.DCT_DECODE, encoded.getFilter());
+        assertEquals(40, encoded.getWidth());
+        assertEquals(30, encoded.getHeight());
+        assertSame(jpeg, encoded.getData());
+    }
+
+    @Test
+    public void testAlphaFallsBack() throws IOException
+    {
+        byte[] png=createImage(BufferedImage.TYPE_INT_ARGB, "png");
+        assertNull(EncodedImageReader.read(png));
+        assertNull(EncodedImageReader.read(new byte[]{1, 2, 3, 4, 5}));
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.image;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import javax.imageio.ImageIO;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Roberto C. Benitez
+ */
+public class ImageCacheTest
+{
+    @Rule public TemporaryFolder folder= new TemporaryFolder();
+
+    private File writeImage(String name, String format, int width, Color color) throws IOException
+    {
+        BufferedImage image= new BufferedImage(width, 8, BufferedImage.TYPE_INT_RGB);
+        for(int x=0;x<width;x++)
+        {
+            for(int y=0;y<8;y++)
+            {
+                image.setRGB(x, y, color.getRGB());
+            }
+        }
+        File file= new File(folder.getRoot(), name);
+        ImageIO.write(image, format, file);
+        return file;
+    }
+
+    @Test public void testSamePathReturnsSameImage() throws IOException
+    {
+        try(PDDocument doc = new PDDocument())
+        {
+            ImageCache cache= new ImageCache(doc);
+            File file=writeImage("a.png", "png", 8, Color.RED);
+
+            assertEquals(new Dimension(8, 8), cache.getImageSize(file));
+            PDImageXObject image=cache.getImage(file);
+            assertEquals(1, cache.getFileReads());
+            assertSame(image, cache.getImage(file));
+            assertSame(image, cache.getImage(new File(folder.getRoot(), "./a.png")));
+            assertEquals(1, cache.getMisses());
+            assertEquals(2, cache.getHits());
+            assertEquals(1, cache.size());
+        }
+    }
+
+    @Test public void testSameContentSharesImage() throws IOException
+    {
+        try(PDDocument doc = new PDDocument())
+        {
+            ImageCache cache= new ImageCache(doc);
+            File file=writeImage("a.png", "png", 8, Color.RED);
+            File copy=folder.newFile("copy.png");
+            Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+            assertSame(cache.getImage(file), cache.getImage(copy));
+            assertEquals(1, cache.size());
+            assertEquals(cache.getContentHash(file), cache.getContentHash(copy));
+        }
+    }
+
+    @Test public void testChangedFileIsReadAgain() throws IOException
+    {
+        try(PDDocument doc = new PDDocument())
+        {
+            ImageCache cache= new ImageCache(doc);
+            File file=writeImage("a.bmp", "bmp", 8, Color.RED);
+            long lastModified=file.lastModified();
+            String hash=cache.getContentHash(file);
+            PDImageXObject image=cache.getImage(file);
+
+            //same size, new modification time
+            writeImage("a.bmp", "bmp", 8, Color.BLUE);
+            assertTrue(file.setLastModified(lastModified + 2000));
+            String sameSizeHash=cache.getContentHash(file);
+            assertNotEquals(hash, sameSizeHash);
+            PDImageXObject sameSizeImage=cache.getImage(file);
+            assertNotSame(image, sameSizeImage);
+
+            //new size, same modification time
+            writeImage("a.bmp", "bmp", 16, Color.BLUE);
+            assertTrue(file.setLastModified(lastModified + 2000));
+            assertNotEquals(sameSizeHash, cache.getContentHash(file));
+            PDImageXObject newSizeImage=cache.getImage(file);
+            assertNotSame(sameSizeImage, newSizeImage);
+            assertEquals(16, newSizeImage.getWidth());
+            assertEquals(3, cache.size());
+        }
+    }
+
+    @Test public void testFailedDiskCacheWriteIsIgnored() throws IOException
+    {
+        try(PDDocument doc = new PDDocument())
+        {
+            File dir=folder.newFolder("images");
+            DiskImageCache diskCache= new DiskImageCache(dir, 1024 * 1024);
+            assertTrue(dir.delete());
+
+            ImageCache cache= new ImageCache(doc);
+            cache.setDiskCache(diskCache);
+            assertEquals(8, cache.getImage(writeImage("a.png", "png", 8, Color.RED)).getWidth());
+            assertEquals(8, cache.getImage(writeImage("b.bmp", "bmp", 8, Color.BLUE)).getWidth());
+            assertEquals(0, diskCache.size());
+        }
+    }
+}
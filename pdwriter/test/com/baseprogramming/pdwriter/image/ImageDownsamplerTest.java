@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.image;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import javax.imageio.ImageIO;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Roberto C. Benitez
+ */
+public class ImageDownsamplerTest
+{
+    
+    public ImageDownsamplerTest()
+    {
+    }
+
+    private byte[] createCheckerboard(int width, int height, int type) throws IOException
+    {
+        BufferedImage image= new BufferedImage(width, height, type);
+        for(int x=0;x<width;x++)
+        {
+            for(int y=0;y<height;y++)
+            {
+                Color color=((x + y) % 2==0)?Color.WHITE:Color.BLACK;
+                image.setRGB(x, y, color.getRGB());
+            }
+        }
+        ByteArrayOutputStream out= new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testTargetSize()
+    {
+        ImageDownsampler sampler= new ImageDownsampler(150);
+        Dimension size=sampler.getTargetSize(6000, 4000, 72, 48);
+        assertEquals(new Dimension(150, 100), size);
+        assertNull(sampler.getTargetSize(100, 50, 72, 48));
+    }
+
+    @Test
+    public void testAreaAverage() throws IOException
+    {
+        ImageDownsampler sampler= new ImageDownsampler(72, 0.85f);
+        byte[] png=createCheckerboard(600, 300, BufferedImage.TYPE_INT_RGB);
+        EncodedImage image=sampler.downsample(png, new Dimension(60, 30));
+        assertEquals(60, image.getWidth());
+        assertEquals(30, image.getHeight());
+        assertNull(image.getSoftMask());
+
+        try(PDDocument doc= new PDDocument())
+        {
+            BufferedImage decoded=image.toXObject(doc).getImage();
+            Color color= new Color(decoded.getRGB(31, 17));
+            assertEquals(128, color.getRed(), 1);
+            assertEquals(128, color.getBlue(), 1);
+        }
+    }
+
+    @Test
+    public void testLargeJpegIsSubsampled() throws IOException
+    {
+        //a 24 MP source reduced to 300x200 is decoded at 600x400
+        assertEquals(10, ImageDownsampler.getSubsampling(6000, 300));
+        assertEquals(1, ImageDownsampler.getSubsampling(500, 300));
+
+        BufferedImage source= new BufferedImage(2400, 1200, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics=source.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 1200, 1200);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(1200, 0, 1200, 1200);
+        graphics.dispose();
+        ByteArrayOutputStream out= new ByteArrayOutputStream();
+        ImageIO.write(source, "jpeg", out);
+
+        EncodedImage image= new ImageDownsampler(72).downsample(out.toByteArray(), new Dimension(60, 30));
+        assertEquals(EncodedImage.DCT_DECODE, image.getFilter());
+        assertEquals(60, image.getWidth());
+        assertEquals(30, image.getHeight());
+        BufferedImage decoded=ImageIO.read(new ByteArrayInputStream(image.getData()));
+        assertTrue(new Color(decoded.getRGB(10, 15)).getRed() > 240);
+        assertTrue(new Color(decoded.getRGB(50, 15)).getBlue() > 240);
+    }
+
+    private byte[] createTallImage(String format) throws IOException
+    {
+        BufferedImage image= new BufferedImage(300, 6000, BufferedImage.TYPE_INT_RGB);
+        Random random= new Random(7);
+        for(int y=0;y<image.getHeight();y++)
+        {
+            for(int x=0;x<image.getWidth();x++)
+            {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        ByteArrayOutputStream out= new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    private static long getBestTime(Callable<?> task) throws Exception
+    {
+        long best=Long.MAX_VALUE;
+        for(int i=0;i<3;i++)
+        {
+            long start=System.nanoTime();
+            task.call();
+            best=Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    @Test
+    public void testTallImageIsDecodedOnce() throws Exception
+    {
+        ImageDownsampler sampler= new ImageDownsampler(72);
+        for(String format : new String[]{"png", "jpeg"})
+        {
+            byte[] content=createTallImage(format);
+            long decode=getBestTime(()->ImageIO.read(new ByteArrayInputStream(content)));
+            long downsample=getBestTime(()->sampler.downsample(content, new Dimension(30, 600)));
+
+            //decoding 64 row strips took about 40 times a full decode
+            assertTrue(format + ": " + downsample / 1000000 + " ms vs " + decode / 1000000 + " ms",
+                    downsample < decode * 5);
+        }
+    }
+
+    @Test
+    public void testAlphaBecomesSoftMask() throws IOException
+    {
+        ImageDownsampler sampler= new ImageDownsampler(72);
+        byte[] png=createCheckerboard(64, 64, BufferedImage.TYPE_INT_ARGB);
+        EncodedImage image=sampler.downsample(png, new Dimension(16, 16));
+        assertNotNull(image.getSoftMask());
+        assertEquals(16, image.getSoftMask().getWidth());
+    }
+}
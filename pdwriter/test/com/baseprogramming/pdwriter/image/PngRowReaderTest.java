@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 Roberto C. Benitez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseprogramming.pdwriter.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Roberto C. Benitez
+ */
+public class PngRowReaderTest
+{
+    private static BufferedImage fill(BufferedImage image)
+    {
+        Random random= new Random(42);
+        for(int y=0;y<image.getHeight();y++)
+        {
+            for(int x=0;x<image.getWidth();x++)
+            {
+                //smooth areas and noise, so the writer picks several filter types
+                int value=(y % 8 < 4)?(x * 4 + y) & 0xFF:random.nextInt(256);
+                int alpha=(x % 3==0)?0xFF:(x * 16) & 0xFF;
+                image.setRGB(x, y, (alpha << 24) | (value << 16) | ((255 - value) << 8) | (value / 2));
+            }
+        }
+        return image;
+    }
+
+    private static byte[] toPng(BufferedImage image) throws IOException
+    {
+        ByteArrayOutputStream out= new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private static int[][] readRows(byte[] png, int width, int height, int channels) throws IOException
+    {
+        try(PngRowReader reader=PngRowReader.open(png))
+        {
+            assertNotNull(reader);
+            assertEquals(width, reader.getWidth());
+            assertEquals(height, reader.getHeight());
+            assertEquals(channels, reader.getChannels());
+
+            int[][] rows= new int[height][width * channels];
+            for(int y=0;y<height;y++)
+            {
+                reader.readRow(rows[y]);
+            }
+            assertEquals(height, reader.getRowsRead());
+            return rows;
+        }
+    }
+
+    private static void assertRgbRows(BufferedImage image, int channels) throws IOException
+    {
+        int[][] rows=readRows(toPng(image), image.getWidth(), image.getHeight(), channels);
+        for(int y=0;y<image.getHeight();y++)
+        {
+            for(int x=0;x<image.getWidth();x++)
+            {
+                int pixel=image.getRGB(x, y);
+                int i=x * channels;
+                assertEquals((pixel >> 16) & 0xFF, rows[y][i]);
+                assertEquals((pixel >> 8) & 0xFF, rows[y][i + 1]);
+                assertEquals(pixel & 0xFF, rows[y][i + 2]);
+                if(channels==4)
+                {
+                    assertEquals(pixel >>> 24, rows[y][i + 3]);
+                }
+            }
+        }
+    }
+
+    @Test public void testRgb() throws IOException
+    {
+        assertRgbRows(fill(new BufferedImage(37, 21, BufferedImage.TYPE_INT_RGB)), 3);
+        assertRgbRows(fill(new BufferedImage(37, 21, BufferedImage.TYPE_INT_ARGB)), 4);
+    }
+
+    @Test public void testIndexed() throws IOException
+    {
+        assertRgbRows(fill(new BufferedImage(37, 21, BufferedImage.TYPE_BYTE_INDEXED)), 3);
+
+        byte[] levels= new byte[16];
+        byte[] alpha= new byte[16];
+        for(int i=0;i<16;i++)
+        {
+            levels[i]=(byte)(i * 17);
+            alpha[i]=(byte)((i < 8)?0xFF:i * 16);
+        }
+        IndexColorModel model= new IndexColorModel(4, 16, levels, levels, levels, alpha);
+        assertRgbRows(fill(new BufferedImage(37, 21, BufferedImage.TYPE_BYTE_BINARY, model)), 4);
+    }
+
+    @Test public void testGray() throws IOException
+    {
+        BufferedImage image=fill(new BufferedImage(37, 21, BufferedImage.TYPE_BYTE_GRAY));
+        int[][] rows=readRows(toPng(image), 37, 21, 1);
+        BufferedImage wide=fill(new BufferedImage(37, 21, BufferedImage.TYPE_USHORT_GRAY));
+        int[][] wideRows=readRows(toPng(wide), 37, 21, 1);
+        for(int y=0;y<21;y++)
+        {
+            for(int x=0;x<37;x++)
+            {
+                assertEquals(image.getRaster().getSample(x, y, 0), rows[y][x]);
+                assertEquals(wide.getRaster().getSample(x, y, 0) >> 8, wideRows[y][x]);
+            }
+        }
+    }
+
+    @Test public void testUnsupportedImages() throws IOException
+    {
+        assertNull(PngRowReader.open(new byte[]{1, 2, 3}));
+
+        ByteArrayOutputStream out= new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB), "jpeg", out);
+        assertNull(PngRowReader.open(out.toByteArray()));
+    }
+}